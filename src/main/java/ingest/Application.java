@@ -15,12 +15,8 @@
  **/
 package ingest;
 
-import java.lang.reflect.Method;
-import java.util.concurrent.Executor;
-
 import org.apache.http.client.HttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
-import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
@@ -29,25 +25,24 @@ import org.springframework.boot.context.web.SpringBootServletInitializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
 import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
-import org.springframework.scheduling.annotation.AsyncConfigurer;
-import org.springframework.scheduling.annotation.EnableAsync;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.client.RestTemplate;
 
 @SpringBootApplication
 @Configuration
-@EnableAsync
 @ComponentScan({ "ingest, util" })
-public class Application extends SpringBootServletInitializer implements AsyncConfigurer {
-	@Value("${thread.count.size}")
-	private int threadCountSize;
-	@Value("${thread.count.limit}")
-	private int threadCountLimit;
+public class Application extends SpringBootServletInitializer {
 	@Value("${http.max.total}")
 	private int httpMaxTotal;
 	@Value("${http.max.route}")
 	private int httpMaxRoute;
+	@Value("${http.connect.timeout.ms}")
+	private int httpConnectTimeout;
+	@Value("${notify.read.timeout.ms}")
+	private int notifyReadTimeout;
+	@Value("${http.connection.request.timeout.ms}")
+	private int httpConnectionRequestTimeout;
 
 	@Override
 	protected SpringApplicationBuilder configure(SpringApplicationBuilder builder) {
@@ -59,32 +54,36 @@ public class Application extends SpringBootServletInitializer implements AsyncCo
 	}
 
 	@Bean
+	public HttpClient httpClient() {
+		return HttpClientBuilder.create().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute).build();
+	}
+
+	/**
+	 * The shared RestTemplate. Responses are not bounded in time, as calls such as the PDAL analysis of a large Point
+	 * Cloud may take as long as the work does.
+	 */
+	@Bean
+	@Primary
 	public RestTemplate restTemplate() {
-		RestTemplate restTemplate = new RestTemplate();
-		HttpClient httpClient = HttpClientBuilder.create().setMaxConnTotal(httpMaxTotal).setMaxConnPerRoute(httpMaxRoute).build();
-		restTemplate.setRequestFactory(new HttpComponentsClientHttpRequestFactory(httpClient));
-		return restTemplate;
+		return createRestTemplate(0);
 	}
 
-	@Override
+	/**
+	 * The RestTemplate for notifications of pz-search and pz-workflow. Each read is bounded, so that every attempt at a
+	 * notification ends within the time allowed for it.
+	 */
 	@Bean
-	public Executor getAsyncExecutor() {
-		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
-		executor.setCorePoolSize(threadCountSize);
-		executor.setMaxPoolSize(threadCountLimit);
-		executor.initialize();
-		return executor;
+	public RestTemplate notificationRestTemplate() {
+		return createRestTemplate(notifyReadTimeout);
 	}
 
-	@Override
-	public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
-		return new AsyncUncaughtExceptionHandler() {
-			@Override
-			public void handleUncaughtException(Throwable ex, Method method, Object... params) {
-				String error = String.format("Uncaught Threading exception encountered in %s with details: %s", ex.getMessage(),
-						method.getName());
-				System.out.println(error);
-			}
-		};
+	private RestTemplate createRestTemplate(int readTimeout) {
+		RestTemplate restTemplate = new RestTemplate();
+		HttpComponentsClientHttpRequestFactory requestFactory = new HttpComponentsClientHttpRequestFactory(httpClient());
+		requestFactory.setConnectTimeout(httpConnectTimeout);
+		requestFactory.setReadTimeout(readTimeout);
+		requestFactory.setConnectionRequestTimeout(httpConnectionRequestTimeout);
+		restTemplate.setRequestFactory(requestFactory);
+		return restTemplate;
 	}
-}
\ No newline at end of file
+}
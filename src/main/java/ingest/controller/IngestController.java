@@ -24,7 +24,6 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -32,9 +31,19 @@ import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
 import exception.InvalidInputException;
+import ingest.messaging.EventTypeCache;
+import ingest.messaging.IngestPipeline;
 import ingest.messaging.IngestThreadManager;
+import ingest.messaging.NotificationSender;
+import ingest.messaging.SearchMetadataBatcher;
+import ingest.messaging.StatusUpdatePublisher;
+import ingest.messaging.WorkloadExecutors;
 import ingest.persist.PersistMetadata;
+import ingest.persist.PostGisStore;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
 import ingest.utility.IngestUtilities;
+import ingest.utility.S3ClientManager;
 import model.data.DataResource;
 import model.job.metadata.ResourceMetadata;
 import model.logger.AuditElement;
@@ -62,7 +71,25 @@ public class IngestController {
 	@Autowired
 	private IngestUtilities ingestUtil;
 	@Autowired
-	private ThreadPoolTaskExecutor threadPoolTaskExecutor;
+	private WorkloadExecutors workloadExecutors;
+	@Autowired
+	private IngestPipeline ingestPipeline;
+	@Autowired
+	private CpuBoundLimiter cpuBoundLimiter;
+	@Autowired
+	private StatusUpdatePublisher statusUpdatePublisher;
+	@Autowired
+	private NotificationSender notificationSender;
+	@Autowired
+	private SearchMetadataBatcher searchMetadataBatcher;
+	@Autowired
+	private ContentSpool contentSpool;
+	@Autowired
+	private S3ClientManager s3ClientManager;
+	@Autowired
+	private PostGisStore postGisStore;
+	@Autowired
+	private EventTypeCache eventTypeCache;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(IngestController.class);
 
@@ -150,10 +177,21 @@ public class IngestController {
 		Map<String, Object> stats = new HashMap<String, Object>();
 		// Return information on the jobs currently being processed
 		stats.put("jobs", threadManager.getRunningJobIds());
-		stats.put("activeThreads", threadPoolTaskExecutor.getActiveCount());
-		if (threadPoolTaskExecutor.getThreadPoolExecutor() != null) {
-			stats.put("threadQueue", threadPoolTaskExecutor.getThreadPoolExecutor().getQueue().size());
-		}
+		stats.put("jobDetails", threadManager.getRunningJobStats());
+		// Totals of the workload class pools that now run the Jobs, kept for existing consumers of these keys
+		stats.put("activeThreads", workloadExecutors.getActiveCount());
+		stats.put("threadQueue", workloadExecutors.getQueuedCount());
+		stats.put("consumer", threadManager.getConsumerStats());
+		stats.put("pipeline", ingestPipeline.getStats());
+		stats.put("workloads", workloadExecutors.getStats());
+		stats.put("cpuBound", cpuBoundLimiter.getStats());
+		stats.put("statusUpdates", statusUpdatePublisher.getStats());
+		stats.put("notifications", notificationSender.getStats());
+		stats.put("searchBatches", searchMetadataBatcher.getStats());
+		stats.put("spool", contentSpool.getStats());
+		stats.put("s3", s3ClientManager.getStats());
+		stats.put("postgis", postGisStore.getStats());
+		stats.put("eventTypes", eventTypeCache.getStats());
 		return new ResponseEntity<Map<String, Object>>(stats, HttpStatus.OK);
 	}
 
@@ -15,14 +15,17 @@
  **/
 package ingest.inspect;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.io.IOUtils;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.collection.CollectionFeatureSource;
-import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.geojson.feature.FeatureJSON;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.opengis.feature.simple.SimpleFeature;
 import org.opengis.feature.simple.SimpleFeatureType;
@@ -38,9 +41,12 @@ import com.amazonaws.AmazonClientException;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
+import ingest.utility.GeoJsonFeatureCollection;
+import ingest.utility.GeoJsonSequenceCollection;
 import ingest.utility.IngestUtilities;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
 import model.data.type.GeoJsonDataType;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
@@ -51,29 +57,61 @@ import util.PiazzaLogger;
  * Inspects GeoJSON. Will parse the GeoJSON input to ensure validity, and parse information such as spatial bounding
  * box.
  * 
- * Vectors for GeoJSON will be stored in Piazza PostGIS table.
+ * Vectors for GeoJSON will be stored in Piazza PostGIS table. The GeoJSON is streamed into the table in a single pass,
+ * with its schema inferred from the leading Features, so the file is never held in memory. GeoJSON Text Sequences (RFC
+ * 8142) and newline-delimited GeoJSON are read one Feature at a time, and hosted the same way.
  * 
  * @author Sonny.Saniev, Patrick Doody, Russell Orf
  * 
  */
 @Component
 public class GeoJsonInspector implements InspectorType {
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
-	private String AMAZONS3_PRIVATE_KEY;
-
 	private static final Integer DEFAULT_GEOJSON_EPSG_CODE = 4326;
 
 	@Autowired
 	private IngestUtilities ingestUtilities;
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private CpuBoundLimiter cpuBoundLimiter;
+	@Autowired
+	private ContentSpool contentSpool;
+	@Value("${geojson.schema.sample.features}")
+	private int schemaSampleSize;
+	@Value("${geojson.parallel.enabled}")
+	private boolean parallelEnabled;
+	@Value("${geojson.parallel.threads}")
+	private int parallelThreads;
+	@Value("${geojson.parallel.range.bytes}")
+	private int parallelRangeBytes;
+
+	private ForkJoinPool parsePool;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(GeoJsonInspector.class);
 
+	/**
+	 * Creates the pool that parses GeoJSON in parallel, if enabled. If not configured, one thread is used per
+	 * processor.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (parallelEnabled) {
+			parsePool = new ForkJoinPool((parallelThreads > 0) ? parallelThreads : Runtime.getRuntime().availableProcessors());
+		}
+	}
+
+	/**
+	 * Stops the parse pool.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (parsePool != null) {
+			parsePool.shutdownNow();
+		}
+	}
+
 	@Override
-	public DataResource inspect(DataResource dataResource, boolean host)
+	public DataResource inspect(final DataResource dataResource, boolean host)
 			throws DataInspectException, AmazonClientException, InvalidInputException, IOException, FactoryException {
 		SpatialMetadata spatialMetadata = new SpatialMetadata();
 
@@ -81,66 +119,84 @@ public class GeoJsonInspector implements InspectorType {
 		if (host && dataResource.getDataType() instanceof GeoJsonDataType) {
 			logger.log(String.format("Extracting Feature Data from GeoJSON File for Data %s", dataResource.getDataId()),
 					Severity.INFORMATIONAL, new AuditElement("ingest", "beginParsingGeoJSON", dataResource.getDataId()));
-			FeatureJSON featureJSON = new FeatureJSON();
-			InputStream geoJsonInputStream1 = null;
-			InputStream geoJsonInputStream2 = null;
-			try {
-				geoJsonInputStream1 = getGeoJsonInputStream(dataResource);
-				geoJsonInputStream2 = getGeoJsonInputStream(dataResource);
-
-				SimpleFeatureType featureSchema = featureJSON.readFeatureCollectionSchema(geoJsonInputStream1, false);
-				SimpleFeatureCollection featureCollection = (SimpleFeatureCollection) featureJSON
-						.readFeatureCollection(geoJsonInputStream2);
-				FeatureSource<SimpleFeatureType, SimpleFeature> geojsonFeatureSource = new CollectionFeatureSource(featureCollection);
-				ingestUtilities.persistFeatures(geojsonFeatureSource, dataResource, featureSchema);
-
-				// Get the Bounding Box, set the Spatial Metadata
-				ReferencedEnvelope envelope = geojsonFeatureSource.getBounds();
-				spatialMetadata.setMinX(envelope.getMinX());
-				spatialMetadata.setMinY(envelope.getMinY());
-				spatialMetadata.setMaxX(envelope.getMaxX());
-				spatialMetadata.setMaxY(envelope.getMaxY());
-				spatialMetadata.setNumFeatures(geojsonFeatureSource.getFeatures().size());
-
-				// Defaulting to 4326 since GeoTools has no FeatureSource available for GeoJSON files.
-				spatialMetadata.setEpsgCode(DEFAULT_GEOJSON_EPSG_CODE);
-
-				// Populate the projected EPSG:4326 spatial metadata
-				try {
-					spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
-				} catch (Exception exception) {
-					String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
-							dataResource.getDataId(), exception.getMessage());
-					LOGGER.error(error, exception);
-					logger.log(error, Severity.WARNING);
+			GeoJsonFeatureCollection.Source source = new GeoJsonFeatureCollection.Source() {
+				@Override
+				public InputStream open() throws IOException {
+					try {
+						return getGeoJsonInputStream(dataResource);
+					} catch (InvalidInputException exception) {
+						throw new IOException(exception.getMessage(), exception);
+					}
 				}
+			};
 
-				// Convert DataType to postgis from geojson
-				((GeoJsonDataType) dataResource.getDataType()).setDatabaseTableName(dataResource.getDataId());
-				((GeoJsonDataType) dataResource.getDataType()).setMimeType(MediaType.APPLICATION_JSON_VALUE);
-
-				dataResource.spatialMetadata = spatialMetadata;
+			// GeoJSON Text Sequences, and newline-delimited GeoJSON, hold one Feature per record
+			boolean sequence;
+			try (InputStream inputStream = source.open()) {
+				sequence = GeoJsonSequenceCollection.isSequence(inputStream);
+			}
 
-				// Clean up resources
-				featureJSON = null;
-				geojsonFeatureSource = null;
-				featureCollection = null;
+			// Inferring the schema parses the leading Features; limit how many Jobs do so at once
+			SimpleFeatureType featureSchema;
+			cpuBoundLimiter.acquire();
+			try {
+				featureSchema = sequence ? GeoJsonSequenceCollection.inferSequenceSchema(source, dataResource.getDataId(), schemaSampleSize)
+						: GeoJsonFeatureCollection.inferSchema(source, dataResource.getDataId(), schemaSampleSize);
 			} finally {
-				try {
-					if (geoJsonInputStream1 != null) {
-						geoJsonInputStream1.close();
-					}
-				} catch (Exception exception) {
-					LOGGER.warn("Error closing File Stream", exception);
-				}
-				try {
-					if (geoJsonInputStream2 != null) {
-						geoJsonInputStream2.close();
-					}
-				} catch (Exception exception) {
-					LOGGER.warn("Error closing File Stream", exception);
-				}
+				cpuBoundLimiter.release();
+			}
+
+			// The Features are parsed as they are written to PostGIS, rather than read into memory first. Sequences, and
+			// files spooled to disk, can be split into batches that are parsed in parallel.
+			GeoJsonFeatureCollection featureCollection;
+			File spoolFile = (parsePool != null) ? contentSpool.getSpoolFile(dataResource) : null;
+			if (sequence) {
+				featureCollection = new GeoJsonSequenceCollection(featureSchema, source, parsePool, parallelRangeBytes);
+			} else if (spoolFile != null) {
+				featureCollection = new GeoJsonFeatureCollection(featureSchema, source, spoolFile, parsePool, parallelRangeBytes);
+			} else {
+				featureCollection = new GeoJsonFeatureCollection(featureSchema, source);
+			}
+			FeatureSource<SimpleFeatureType, SimpleFeature> geojsonFeatureSource = new CollectionFeatureSource(featureCollection);
+			ingestUtilities.persistFeatures(geojsonFeatureSource, dataResource, featureSchema);
+
+			// Get the Bounding Box, set the Spatial Metadata. These were accumulated as the Features were written.
+			ReferencedEnvelope envelope = featureCollection.getBounds();
+			spatialMetadata.setMinX(envelope.getMinX());
+			spatialMetadata.setMinY(envelope.getMinY());
+			spatialMetadata.setMaxX(envelope.getMaxX());
+			spatialMetadata.setMaxY(envelope.getMaxY());
+			spatialMetadata.setNumFeatures(featureCollection.size());
+
+			// The schema was inferred from the leading Features only; report what later Features lost by not fitting it
+			if ((featureCollection.getDroppedProperties() > 0) || (featureCollection.getConvertedValues() > 0)
+					|| (featureCollection.getDroppedValues() > 0)) {
+				String warning = String.format("GeoJSON Features of Data %s did not fit the schema inferred from the leading %s Features: "
+						+ "%s properties not in the schema were dropped, %s values were converted to text, and %s values of the wrong type "
+						+ "were dropped.", dataResource.getDataId(), schemaSampleSize, featureCollection.getDroppedProperties(),
+						featureCollection.getConvertedValues(), featureCollection.getDroppedValues());
+				LOGGER.warn(warning);
+				logger.log(warning, Severity.WARNING, new AuditElement("ingest", "geoJsonSchemaMismatch", dataResource.getDataId()));
+			}
+
+			// Defaulting to 4326 since GeoTools has no FeatureSource available for GeoJSON files.
+			spatialMetadata.setEpsgCode(DEFAULT_GEOJSON_EPSG_CODE);
+
+			// Populate the projected EPSG:4326 spatial metadata
+			try {
+				spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
+			} catch (Exception exception) {
+				String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
+						dataResource.getDataId(), exception.getMessage());
+				LOGGER.error(error, exception);
+				logger.log(error, Severity.WARNING);
 			}
+
+			// Convert DataType to postgis from geojson
+			((GeoJsonDataType) dataResource.getDataType()).setDatabaseTableName(dataResource.getDataId());
+			((GeoJsonDataType) dataResource.getDataType()).setMimeType(MediaType.APPLICATION_JSON_VALUE);
+
+			dataResource.spatialMetadata = spatialMetadata;
 		}
 
 		logger.log(String.format("Completed Feature Data from GeoJSON File for Data %s", dataResource.getDataId()), Severity.INFORMATIONAL,
@@ -158,11 +214,10 @@ public class GeoJsonInspector implements InspectorType {
 	 * @return File object
 	 */
 	private InputStream getGeoJsonInputStream(DataResource dataResource) throws IOException, AmazonClientException, InvalidInputException {
-		FileAccessFactory fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
 		InputStream inputStream;
 
 		if (((GeoJsonDataType) dataResource.getDataType()).getLocation() != null) {
-			inputStream = fileFactory.getFile(((GeoJsonDataType) dataResource.getDataType()).getLocation());
+			inputStream = contentSpool.openStream(dataResource);
 		} else {
 			String geoJsonContent = ((GeoJsonDataType) dataResource.getDataType()).getGeoJsonContent();
 			inputStream = IOUtils.toInputStream(geoJsonContent, "UTF-8");
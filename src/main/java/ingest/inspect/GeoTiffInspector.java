@@ -41,10 +41,10 @@ import com.amazonaws.AmazonClientException;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
 import ingest.utility.IngestUtilities;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
-import model.data.type.RasterDataType;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
 import model.logger.Severity;
@@ -62,12 +62,12 @@ public class GeoTiffInspector implements InspectorType {
 	private PiazzaLogger logger;
 	@Autowired
 	private IngestUtilities ingestUtilities;
+	@Autowired
+	private CpuBoundLimiter cpuBoundLimiter;
 	@Value("${data.temp.path}")
 	private String DATA_TEMP_PATH;
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
-	private String AMAZONS3_PRIVATE_KEY;
+	@Autowired
+	private ContentSpool contentSpool;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(GeoTiffInspector.class);
 
@@ -82,7 +82,15 @@ public class GeoTiffInspector implements InspectorType {
 
 		File geoTiffFile = new File(fileName);
 		GridCoverage2DReader reader = getGridCoverage(dataResource, geoTiffFile);
-		GridCoverage2D coverage = (GridCoverage2D) reader.read(null);
+
+		// Decoding the coverage is CPU-bound; limit how many Jobs do so at once
+		GridCoverage2D coverage;
+		cpuBoundLimiter.acquire();
+		try {
+			coverage = (GridCoverage2D) reader.read(null);
+		} finally {
+			cpuBoundLimiter.release();
+		}
 		CoordinateReferenceSystem coordinateReferenceSystem = coverage.getCoordinateReferenceSystem();
 		double[] upperRightCorner = coverage.getEnvelope().getUpperCorner().getDirectPosition().getCoordinate();
 		double[] lowerLeftCorner = coverage.getEnvelope().getLowerCorner().getDirectPosition().getCoordinate();
@@ -144,9 +152,8 @@ public class GeoTiffInspector implements InspectorType {
 	 */
 	private GridCoverage2DReader getGridCoverage(DataResource dataResource, File file)
 			throws AmazonClientException, InvalidInputException, IOException {
-		// Get the file from S3
-		FileAccessFactory fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-		InputStream tiffFileStream = fileFactory.getFile(((RasterDataType) dataResource.getDataType()).getLocation());
+		// Get the file from the spool, or from S3 if it was not spooled
+		InputStream tiffFileStream = contentSpool.openStream(dataResource);
 		FileUtils.copyInputStreamToFile(tiffFileStream, file);
 
 		// Read the coverage file
@@ -25,6 +25,7 @@ import com.mongodb.MongoInterruptedException;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import ingest.model.WorkloadClass;
 import ingest.persist.PersistMetadata;
 import model.data.DataResource;
 import model.data.DataType;
@@ -61,7 +62,7 @@ public class Inspector {
 	private final static Logger LOGGER = LoggerFactory.getLogger(Inspector.class);
 
 	/**
-	 * Inspects the DataResource passed into the Piazza system.
+	 * Inspects the DataResource passed into the Piazza system, and stores its metadata.
 	 * 
 	 * @param dataResource
 	 *            The Data resource to be ingested
@@ -69,19 +70,39 @@ public class Inspector {
 	 *            True if Piazza should host the resource, false if not
 	 */
 	public void inspect(DataResource dataResource, boolean host) throws DataInspectException, InterruptedException {
+		persistMetadata(inspectData(dataResource, host));
+	}
+
+	/**
+	 * Inspects the DataResource passed into the Piazza system, without storing its metadata.
+	 * 
+	 * @param dataResource
+	 *            The Data resource to be ingested
+	 * @param host
+	 *            True if Piazza should host the resource, false if not
+	 * @return The inspected Data resource
+	 */
+	public DataResource inspectData(DataResource dataResource, boolean host) throws DataInspectException {
 		// Inspect the resource based on the type it is, and add any metadata if
 		// possible. If hosted, the Inspector will handle this as well.
 		try {
 			InspectorType inspector = getInspector(dataResource);
-			dataResource = inspector.inspect(dataResource, host);
+			return inspector.inspect(dataResource, host);
 		} catch (Exception exception) {
 			// If any errors occur during inspection.
 			String error = "Error Inspecting Data: " + exception.getMessage();
 			LOGGER.error(error, exception);
 			throw new DataInspectException(exception.getMessage());
 		}
+	}
 
-		// Store the metadata in the Resources collection
+	/**
+	 * Stores the metadata of the inspected DataResource in the Resources collection.
+	 * 
+	 * @param dataResource
+	 *            The inspected Data resource
+	 */
+	public void persistMetadata(DataResource dataResource) throws InterruptedException {
 		try {
 			metadataPersist.insertData(dataResource);
 		} catch (MongoException exception) {
@@ -127,4 +148,34 @@ public class Inspector {
 
 		throw new InvalidInputException("An Inspector was not found for the following data type: " + dataType.getClass().getSimpleName());
 	}
+
+	/**
+	 * Determines the class of workload that inspecting the DataResource will incur, so that it may be executed on a
+	 * Thread Pool alongside Jobs of similar cost. This mirrors the dispatch of {@link #getInspector(DataResource)}.
+	 * 
+	 * @param dataResource
+	 *            The Data to inspect
+	 * @param host
+	 *            True if Piazza should host the resource, false if not
+	 * @return The workload class of the inspection
+	 */
+	public WorkloadClass getWorkloadClass(DataResource dataResource, boolean host) {
+		DataType dataType = dataResource.getDataType();
+		if (dataType instanceof RasterDataType) {
+			return WorkloadClass.RASTER;
+		}
+		if (dataType instanceof ShapefileDataType) {
+			return WorkloadClass.VECTOR_HOSTING;
+		}
+		if ((dataType instanceof WfsDataType) || (dataType instanceof GeoJsonDataType)) {
+			if (host) {
+				return WorkloadClass.VECTOR_HOSTING;
+			}
+			return (dataType instanceof WfsDataType) ? WorkloadClass.REMOTE_METADATA : WorkloadClass.LIGHTWEIGHT;
+		}
+		if (dataType instanceof PointCloudDataType) {
+			return WorkloadClass.REMOTE_METADATA;
+		}
+		return WorkloadClass.LIGHTWEIGHT;
+	}
 }
@@ -18,6 +18,8 @@ package ingest.inspect;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URL;
+import java.util.zip.ZipFile;
 
 import org.apache.commons.io.FileUtils;
 import org.geotools.data.FeatureSource;
@@ -36,9 +38,10 @@ import com.amazonaws.AmazonClientException;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import ingest.utility.ContentSpool;
 import ingest.utility.IngestUtilities;
+import ingest.utility.ShapefileHeader;
 import model.data.DataResource;
-import model.data.location.FileAccessFactory;
 import model.data.type.ShapefileDataType;
 import model.job.metadata.SpatialMetadata;
 import model.logger.AuditElement;
@@ -68,85 +71,190 @@ public class ShapefileInspector implements InspectorType {
 	private String POSTGRES_SCHEMA;
 	@Value("${data.temp.path}")
 	private String DATA_TEMP_PATH;
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key}")
-	private String AMAZONS3_PRIVATE_KEY;
+	@Value("${shapefile.header.metadata.enabled}")
+	private boolean HEADER_METADATA_ENABLED;
+	@Value("${shapefile.archive.read.enabled}")
+	private boolean ARCHIVE_READ_ENABLED;
 	@Autowired
 	private PiazzaLogger logger;
 	@Autowired
 	private IngestUtilities ingestUtilities;
+	@Autowired
+	private ContentSpool contentSpool;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(ShapefileInspector.class);
 
 	@Override
 	public DataResource inspect(DataResource dataResource, boolean host)
 			throws DataInspectException, AmazonClientException, InvalidInputException, IOException, FactoryException {
-		// Get the Shapefile and write it to disk for temporary use.
-		FileAccessFactory fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-		InputStream shapefileStream = fileFactory.getFile(((ShapefileDataType) dataResource.getDataType()).getLocation());
-		File shapefileZip = new File(String.format("%s%s%s.%s", DATA_TEMP_PATH, File.separator, dataResource.getDataId(), "zip"));
-		FileUtils.copyInputStreamToFile(shapefileStream, shapefileZip);
+		// When not hosting, the metadata can be read from the Shapefile headers without reading any Features
+		if (!host && HEADER_METADATA_ENABLED) {
+			SpatialMetadata spatialMetadata = getHeaderMetadata(dataResource);
+			if (spatialMetadata != null) {
+				dataResource.spatialMetadata = spatialMetadata;
+				setProjectedMetadata(dataResource);
+				logger.log(String.format("Completed inspecting shapefile %s from its headers", dataResource.getDataId()),
+						Severity.INFORMATIONAL, new AuditElement("ingest", "completeInspectingShapefile", dataResource.getDataId()));
+				return dataResource;
+			}
+		}
 
-		// Unzip the Shapefile into a temporary directory, which will allow us
-		// to parse the Shapefile's sidecar files.
-		String extractPath = DATA_TEMP_PATH + File.separator + dataResource.getDataId();
+		// Read the spooled zip in place, or write it to disk for temporary use.
+		File shapefileZip = contentSpool.getSpoolFile(dataResource);
+		boolean temporaryZip = (shapefileZip == null);
+		if (temporaryZip) {
+			shapefileZip = copyToTemporaryZip(dataResource);
+		}
 
-		// Log the file locations.
-		logger.log(
-				String.format("Inspecting shapefile. Copied Zip to temporary path %s. Inflating contents into %s.",
-						shapefileZip.getAbsolutePath(), extractPath),
-				Severity.INFORMATIONAL, new AuditElement("ingest", "beginInspectingShapefile", extractPath));
+		// Read the Shapefile directly from the zip entries when they allow it. Otherwise, unzip the Shapefile into a
+		// temporary directory, which will allow us to parse the Shapefile's sidecar files.
+		URL archivedShapefile = null;
+		String extractPath = null;
+		FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = null;
+		try {
+			archivedShapefile = ARCHIVE_READ_ENABLED ? ingestUtilities.findArchivedShapefile(shapefileZip) : null;
+			if (archivedShapefile != null) {
+				logger.log(String.format("Inspecting shapefile in place from Zip %s.", shapefileZip.getAbsolutePath()),
+						Severity.INFORMATIONAL, new AuditElement("ingest", "beginInspectingShapefile", dataResource.getDataId()));
 
-		ingestUtilities.extractZip(shapefileZip.getCanonicalPath(), extractPath);
-		// Get the path to the actual *.shp file
-		String shapefilePath = String.format("%s%s%s", extractPath, File.separator, ingestUtilities.findShapeFileName(extractPath));
+				// Get the Store information from GeoTools for accessing the Shapefile
+				featureSource = ingestUtilities.getShapefileDataStore(archivedShapefile);
+			} else {
+				extractPath = DATA_TEMP_PATH + File.separator + dataResource.getDataId();
 
-		// Get the Store information from GeoTools for accessing the Shapefile
-		FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = ingestUtilities.getShapefileDataStore(shapefilePath);
+				// Log the file locations.
+				logger.log(
+						String.format("Inspecting shapefile. Copied Zip to temporary path %s. Inflating contents into %s.",
+								shapefileZip.getAbsolutePath(), extractPath),
+						Severity.INFORMATIONAL, new AuditElement("ingest", "beginInspectingShapefile", extractPath));
 
-		// Get the Bounding Box, set the Spatial Metadata
-		SpatialMetadata spatialMetadata = new SpatialMetadata();
-		ReferencedEnvelope envelope = featureSource.getBounds();
-		spatialMetadata.setMinX(envelope.getMinX());
-		spatialMetadata.setMinY(envelope.getMinY());
-		spatialMetadata.setMaxX(envelope.getMaxX());
-		spatialMetadata.setMaxY(envelope.getMaxY());
-		spatialMetadata.setNumFeatures(featureSource.getFeatures().size());
+				ingestUtilities.extractZip(shapefileZip.getCanonicalPath(), extractPath);
+				// Get the path to the actual *.shp file
+				String shapefilePath = String.format("%s%s%s", extractPath, File.separator, ingestUtilities.findShapeFileName(extractPath));
+
+				// Get the Store information from GeoTools for accessing the Shapefile
+				featureSource = ingestUtilities.getShapefileDataStore(shapefilePath);
+			}
+
+			// Get the Bounding Box, set the Spatial Metadata
+			SpatialMetadata spatialMetadata = new SpatialMetadata();
+			ReferencedEnvelope envelope = featureSource.getBounds();
+			spatialMetadata.setMinX(envelope.getMinX());
+			spatialMetadata.setMinY(envelope.getMinY());
+			spatialMetadata.setMaxX(envelope.getMaxX());
+			spatialMetadata.setMaxY(envelope.getMaxY());
+			spatialMetadata.setNumFeatures(featureSource.getFeatures().size());
+
+			// Get the SRS and EPSG codes
+			spatialMetadata.setCoordinateReferenceSystem(featureSource.getInfo().getCRS().toString());
+			spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(featureSource.getInfo().getCRS(), true));
+
+			// Set the spatial metadata
+			dataResource.spatialMetadata = spatialMetadata;
+
+			// Populate the projected EPSG:4326 spatial metadata
+			setProjectedMetadata(dataResource);
+
+			// Process and persist shapefile file into the Piazza PostGIS database.
+			if (host) {
+				((ShapefileDataType) dataResource.getDataType()).setDatabaseTableName(dataResource.getDataId());
+				ingestUtilities.persistFeatures(featureSource, dataResource, featureSource.getSchema());
+			}
+		} finally {
+			// Release the Shapefile, and clean up the temporary Shapefile and the directory that contained the expanded
+			// contents, whether or not the inspection succeeded.
+			if (featureSource != null) {
+				featureSource.getDataStore().dispose();
+			}
+			if (archivedShapefile != null) {
+				ingestUtilities.releaseArchivedShapefile(archivedShapefile);
+			}
+			if (temporaryZip) {
+				shapefileZip.delete();
+			}
+			if (extractPath != null) {
+				ingestUtilities.deleteDirectoryRecursive(new File(extractPath));
+			}
+		}
+
+		logger.log(String.format("Completed inspecting shapefile %s", dataResource.getDataId()), Severity.INFORMATIONAL,
+				new AuditElement("ingest", "completeInspectingShapefile", dataResource.getDataId()));
+
+		// Return the populated metadata
+		return dataResource;
+	}
 
-		// Get the SRS and EPSG codes
-		spatialMetadata.setCoordinateReferenceSystem(featureSource.getInfo().getCRS().toString());
-		spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(featureSource.getInfo().getCRS(), true));
+	/**
+	 * Reads the spatial metadata of a zipped Shapefile from the headers of its .shp, .shx, and .prj files. The spooled
+	 * file is read in place when the content was spooled to disk.
+	 * 
+	 * @param dataResource
+	 *            The Shapefile Data Resource
+	 * @return The spatial metadata, or null if the headers could not be read, in which case the Features must be read
+	 */
+	private SpatialMetadata getHeaderMetadata(DataResource dataResource)
+			throws AmazonClientException, InvalidInputException, IOException, FactoryException {
+		File shapefileZip = contentSpool.getSpoolFile(dataResource);
+		boolean temporary = (shapefileZip == null);
+		if (temporary) {
+			shapefileZip = copyToTemporaryZip(dataResource);
+		}
+
+		ShapefileHeader header;
+		try (ZipFile zipFile = new ZipFile(shapefileZip)) {
+			header = ShapefileHeader.read(zipFile);
+		} catch (IOException exception) {
+			String error = String.format("Could not read the Shapefile headers of Data %s, reading its Features instead: %s",
+					dataResource.getDataId(), exception.getMessage());
+			LOGGER.warn(error, exception);
+			header = null;
+		} finally {
+			if (temporary) {
+				shapefileZip.delete();
+			}
+		}
+		if (header == null) {
+			return null;
+		}
 
-		// Set the spatial metadata
-		dataResource.spatialMetadata = spatialMetadata;
+		SpatialMetadata spatialMetadata = new SpatialMetadata();
+		spatialMetadata.setMinX(header.getMinX());
+		spatialMetadata.setMinY(header.getMinY());
+		spatialMetadata.setMaxX(header.getMaxX());
+		spatialMetadata.setMaxY(header.getMaxY());
+		spatialMetadata.setNumFeatures(header.getRecordCount());
+		spatialMetadata.setCoordinateReferenceSystem(header.getCoordinateReferenceSystem().toString());
+		spatialMetadata.setEpsgCode(CRS.lookupEpsgCode(header.getCoordinateReferenceSystem(), true));
+		return spatialMetadata;
+	}
+
+	/**
+	 * Writes a Shapefile zip that was not spooled to disk into the temporary path.
+	 * 
+	 * @param dataResource
+	 *            The Shapefile Data Resource
+	 * @return The temporary zip, which the caller must delete
+	 */
+	private File copyToTemporaryZip(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
+		File shapefileZip = new File(String.format("%s%s%s.%s", DATA_TEMP_PATH, File.separator, dataResource.getDataId(), "zip"));
+		try (InputStream shapefileStream = contentSpool.openStream(dataResource)) {
+			FileUtils.copyInputStreamToFile(shapefileStream, shapefileZip);
+		}
+		return shapefileZip;
+	}
 
-		// Populate the projected EPSG:4326 spatial metadata
+	/**
+	 * Populates the projected EPSG:4326 spatial metadata of the Data Resource.
+	 */
+	private void setProjectedMetadata(DataResource dataResource) {
 		try {
-			dataResource.spatialMetadata.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(spatialMetadata));
+			dataResource.spatialMetadata
+					.setProjectedSpatialMetadata(ingestUtilities.getProjectedSpatialMetadata(dataResource.spatialMetadata));
 		} catch (Exception exception) {
 			String error = String.format("Could not project the spatial metadata for Data %s because of exception: %s",
 					dataResource.getDataId(), exception.getMessage());
 			LOGGER.error(error, exception);
 			logger.log(error, Severity.WARNING);
 		}
-
-		// Process and persist shapefile file into the Piazza PostGIS database.
-		if (host) {
-			((ShapefileDataType) dataResource.getDataType()).setDatabaseTableName(dataResource.getDataId());
-			ingestUtilities.persistFeatures(featureSource, dataResource, featureSource.getSchema());
-		}
-
-		// Clean up the temporary Shapefile, and the directory that contained
-		// the expanded contents.
-		shapefileZip.delete();
-		ingestUtilities.deleteDirectoryRecursive(new File(extractPath));
-		featureSource.getDataStore().dispose();
-
-		logger.log(String.format("Completed inspecting shapefile %s", extractPath), Severity.INFORMATIONAL,
-				new AuditElement("ingest", "completeInspectingShapefile", extractPath));
-
-		// Return the populated metadata
-		return dataResource;
 	}
 }
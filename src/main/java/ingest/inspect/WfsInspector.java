@@ -25,7 +25,6 @@ import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureSource;
 import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureCollection;
-import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.geometry.jts.ReferencedEnvelope;
 import org.geotools.referencing.CRS;
 import org.opengis.feature.simple.SimpleFeature;
@@ -41,6 +40,7 @@ import com.amazonaws.AmazonClientException;
 
 import exception.DataInspectException;
 import exception.InvalidInputException;
+import ingest.persist.PostGisStore;
 import ingest.utility.IngestUtilities;
 import model.data.DataResource;
 import model.data.type.PostGISDataType;
@@ -64,18 +64,10 @@ public class WfsInspector implements InspectorType {
 	@Autowired
 	private PiazzaLogger logger;
 	private static final String CAPABILITIES_TEMPLATE = "%s?SERVICE=wfs&REQUEST=GetCapabilities&VERSION=%s";
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.hostname}")
-	private String POSTGRES_HOST;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.port}")
-	private String POSTGRES_PORT;
 	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.database}")
 	private String POSTGRES_DB_NAME;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.username}")
-	private String POSTGRES_USER;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.password}")
-	private String POSTGRES_PASSWORD;
-	@Value("${postgres.schema}")
-	private String POSTGRES_SCHEMA;
+	@Autowired
+	private PostGisStore postGis;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(WfsInspector.class);
 
@@ -139,16 +131,14 @@ public class WfsInspector implements InspectorType {
 	 */
 	private void copyWfsToPostGis(DataResource dataResource, FeatureSource<SimpleFeatureType, SimpleFeature> wfsFeatureSource)
 			throws IOException {
-		// Create a Connection to the Piazza PostGIS Database for writing.
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		// Get the shared Connection to the Piazza PostGIS Database for writing.
+		DataStore postGisStore = postGis.getDataStore();
 
 		// Create the Schema in the Data Store
 		String tableName = dataResource.getDataId();
 		SimpleFeatureType wfsSchema = wfsFeatureSource.getSchema();
 		SimpleFeatureType postGisSchema = GeoToolsUtil.cloneFeatureType(wfsSchema, tableName);
 		postGisStore.createSchema(postGisSchema);
-		SimpleFeatureStore postGisFeatureStore = (SimpleFeatureStore) postGisStore.getFeatureSource(tableName);
 
 		logger.log(String.format("Copying Data %s to PostGIS Table %s", dataResource.getDataId(), tableName), Severity.INFORMATIONAL,
 				new AuditElement("ingest", "copyWfsToPostGisTable", tableName));
@@ -162,7 +152,7 @@ public class WfsInspector implements InspectorType {
 				transaction.close();
 				throw new IOException("No features could be collected from the WFS. Nothing to store.");
 			}
-			postGisFeatureStore.addFeatures(wfsFeatures);
+			ingestUtilities.loadFeatures(postGisStore, tableName, wfsFeatures);
 			// Commit the changes and clean up
 			transaction.commit();
 			transaction.close();
@@ -173,9 +163,6 @@ public class WfsInspector implements InspectorType {
 			LOGGER.error("Error during WFS to PostGIS transaction, had to roll back changes.", exception);
 			// Rethrow
 			throw new IOException(exception.getMessage());
-		} finally {
-			// Clean up the PostGIS Store
-			postGisStore.dispose();
 		}
 
 		// Update the Metadata of the DataResource to the new PostGIS table, and
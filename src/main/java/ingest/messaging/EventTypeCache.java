@@ -0,0 +1,186 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestTemplate;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import model.response.EventTypeListResponse;
+
+/**
+ * Caches the Ids of pz-workflow Event Types by name, so that firing an Event does not first require a lookup of its
+ * Event Type.
+ *
+ * <p>
+ * Cached Ids are refreshed once they are older than the configured time-to-live. Only one Thread loads a given Event
+ * Type at a time; concurrent callers wait for, and share, the result of that load. If a refresh fails, the previously
+ * cached Id continues to be served until the next refresh. Callers should {@link #invalidate(String)} an Id that
+ * pz-workflow rejects, so that the next caller loads it afresh.
+ * </p>
+ */
+@Component
+public class EventTypeCache {
+	@Value("${workflow.url}")
+	private String WORKFLOW_URL;
+	@Value("${workflow.eventtype.cache.ttl.seconds}")
+	private long cacheTtlSeconds;
+
+	@Autowired
+	@Qualifier("notificationRestTemplate")
+	private RestTemplate restTemplate;
+
+	private final ConcurrentMap<String, CachedEventType> cache = new ConcurrentHashMap<String, CachedEventType>();
+	private final ConcurrentMap<String, FutureTask<String>> loads = new ConcurrentHashMap<String, FutureTask<String>>();
+	private final AtomicLong hitCount = new AtomicLong(0);
+	private final AtomicLong loadCount = new AtomicLong(0);
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(EventTypeCache.class);
+
+	/**
+	 * Gets the Id of the Event Type, loading it from pz-workflow if it is not cached or its cached Id has expired.
+	 *
+	 * @param eventTypeName
+	 *            The name of the Event Type
+	 * @return The Id of the Event Type
+	 * @throws IOException
+	 *             If the Event Type could not be loaded, and no previously cached Id is available
+	 */
+	public String getEventTypeId(final String eventTypeName) throws IOException {
+		CachedEventType cached = cache.get(eventTypeName);
+		if ((cached != null) && !cached.isExpired()) {
+			hitCount.incrementAndGet();
+			return cached.eventTypeId;
+		}
+
+		// Load the Event Type, unless another Thread is already doing so
+		FutureTask<String> load = new FutureTask<String>(new Callable<String>() {
+			@Override
+			public String call() throws Exception {
+				String eventTypeId = fetchEventTypeId(eventTypeName);
+				cache.put(eventTypeName, new CachedEventType(eventTypeId, System.currentTimeMillis()));
+				return eventTypeId;
+			}
+		});
+		FutureTask<String> existingLoad = loads.putIfAbsent(eventTypeName, load);
+		if (existingLoad == null) {
+			loadCount.incrementAndGet();
+			try {
+				load.run();
+			} finally {
+				loads.remove(eventTypeName, load);
+			}
+		} else {
+			load = existingLoad;
+		}
+
+		try {
+			return load.get();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(String.format("Interrupted while loading Event Type %s", eventTypeName));
+		} catch (ExecutionException exception) {
+			if (cached != null) {
+				// Serve the stale Id until a refresh succeeds
+				LOGGER.warn(String.format("Could not refresh Event Type %s; continuing to use cached Id %s: %s", eventTypeName,
+						cached.eventTypeId, exception.getCause().getMessage()));
+				return cached.eventTypeId;
+			}
+			if (exception.getCause() instanceof IOException) {
+				throw (IOException) exception.getCause();
+			}
+			if (exception.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) exception.getCause();
+			}
+			throw new IOException(exception.getCause());
+		}
+	}
+
+	/**
+	 * Discards the cached Id of the Event Type.
+	 *
+	 * @param eventTypeName
+	 *            The name of the Event Type
+	 */
+	public void invalidate(String eventTypeName) {
+		cache.remove(eventTypeName);
+	}
+
+	/**
+	 * Gets the hit and load counts of the cache.
+	 *
+	 * @return Map of cache statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("hits", hitCount.get());
+		stats.put("loads", loadCount.get());
+		stats.put("cached", cache.size());
+		return stats;
+	}
+
+	/**
+	 * Looks up the Id of the Event Type from pz-workflow.
+	 *
+	 * @param eventTypeName
+	 *            The name of the Event Type
+	 * @return The Id of the Event Type
+	 */
+	protected String fetchEventTypeId(String eventTypeName) throws IOException {
+		String url = String.format("%s/%s?name=%s", WORKFLOW_URL, "eventType", eventTypeName);
+		EventTypeListResponse response = new ObjectMapper().readValue(restTemplate.getForObject(url, String.class),
+				EventTypeListResponse.class);
+		if ((response.data == null) || response.data.isEmpty()) {
+			throw new IOException(String.format("Event Type %s was not found in the Workflow Service.", eventTypeName));
+		}
+		return response.data.get(0).eventTypeId;
+	}
+
+	/**
+	 * A cached Event Type Id, and the time it was loaded.
+	 */
+	private class CachedEventType {
+		private final String eventTypeId;
+		private final long loadedTime;
+
+		public CachedEventType(String eventTypeId, long loadedTime) {
+			this.eventTypeId = eventTypeId;
+			this.loadedTime = loadedTime;
+		}
+
+		public boolean isExpired() {
+			return (System.currentTimeMillis() - loadedTime) > TimeUnit.SECONDS.toMillis(cacheTtlSeconds);
+		}
+	}
+}
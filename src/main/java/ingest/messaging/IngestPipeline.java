@@ -0,0 +1,350 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.stereotype.Component;
+
+import ingest.model.IngestTask;
+import ingest.model.RunningJob;
+import ingest.model.WorkloadClass;
+
+/**
+ * Runs Ingest Jobs through four stages, each on its own set of Threads:
+ *
+ * <ol>
+ * <li>Fetch: parse the Job, and copy the source file into Piazza S3</li>
+ * <li>Inspect: parse and host the Data, on the Thread Pool for the workload class of the Job</li>
+ * <li>Persist: store the metadata in Mongo, and report the Job as successful</li>
+ * <li>Notify: notify pz-search and pz-workflow of the new Data</li>
+ * </ol>
+ *
+ * <p>
+ * A Job only occupies one stage at a time, so the download of one Job overlaps with the inspection of another, and slow
+ * notifications drain in the background without holding an inspection Thread. Each stage has a bounded capacity. Jobs
+ * are admitted to the fetch stage only if both it and the inspection Thread Pool for their workload class have room;
+ * later handoffs wait for room in the next stage, so a backlog in any stage slows the stages before it.
+ * </p>
+ *
+ * <p>
+ * A Job is complete, and its callback invoked, once it leaves the notify stage or fails in any stage. If a Job is
+ * aborted, its current stage is interrupted, or it is dropped from the queue of its current stage, and it is reported
+ * as cancelled. A Job aborted once it has been persisted has already been reported as successful, so it only skips its
+ * notifications.
+ * </p>
+ */
+@Component
+public class IngestPipeline {
+	@Value("${pipeline.fetch.threads}")
+	private int fetchThreads;
+	@Value("${pipeline.fetch.queue}")
+	private int fetchQueue;
+	@Value("${pipeline.persist.threads}")
+	private int persistThreads;
+	@Value("${pipeline.persist.queue}")
+	private int persistQueue;
+	@Value("${pipeline.notify.threads}")
+	private int notifyThreads;
+	@Value("${pipeline.notify.queue}")
+	private int notifyQueue;
+
+	@Autowired
+	private IngestWorker ingestWorker;
+	@Autowired
+	private WorkloadExecutors workloadExecutors;
+
+	private PipelineStage fetchStage;
+	private PipelineStage persistStage;
+	private PipelineStage notifyStage;
+	private final AtomicInteger pendingCount = new AtomicInteger(0);
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(IngestPipeline.class);
+
+	/**
+	 * Creates the stages.
+	 */
+	@PostConstruct
+	public void initialize() {
+		fetchStage = new PipelineStage("fetch", fetchThreads, fetchQueue);
+		persistStage = new PipelineStage("persist", persistThreads, persistQueue);
+		notifyStage = new PipelineStage("notify", notifyThreads, notifyQueue);
+	}
+
+	/**
+	 * Stops the stages once the Jobs already in them have finished.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		fetchStage.shutdown();
+		persistStage.shutdown();
+		notifyStage.shutdown();
+	}
+
+	/**
+	 * Admits the Job to the pipeline.
+	 *
+	 * @param consumerRecord
+	 *            The Kafka Message containing the Job
+	 * @param producer
+	 *            The Kafka producer, used to send update messages
+	 * @param runningJob
+	 *            The registered Job
+	 * @param workloadClass
+	 *            The workload class the Job will be inspected on
+	 * @throws TaskRejectedException
+	 *             If the pipeline does not have room for the Job, and it must be retried later
+	 */
+	public void submit(ConsumerRecord<String, String> consumerRecord, Producer<String, String> producer, RunningJob runningJob,
+			WorkloadClass workloadClass) throws TaskRejectedException {
+		workloadExecutors.reserve(workloadClass);
+		final PipelineJob job = new PipelineJob(new IngestTask(consumerRecord, producer, runningJob.getCallback()), runningJob,
+				workloadClass);
+		pendingCount.incrementAndGet();
+		FutureTask<Void> fetchTask = createStageTask(job, new Runnable() {
+			@Override
+			public void run() {
+				fetch(job);
+			}
+		});
+		if (!fetchStage.offer(fetchTask)) {
+			pendingCount.decrementAndGet();
+			workloadExecutors.release(workloadClass);
+			throw new TaskRejectedException("The fetch stage is at capacity.");
+		}
+		runningJob.attach(fetchTask);
+	}
+
+	/**
+	 * Gets the number of Jobs that have been admitted, and not yet completed.
+	 *
+	 * @return The count of Jobs
+	 */
+	public int getPendingCount() {
+		return pendingCount.get();
+	}
+
+	/**
+	 * Gets the occupancy of each stage. The occupancy of the inspect stage is that of the workload Thread Pools.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("pendingJobs", pendingCount.get());
+		stats.put(fetchStage.getName(), fetchStage.getStats());
+		stats.put(persistStage.getName(), persistStage.getStats());
+		stats.put(notifyStage.getName(), notifyStage.getStats());
+		return stats;
+	}
+
+	/**
+	 * Fetch stage, which hands the Job to the Thread Pool of its workload class. That pool has a slot reserved for the
+	 * Job, and a slot is only released once the Job holding it is done with its inspection Thread, so at most this waits
+	 * for such a Thread to return to the pool.
+	 */
+	private void fetch(final PipelineJob job) {
+		try {
+			ingestWorker.fetch(job.task);
+		} catch (Exception exception) {
+			fail(job, exception);
+			return;
+		}
+		if (job.runningJob.isCancelled()) {
+			fail(job, new InterruptedException());
+			return;
+		}
+		FutureTask<Void> inspectTask = createStageTask(job, new Runnable() {
+			@Override
+			public void run() {
+				inspect(job);
+			}
+		});
+		try {
+			workloadExecutors.execute(job.workloadClass, inspectTask);
+		} catch (TaskRejectedException exception) {
+			fail(job, exception);
+			return;
+		}
+		job.runningJob.attach(inspectTask);
+	}
+
+	/**
+	 * Inspect stage. The workload slot of the Job is freed only once it has been handed to the persist stage, since the
+	 * handoff waits on this Thread for room in that stage, and the slot must not be reserved again while this Thread is
+	 * still busy.
+	 */
+	private void inspect(final PipelineJob job) {
+		try {
+			try {
+				ingestWorker.inspect(job.task);
+			} catch (Exception exception) {
+				fail(job, exception);
+				return;
+			}
+			handOff(job, persistStage, new Runnable() {
+				@Override
+				public void run() {
+					persist(job);
+				}
+			});
+		} finally {
+			releaseWorkloadSlot(job);
+		}
+	}
+
+	/**
+	 * Persist stage
+	 */
+	private void persist(final PipelineJob job) {
+		try {
+			ingestWorker.persist(job.task);
+		} catch (Exception exception) {
+			fail(job, exception);
+			return;
+		}
+		job.persisted = true;
+		handOff(job, notifyStage, new Runnable() {
+			@Override
+			public void run() {
+				sendNotifications(job);
+			}
+		});
+	}
+
+	/**
+	 * Notify stage, the last stage of the Job
+	 */
+	private void sendNotifications(PipelineJob job) {
+		try {
+			ingestWorker.sendNotifications(job.task);
+		} finally {
+			finish(job);
+		}
+	}
+
+	/**
+	 * Hands the Job to the next stage, waiting for room in that stage.
+	 */
+	private void handOff(PipelineJob job, PipelineStage stage, Runnable work) {
+		if (job.runningJob.isCancelled()) {
+			fail(job, new InterruptedException());
+			return;
+		}
+		FutureTask<Void> stageTask = createStageTask(job, work);
+		try {
+			stage.put(stageTask);
+		} catch (InterruptedException | RejectedExecutionException exception) {
+			fail(job, exception);
+			return;
+		}
+		job.runningJob.attach(stageTask);
+	}
+
+	/**
+	 * Wraps the work of a stage so that it can be cancelled when the Job is aborted. If the Job is aborted before the
+	 * work starts, the work never runs, and the Job is failed as cancelled instead; exactly one of the two happens.
+	 */
+	private FutureTask<Void> createStageTask(final PipelineJob job, final Runnable work) {
+		final AtomicBoolean claimed = new AtomicBoolean(false);
+		return new FutureTask<Void>(new Runnable() {
+			@Override
+			public void run() {
+				if (claimed.compareAndSet(false, true)) {
+					work.run();
+				}
+			}
+		}, null) {
+			@Override
+			protected void done() {
+				if (isCancelled() && claimed.compareAndSet(false, true)) {
+					fail(job, new InterruptedException());
+				}
+			}
+		};
+	}
+
+	/**
+	 * Reports the failure of the Job, and completes it. The failure is reported at most once, even if a stage fails as
+	 * the Job is aborted. Once the Job has been persisted, its success has already been reported, so a Job aborted or
+	 * rejected on its way to the notify stage is completed without its notifications instead.
+	 */
+	private void fail(PipelineJob job, Exception exception) {
+		if (job.finished.get() || !job.failureReported.compareAndSet(false, true)) {
+			return;
+		}
+		if (job.persisted) {
+			LOGGER.warn(String.format("Skipping the notifications of persisted Job %s: %s", job.task.getJobId(), exception.getMessage()));
+		} else {
+			ingestWorker.handleFailure(job.task, exception);
+		}
+		finish(job);
+	}
+
+	/**
+	 * Completes the Job, freeing anything it still holds.
+	 */
+	private void finish(PipelineJob job) {
+		if (job.finished.compareAndSet(false, true)) {
+			releaseWorkloadSlot(job);
+			pendingCount.decrementAndGet();
+			ingestWorker.complete(job.task);
+		}
+	}
+
+	/**
+	 * Releases the workload slot reserved for the Job upon admission, if it has not already been released.
+	 */
+	private void releaseWorkloadSlot(PipelineJob job) {
+		if (job.holdsWorkloadSlot.compareAndSet(true, false)) {
+			workloadExecutors.release(job.workloadClass);
+		}
+	}
+
+	/**
+	 * A Job moving through the pipeline.
+	 */
+	private static class PipelineJob {
+		private final IngestTask task;
+		private final RunningJob runningJob;
+		private final WorkloadClass workloadClass;
+		private final AtomicBoolean holdsWorkloadSlot = new AtomicBoolean(true);
+		private final AtomicBoolean finished = new AtomicBoolean(false);
+		private final AtomicBoolean failureReported = new AtomicBoolean(false);
+		private volatile boolean persisted = false;
+
+		public PipelineJob(IngestTask task, RunningJob runningJob, WorkloadClass workloadClass) {
+			this.task = task;
+			this.runningJob = runningJob;
+			this.workloadClass = workloadClass;
+		}
+	}
+}
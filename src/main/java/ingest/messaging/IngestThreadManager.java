@@ -15,30 +15,48 @@
  **/
 package ingest.messaging;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
+import java.util.Queue;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.Future;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.PostConstruct;
 
+import org.apache.kafka.clients.consumer.CommitFailedException;
 import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRebalanceListener;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
 import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.errors.RetriableException;
 import org.apache.kafka.common.errors.WakeupException;
+import org.apache.kafka.common.serialization.StringDeserializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
 import org.springframework.stereotype.Component;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 
+import ingest.model.RunningJob;
+import ingest.model.WorkloadClass;
 import messaging.job.JobMessageFactory;
 import messaging.job.KafkaClientFactory;
 import messaging.job.WorkerCallback;
@@ -62,6 +80,10 @@ public class IngestThreadManager {
 	private PiazzaLogger logger;
 	@Autowired
 	private IngestWorker ingestWorker;
+	@Autowired
+	private IngestPipeline ingestPipeline;
+	@Autowired
+	private RunningJobRegistry jobRegistry;
 
 	@Value("${vcap.services.pz-kafka.credentials.host}")
 	private String KAFKA_ADDRESS;
@@ -71,10 +93,18 @@ public class IngestThreadManager {
 	private String KAFKA_GROUP;
 	@Value("${SPACE}")
 	private String SPACE;
+	@Value("${kafka.backpressure.high.water}")
+	private int backpressureHighWater;
+	@Value("${kafka.backpressure.low.water}")
+	private int backpressureLowWater;
+
+	@Value("${kafka.consumer.threads}")
+	private int consumerThreads;
 
 	private Producer<String, String> producer;
-	private Map<String, Future<?>> runningJobs;
+	private final List<GroupConsumer> groupConsumers = new CopyOnWriteArrayList<GroupConsumer>();
 	private final AtomicBoolean closed = new AtomicBoolean(false);
+	private final AtomicLong pauseCount = new AtomicLong(0);
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(IngestThreadManager.class);
 
@@ -97,17 +127,14 @@ public class IngestThreadManager {
 		// Log the initialization.
 		logger.log(String.format("Ingest listening to Kafka at %s in space %s.", KAFKA_ADDRESS, SPACE), Severity.INFORMATIONAL);
 
-		// Initialize the Thread Pool and Map of running Threads
-		runningJobs = new HashMap<String, Future<?>>();
-
-		// Start polling for Kafka Jobs on the Group Consumer.. This occurs on a
-		// separate Thread so as not to block Spring.
-		Thread ingestJobsThread = new Thread() {
-			public void run() {
-				pollIngestJobs();
-			}
-		};
-		ingestJobsThread.start();
+		// Start polling for Kafka Jobs on the Group Consumers. Each member of
+		// the group polls on a separate Thread, so as not to block Spring, and
+		// is assigned its own subset of the topic partitions.
+		for (int index = 0; index < Math.max(1, consumerThreads); index++) {
+			GroupConsumer groupConsumer = new GroupConsumer(String.format("ingest-consumer-%s", index));
+			groupConsumers.add(groupConsumer);
+			new Thread(groupConsumer, groupConsumer.name).start();
+		}
 
 		// Start polling for Kafka Abort Jobs on the unique Consumer.
 		Thread pollAbortThread = new Thread() {
@@ -119,44 +146,287 @@ public class IngestThreadManager {
 	}
 
 	/**
-	 * Begins listening for Ingest Jobs.
+	 * Creates the Group Consumer for Ingest Jobs. Unlike the default Consumer, this does not automatically commit
+	 * offsets; they are committed through the offset tracker so that Jobs still in flight are redelivered on failure.
+	 * 
+	 * @return The Consumer
 	 */
-	public void pollIngestJobs() {
-		try {
-			// Callback that will be invoked when a Worker completes. This will
-			// remove the Job Id from the running Jobs list.
+	private Consumer<String, String> createManualCommitConsumer() {
+		Properties properties = new Properties();
+		properties.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, String.format("%s:%s", KAFKA_HOST, KAFKA_PORT));
+		properties.put(ConsumerConfig.GROUP_ID_CONFIG, KAFKA_GROUP);
+		properties.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+		properties.put(ConsumerConfig.SESSION_TIMEOUT_MS_CONFIG, "30000");
+		properties.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+		properties.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+		return new KafkaConsumer<String, String>(properties);
+	}
+
+	/**
+	 * One member of the Ingest Job consumer group. Each member polls on its own Thread, owns the subset of partitions
+	 * that Kafka assigns to it, and tracks and commits the offsets of the Jobs it dispatches. Kafka Consumers are not
+	 * thread safe, so all access to the Consumer happens on the polling Thread; Workers only report completion to the
+	 * offset tracker.
+	 */
+	private class GroupConsumer implements Runnable, ConsumerRebalanceListener {
+		private final String name;
+		private final PartitionOffsetTracker offsetTracker = new PartitionOffsetTracker();
+		private final AtomicBoolean paused = new AtomicBoolean(false);
+		private final Queue<PendingDispatch> deferred = new ConcurrentLinkedQueue<PendingDispatch>();
+		private final Set<TopicPartition> deferredPartitions = new HashSet<TopicPartition>();
+		private Consumer<String, String> consumer;
+
+		public GroupConsumer(String name) {
+			this.name = name;
+		}
+
+		/**
+		 * Begins listening for Ingest Jobs.
+		 */
+		@Override
+		public void run() {
+			try {
+				// Create the General Group Consumer. Offsets are committed
+				// manually, only once the Jobs for those records have
+				// completed.
+				consumer = createManualCommitConsumer();
+				consumer.subscribe(Arrays.asList(String.format("%s-%s", INGEST_TOPIC_NAME, SPACE)), this);
+
+				// Poll
+				while (!closed.get()) {
+					// Retry records that were rejected by a full pipeline
+					retryDeferred();
+					ConsumerRecords<String, String> consumerRecords = consumer.poll(1000);
+					// Handle new Messages on this topic.
+					for (ConsumerRecord<String, String> consumerRecord : consumerRecords) {
+						dispatch(consumerRecord);
+					}
+					// Pause or resume consumption based on how much work is
+					// in the pipeline.
+					applyBackpressure();
+					// Commit the offsets of all contiguously completed records
+					commitCompletedOffsets();
+				}
+				commitCompletedOffsets();
+				consumer.close();
+			} catch (WakeupException exception) {
+				String error = String.format("Polling Thread %s forcefully closed: %s", name, exception.getMessage());
+				LOGGER.error(error, exception);
+				logger.log(error, Severity.ERROR);
+			}
+		}
+
+		/**
+		 * Hands the record to the Ingest pipeline, tracking both the running Job and the offset of its record. If the
+		 * pipeline, or the Thread Pool for the workload class of the Job, is full, the record is deferred and its
+		 * partition paused until the record can be submitted.
+		 * 
+		 * @param consumerRecord
+		 *            The record containing the Ingest Job
+		 */
+		private void dispatch(ConsumerRecord<String, String> consumerRecord) {
+			// Track the offset of this record until its Job completes
+			final TopicPartition partition = new TopicPartition(consumerRecord.topic(), consumerRecord.partition());
+			final long offset = consumerRecord.offset();
+			final long generation = offsetTracker.dispatched(partition, offset);
+
+			// Callback that will be invoked when the Worker completes. This
+			// will remove the Job from the running Jobs registry and allow the
+			// offset of its record to be committed.
 			WorkerCallback callback = new WorkerCallback() {
 				@Override
 				public void onComplete(String jobId) {
-					runningJobs.remove(jobId);
+					jobRegistry.remove(jobId, this);
+					offsetTracker.completed(partition, offset, generation);
 				}
 			};
 
-			// Create the General Group Consumer
-			Consumer<String, String> generalConsumer = KafkaClientFactory.getConsumer(KAFKA_HOST, KAFKA_PORT, KAFKA_GROUP);
-			generalConsumer.subscribe(Arrays.asList(String.format("%s-%s", INGEST_TOPIC_NAME, SPACE)));
+			// Keep track of all Running Jobs. The Job is registered before
+			// dispatch so that a fast completion is not lost.
+			RunningJob runningJob = jobRegistry.register(consumerRecord.key(), callback);
 
-			// Poll
-			while (!closed.get()) {
-				ConsumerRecords<String, String> consumerRecords = generalConsumer.poll(1000);
-				// Handle new Messages on this topic.
-				for (ConsumerRecord<String, String> consumerRecord : consumerRecords) {
-					// Create a new worker to process this message and add it to
-					// the thread pool.
-					Future<?> workerFuture = ingestWorker.run(consumerRecord, producer, callback);
+			// Create a new worker to process this message and add it to the
+			// thread pool. Records behind a deferred record of the same
+			// partition are deferred as well, to keep them in order.
+			PendingDispatch pending = new PendingDispatch(consumerRecord, partition, runningJob,
+					ingestWorker.getWorkloadClass(consumerRecord));
+			if (deferredPartitions.contains(partition) || !submit(pending)) {
+				deferred.add(pending);
+				if (deferredPartitions.add(partition)) {
+					consumer.pause(partition);
+				}
+			}
+		}
 
-					// Keep track of all Running Jobs
-					runningJobs.put(consumerRecord.key(), workerFuture);
+		/**
+		 * Submits the record to the Ingest pipeline.
+		 * 
+		 * @param pending
+		 *            The record to submit
+		 * @return False if the pipeline is full and the record must be retried later, true otherwise
+		 */
+		private boolean submit(final PendingDispatch pending) {
+			if (pending.runningJob.isCancelled()) {
+				// Aborted while deferred. There is nothing left to run, so
+				// this is where the Job ends.
+				pending.runningJob.getCallback().onComplete(pending.runningJob.getJobId());
+				return true;
+			}
+			try {
+				ingestPipeline.submit(pending.consumerRecord, producer, pending.runningJob, pending.workloadClass);
+				return true;
+			} catch (TaskRejectedException exception) {
+				return false;
+			}
+		}
+
+		/**
+		 * Retries the deferred records in the order they were received, and resumes the partitions that no longer have
+		 * deferred records, unless consumption is paused by backpressure.
+		 */
+		private void retryDeferred() {
+			if (deferredPartitions.isEmpty()) {
+				return;
+			}
+			Set<TopicPartition> stillDeferred = new HashSet<TopicPartition>();
+			Iterator<PendingDispatch> iterator = deferred.iterator();
+			while (iterator.hasNext()) {
+				PendingDispatch pending = iterator.next();
+				if (!stillDeferred.contains(pending.partition) && submit(pending)) {
+					iterator.remove();
+				} else {
+					stillDeferred.add(pending.partition);
 				}
 			}
-			generalConsumer.close();
-		} catch (WakeupException exception) {
-			String error = String.format("Polling Thread forcefully closed: %s", exception.getMessage());
-			LOGGER.error(error, exception);
-			logger.log(error, Severity.ERROR);
+			for (TopicPartition partition : deferredPartitions) {
+				if (!stillDeferred.contains(partition) && !paused.get()) {
+					consumer.resume(partition);
+				}
+			}
+			deferredPartitions.retainAll(stillDeferred);
+		}
+
+		/**
+		 * Commits, for each partition, the offset following the highest record for which it and all preceding records
+		 * have completed. A failed commit is logged and retried on the next poll, since the offsets are only marked as
+		 * committed on success.
+		 */
+		private void commitCompletedOffsets() {
+			Map<TopicPartition, OffsetAndMetadata> offsets = offsetTracker.getCommittableOffsets();
+			if (offsets.isEmpty()) {
+				return;
+			}
+			try {
+				consumer.commitSync(offsets);
+				offsetTracker.markCommitted(offsets);
+			} catch (CommitFailedException | RetriableException exception) {
+				String error = String.format("Could not commit completed Ingest Job offsets %s: %s", offsets, exception.getMessage());
+				LOGGER.warn(error, exception);
+				logger.log(error, Severity.WARNING);
+			}
+		}
+
+		/**
+		 * Pauses the assigned partitions of the consumer when the Jobs in the Ingest pipeline reach the
+		 * high-water mark, and resumes them once that work has drained to the low-water mark. Paused partitions
+		 * continue to be polled (returning no records) so that the consumer retains its membership in the group.
+		 * Backpressure is disabled if the high-water mark is not a positive number.
+		 */
+		private void applyBackpressure() {
+			if (backpressureHighWater <= 0) {
+				return;
+			}
+			int pendingWork = getPendingWorkCount();
+			Set<TopicPartition> assignment = new HashSet<TopicPartition>(consumer.assignment());
+			TopicPartition[] partitions = assignment.toArray(new TopicPartition[assignment.size()]);
+			if (paused.get()) {
+				if (pendingWork <= backpressureLowWater) {
+					// Partitions with deferred records stay paused until those
+					// records are submitted
+					assignment.removeAll(deferredPartitions);
+					consumer.resume(assignment.toArray(new TopicPartition[assignment.size()]));
+					paused.set(false);
+					LOGGER.info(String.format("Resumed consumption of Ingest Jobs on %s. Pending work has drained to %s.", name,
+							pendingWork));
+				} else {
+					// Pause again in case partitions were newly assigned by a
+					// rebalance while consumption was paused.
+					consumer.pause(partitions);
+				}
+			} else if (pendingWork >= backpressureHighWater) {
+				consumer.pause(partitions);
+				paused.set(true);
+				pauseCount.incrementAndGet();
+				LOGGER.info(String.format("Paused consumption of Ingest Jobs on %s. Pending work of %s has reached the high-water mark of %s.",
+						name, pendingWork, backpressureHighWater));
+			}
+		}
+
+		/**
+		 * Invoked on the polling Thread before a rebalance takes partitions away from this member. Offsets completed so
+		 * far are committed, and tracking for the revoked partitions is handed off: their in-flight Jobs continue to run
+		 * here, but the new owner resumes from the committed offset, so those records will be delivered again.
+		 */
+		@Override
+		public void onPartitionsRevoked(Collection<TopicPartition> partitions) {
+			commitCompletedOffsets();
+			// Deferred records were never started; the new owner will run them
+			Iterator<PendingDispatch> iterator = deferred.iterator();
+			while (iterator.hasNext()) {
+				PendingDispatch pending = iterator.next();
+				if (partitions.contains(pending.partition)) {
+					jobRegistry.remove(pending.runningJob.getJobId(), pending.runningJob.getCallback());
+					iterator.remove();
+				}
+			}
+			deferredPartitions.removeAll(partitions);
+			int handedOff = offsetTracker.removePartitions(partitions);
+			if (handedOff > 0) {
+				String message = String.format(
+						"Partitions %s revoked from %s with %s Jobs still in flight. Their records will be redelivered to the new owner.",
+						partitions, name, handedOff);
+				LOGGER.info(message);
+				logger.log(message, Severity.INFORMATIONAL);
+			}
+		}
+
+		/**
+		 * Invoked on the polling Thread after a rebalance assigns partitions to this member. Tracking for a partition
+		 * begins with the first record dispatched from it.
+		 */
+		@Override
+		public void onPartitionsAssigned(Collection<TopicPartition> partitions) {
+			LOGGER.info(String.format("Partitions %s assigned to %s.", partitions, name));
 		}
 	}
 
+	/**
+	 * A consumed record, and its registered Job, awaiting submission to the Ingest pipeline.
+	 */
+	private static class PendingDispatch {
+		private final ConsumerRecord<String, String> consumerRecord;
+		private final TopicPartition partition;
+		private final RunningJob runningJob;
+		private final WorkloadClass workloadClass;
+
+		public PendingDispatch(ConsumerRecord<String, String> consumerRecord, TopicPartition partition, RunningJob runningJob,
+				WorkloadClass workloadClass) {
+			this.consumerRecord = consumerRecord;
+			this.partition = partition;
+			this.runningJob = runningJob;
+			this.workloadClass = workloadClass;
+		}
+	}
+
+	/**
+	 * Gets the number of Jobs that are currently in the Ingest pipeline.
+	 * 
+	 * @return The count of pending work
+	 */
+	private int getPendingWorkCount() {
+		return ingestPipeline.getPendingCount();
+	}
+
 	/**
 	 * Stops all polling.
 	 */
@@ -194,12 +464,11 @@ public class IngestThreadManager {
 						continue;
 					}
 
-					if (runningJobs.containsKey(jobId)) {
-						// Cancel the Running Job
-						runningJobs.get(jobId).cancel(true);
-						// Remove it from the list of Running Jobs
-						runningJobs.remove(jobId);
-					}
+					// Cancel the Running Job and remove it from the registry.
+					// Its record is completed once the Job has actually
+					// stopped, by the pipeline, or by its consumer if the Job
+					// was still waiting to be submitted.
+					jobRegistry.abort(jobId);
 				}
 			}
 			uniqueConsumer.close();
@@ -216,7 +485,46 @@ public class IngestThreadManager {
 	 * @return The list of Job Ids
 	 */
 	public List<String> getRunningJobIds() {
-		return new ArrayList<String>(runningJobs.keySet());
+		return jobRegistry.getJobIds();
+	}
+
+	/**
+	 * Returns the state of each Job currently being processed by this instance, including its stage, start time and
+	 * bytes processed.
+	 * 
+	 * @return The list of per-Job state
+	 */
+	public List<Map<String, Object>> getRunningJobStats() {
+		return jobRegistry.getSnapshot();
+	}
+
+	/**
+	 * Returns statistics on the consumption of Ingest Jobs, including the backpressure state of the consumers.
+	 * 
+	 * @return Map of consumer statistics
+	 */
+	public Map<String, Object> getConsumerStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		int uncommittedRecords = 0;
+		int pausedConsumers = 0;
+		int deferredRecords = 0;
+		for (GroupConsumer groupConsumer : groupConsumers) {
+			uncommittedRecords += groupConsumer.offsetTracker.getInFlightCount();
+			deferredRecords += groupConsumer.deferred.size();
+			if (groupConsumer.paused.get()) {
+				pausedConsumers++;
+			}
+		}
+		stats.put("consumerThreads", groupConsumers.size());
+		stats.put("pendingWork", getPendingWorkCount());
+		stats.put("uncommittedRecords", uncommittedRecords);
+		stats.put("deferredRecords", deferredRecords);
+		stats.put("paused", pausedConsumers > 0);
+		stats.put("pausedConsumers", pausedConsumers);
+		stats.put("pauseCount", pauseCount.get());
+		stats.put("highWaterMark", backpressureHighWater);
+		stats.put("lowWaterMark", backpressureLowWater);
+		return stats;
 	}
 
 }
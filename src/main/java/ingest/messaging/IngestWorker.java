@@ -17,24 +17,27 @@ package ingest.messaging;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.concurrent.Future;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
 
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.apache.kafka.clients.producer.Producer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.annotation.Async;
-import org.springframework.scheduling.annotation.AsyncResult;
 import org.springframework.stereotype.Component;
 import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.HttpServerErrorException;
+import org.springframework.web.client.HttpStatusCodeException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -45,14 +48,17 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.mongodb.MongoException;
 
 import ingest.inspect.Inspector;
+import ingest.model.IngestTask;
+import ingest.model.RunningJob;
+import ingest.model.WorkloadClass;
+import ingest.utility.ContentSpool;
 import ingest.utility.IngestUtilities;
-import messaging.job.JobMessageFactory;
-import messaging.job.WorkerCallback;
 import model.data.DataResource;
 import model.data.FileRepresentation;
 import model.data.location.FileLocation;
 import model.data.location.FolderShare;
 import model.data.location.S3FileStore;
+import model.data.type.PointCloudDataType;
 import model.job.Job;
 import model.job.JobProgress;
 import model.job.metadata.ResourceMetadata;
@@ -62,11 +68,8 @@ import model.job.type.IngestJob;
 import model.job.type.SearchMetadataIngestJob;
 import model.logger.AuditElement;
 import model.logger.Severity;
-import model.response.EventTypeListResponse;
-import model.response.PiazzaResponse;
 import model.status.StatusUpdate;
 import model.workflow.Event;
-import model.workflow.EventType;
 import util.PiazzaLogger;
 import util.UUIDFactory;
 
@@ -78,16 +81,10 @@ import util.UUIDFactory;
  */
 @Component
 public class IngestWorker {
-	@Value("${SPACE}")
-	private String SPACE;
 	@Value("${workflow.url}")
 	private String WORKFLOW_URL;
-	@Value("${search.url}")
-	private String SEARCH_URL;
 	@Value("${workflow.endpoint}")
 	private String WORKFLOW_ENDPOINT;
-	@Value("${search.ingest.endpoint}")
-	private String SEARCH_ENDPOINT;
 	@Value("${vcap.services.pz-blobstore.credentials.bucket}")
 	private String AMAZONS3_BUCKET_NAME;
 
@@ -102,201 +99,308 @@ public class IngestWorker {
 	@Autowired
 	private UUIDFactory uuidFactory;
 	@Autowired
+	@Qualifier("notificationRestTemplate")
 	private RestTemplate restTemplate;
-	private Producer<String, String> producer;
+	@Autowired
+	private RunningJobRegistry jobRegistry;
+	@Autowired
+	private StatusUpdatePublisher statusUpdatePublisher;
+	@Autowired
+	private EventTypeCache eventTypeCache;
+	@Autowired
+	private NotificationSender notificationSender;
+	@Autowired
+	private SearchMetadataBatcher searchMetadataBatcher;
+	@Autowired
+	private ContentSpool contentSpool;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(IngestWorker.class);
 
 	/**
-	 * Creates a new Worker Thread for the specified Kafka Message containing an Ingest Job.
+	 * Determines the workload class of the Ingest Job in the Kafka Message, so that it can be run on the appropriate
+	 * Thread Pool. Messages that cannot be parsed are treated as lightweight, since they will fail immediately.
 	 * 
 	 * @param consumerRecord
 	 *            The Kafka Message containing the Job.
-	 * @param producer
-	 *            The Kafka producer, used to send update messages
-	 * @param callback
-	 *            The callback that will be invoked when this Job has finished processing (error or success, regardless)
+	 * @return The workload class of the Job
 	 */
-	@Async
-	public Future<DataResource> run(ConsumerRecord<String, String> consumerRecord, Producer<String, String> producer,
-			WorkerCallback callback) {
-		DataResource dataResource = null;
-		this.producer = producer;
+	public WorkloadClass getWorkloadClass(ConsumerRecord<String, String> consumerRecord) {
 		try {
-			// Log
-			logger.log(String.format("Processing Data Load for Topic %s for Job Id %s", consumerRecord.topic(), consumerRecord.key()),
-					Severity.INFORMATIONAL);
-
-			// Parse the Job from the Kafka Message
-			ObjectMapper mapper = new ObjectMapper();
-			Job job = mapper.readValue(consumerRecord.value(), Job.class);
+			Job job = new ObjectMapper().readValue(consumerRecord.value(), Job.class);
 			IngestJob ingestJob = (IngestJob) job.getJobType();
-			// Get the description of the Data to be ingested
-			dataResource = ingestJob.getData();
-
-			// Assign a Resource Id to the incoming DataResource.
-			if ((dataResource.getDataId() == null) || (dataResource.getDataId().isEmpty())) {
-				String dataId = uuidFactory.getUUID();
-				dataResource.setDataId(dataId);
-			}
+			return inspector.getWorkloadClass(ingestJob.getData(), ingestJob.getHost().booleanValue());
+		} catch (Exception exception) {
+			LOGGER.warn(String.format("Could not determine the workload class of Job %s: %s", consumerRecord.key(),
+					exception.getMessage()));
+			return WorkloadClass.LIGHTWEIGHT;
+		}
+	}
 
-			// Ensure we have a metadata wrapper.
-			if (dataResource.metadata == null) {
-				dataResource.metadata = new ResourceMetadata();
-			}
+	/**
+	 * Fetch stage. Parses the Job from the Kafka Message, reports that the Job is running, and copies the source file
+	 * into the Piazza S3 bucket if it is to be hosted.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 */
+	public void fetch(IngestTask task) throws Exception {
+		ConsumerRecord<String, String> consumerRecord = task.getConsumerRecord();
+		// Log
+		logger.log(String.format("Processing Data Load for Topic %s for Job Id %s", consumerRecord.topic(), consumerRecord.key()),
+				Severity.INFORMATIONAL);
+
+		// Parse the Job from the Kafka Message
+		ObjectMapper mapper = new ObjectMapper();
+		Job job = mapper.readValue(consumerRecord.value(), Job.class);
+		IngestJob ingestJob = (IngestJob) job.getJobType();
+		task.setJob(job);
+		task.setIngestJob(ingestJob);
+		// Get the description of the Data to be ingested
+		DataResource dataResource = ingestJob.getData();
+		task.setDataResource(dataResource);
+
+		// Assign a Resource Id to the incoming DataResource.
+		if ((dataResource.getDataId() == null) || (dataResource.getDataId().isEmpty())) {
+			String dataId = uuidFactory.getUUID();
+			dataResource.setDataId(dataId);
+		}
 
-			// Log what we're going to Ingest
-			logger.log(
-					String.format("Begin Processing Load Job; begin Loading Data %s of Type %s. Hosted: %s with Job Id of %s",
-							dataResource.getDataId(), dataResource.getDataType().getClass().getSimpleName(), ingestJob.getHost().toString(),
-							job.getJobId()),
-					Severity.INFORMATIONAL, new AuditElement(job.getJobId(), "beginLoadData", dataResource.getDataId()));
+		// Ensure we have a metadata wrapper.
+		if (dataResource.metadata == null) {
+			dataResource.metadata = new ResourceMetadata();
+		}
 
-			if (Thread.interrupted()) {
-				throw new InterruptedException();
-			}
+		// Log what we're going to Ingest
+		logger.log(
+				String.format("Begin Processing Load Job; begin Loading Data %s of Type %s. Hosted: %s with Job Id of %s",
+						dataResource.getDataId(), dataResource.getDataType().getClass().getSimpleName(), ingestJob.getHost().toString(),
+						job.getJobId()),
+				Severity.INFORMATIONAL, new AuditElement(job.getJobId(), "beginLoadData", dataResource.getDataId()));
 
-			// Update Status on Handling
-			JobProgress jobProgress = new JobProgress(0);
-			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING, jobProgress);
-			this.producer.send(JobMessageFactory.getUpdateStatusMessage(consumerRecord.key(), statusUpdate, SPACE)).get();
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
 
-			if (ingestJob.getData().getDataType() instanceof FileRepresentation) {
-				FileRepresentation fileRep = (FileRepresentation) ingestJob.getData().getDataType();
-				FileLocation fileLoc = fileRep.getLocation();
-				if (fileLoc != null) {
-					fileLoc.setFileSize(ingestUtilities.getFileSize(dataResource));
+		// Update Status on Handling. This is sent asynchronously; the Job does not wait for it to be acknowledged.
+		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(0));
+		statusUpdatePublisher.publish(task.getProducer(), consumerRecord.key(), statusUpdate);
+
+		jobRegistry.setStage(consumerRecord.key(), RunningJob.Stage.FETCHING);
+		if (ingestJob.getData().getDataType() instanceof FileRepresentation) {
+			FileRepresentation fileRep = (FileRepresentation) ingestJob.getData().getDataType();
+			FileLocation fileLoc = fileRep.getLocation();
+			if (fileLoc != null) {
+				long fileSize;
+				if (dataResource.getDataType() instanceof PointCloudDataType) {
+					// Point Clouds are read by the Point Cloud service, not here; only the size is needed
+					fileSize = ingestUtilities.getFileSize(dataResource);
+				} else {
+					// Download the file once. The S3 copy and the inspection read it from the spool.
+					fileSize = contentSpool.spool(dataResource);
 				}
+				fileLoc.setFileSize(fileSize);
+				jobRegistry.addBytesProcessed(consumerRecord.key(), fileSize);
+			}
 
-				if (ingestJob.getHost().booleanValue() && (fileLoc != null)) {
-					// Copy to Piazza S3 bucket if hosted = true; If already in
-					// S3, make sure it's different than the Piazza S3;
-					// Depending on the Type of file
-					if (fileLoc instanceof S3FileStore) {
-						S3FileStore s3FS = (S3FileStore) fileLoc;
-						if (!s3FS.getBucketName().equals(AMAZONS3_BUCKET_NAME)) {
-							ingestUtilities.copyS3Source(dataResource);
-							fileRep.setLocation(new S3FileStore(AMAZONS3_BUCKET_NAME, dataResource.getDataId() + "-" + s3FS.getFileName(),
-									s3FS.getFileSize(), s3FS.getDomainName()));
-						}
-					} else if (fileLoc instanceof FolderShare) {
+			if (ingestJob.getHost().booleanValue() && (fileLoc != null)) {
+				// Copy to Piazza S3 bucket if hosted = true; If already in
+				// S3, make sure it's different than the Piazza S3;
+				// Depending on the Type of file
+				if (fileLoc instanceof S3FileStore) {
+					S3FileStore s3FS = (S3FileStore) fileLoc;
+					if (!s3FS.getBucketName().equals(AMAZONS3_BUCKET_NAME)) {
 						ingestUtilities.copyS3Source(dataResource);
+						fileRep.setLocation(new S3FileStore(AMAZONS3_BUCKET_NAME, dataResource.getDataId() + "-" + s3FS.getFileName(),
+								s3FS.getFileSize(), s3FS.getDomainName()));
 					}
+				} else if (fileLoc instanceof FolderShare) {
+					ingestUtilities.copyS3Source(dataResource);
 				}
 			}
+		}
 
-			dataResource.metadata.createdBy = job.createdBy;
-			dataResource.metadata.createdOn = job.createdOn.toString();
-			dataResource.metadata.createdByJobId = job.getJobId();
+		dataResource.metadata.createdBy = job.createdBy;
+		dataResource.metadata.createdOn = job.createdOn.toString();
+		dataResource.metadata.createdByJobId = job.getJobId();
+	}
 
-			if (Thread.interrupted()) {
-				throw new InterruptedException();
-			}
+	/**
+	 * Inspect stage. Processes the Data item, adding the appropriate metadata, and stores its contents if hosted.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 */
+	public void inspect(IngestTask task) throws Exception {
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
 
-			// Inspect processes the Data item, adds appropriate metadata and
-			// stores if requested
-			inspector.inspect(dataResource, ingestJob.getHost());
+		jobRegistry.setStage(task.getJobId(), RunningJob.Stage.INSPECTING);
+		task.setDataResource(inspector.inspectData(task.getDataResource(), task.getIngestJob().getHost()));
+	}
 
-			// Update Status when Complete
-			jobProgress.percentComplete = 100;
-			statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS, jobProgress);
+	/**
+	 * Persist stage. Stores the metadata of the Data item and reports that the Job has succeeded.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 */
+	public void persist(IngestTask task) throws Exception {
+		DataResource dataResource = task.getDataResource();
+		jobRegistry.setStage(task.getJobId(), RunningJob.Stage.PERSISTING);
+		inspector.persistMetadata(dataResource);
 
-			if (Thread.interrupted()) {
-				throw new InterruptedException();
-			}
+		// Update Status when Complete
+		StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_SUCCESS, new JobProgress(100));
 
-			// The result of this Job was creating a resource at the specified
-			// Id.
-			statusUpdate.setResult(new DataResult(dataResource.getDataId()));
-			this.producer.send(JobMessageFactory.getUpdateStatusMessage(consumerRecord.key(), statusUpdate, SPACE));
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
 
-			// Console Logging
-			logger.log(String.format("Successful Load of Data %s for Job %s", dataResource.getDataId(), job.getJobId()),
-					Severity.INFORMATIONAL, new AuditElement(job.getJobId(), "loadedData", dataResource.getDataId()));
+		// The result of this Job was creating a resource at the specified
+		// Id.
+		statusUpdate.setResult(new DataResult(dataResource.getDataId()));
+		statusUpdatePublisher.publish(task.getProducer(), task.getJobId(), statusUpdate);
 
-			// Fire the Event to Pz-Search that new metadata has been ingested
-			try {
-				dispatchMetadataIngestMessage(dataResource, String.format("%s/%s/", SEARCH_URL, SEARCH_ENDPOINT));
-			} catch (HttpClientErrorException | HttpServerErrorException exception) {
-				String error = String.format("Metadata Load for %s for Job %s could not be sent to the Search Service: %s",
-						dataResource.getDataId(), job.getJobId(), exception.getResponseBodyAsString());
-				LOGGER.error(error, exception);
-				logger.log(error, Severity.ERROR);
-			} catch (Exception genException) {
-				String error = String.format("Metadata Load for %s for Job %s could not be sent to the Search Service: %s",
-						dataResource.getDataId(), job.getJobId(), genException.getMessage());
-				LOGGER.error(error, genException);
-				logger.log(error, Severity.ERROR);
-			}
+		// Console Logging
+		logger.log(String.format("Successful Load of Data %s for Job %s", dataResource.getDataId(), task.getJob().getJobId()),
+				Severity.INFORMATIONAL, new AuditElement(task.getJob().getJobId(), "loadedData", dataResource.getDataId()));
+	}
 
-			// Fire the Event to Pz-Workflow that a successful Ingest has taken
-			// place.
-			try {
+	/**
+	 * Notify stage. Notifies pz-search and pz-workflow of the newly ingested Data, concurrently. Failures are logged,
+	 * and do not affect the outcome of the Job.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 */
+	public void sendNotifications(IngestTask task) {
+		final Job job = task.getJob();
+		final DataResource dataResource = task.getDataResource();
+		jobRegistry.setStage(task.getJobId(), RunningJob.Stage.NOTIFYING);
+
+		Map<String, Callable<?>> notifications = new LinkedHashMap<String, Callable<?>>();
+		// Fire the Event to Pz-Search that new metadata has been ingested
+		notifications.put(NotificationSender.SEARCH_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				dispatchMetadataIngestMessage(dataResource);
+				return null;
+			}
+		});
+		// Fire the Event to Pz-Workflow that a successful Ingest has taken
+		// place.
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
 				dispatchWorkflowEvent(job, dataResource, String.format("%s/%s", WORKFLOW_URL, WORKFLOW_ENDPOINT));
-			} catch (JsonParseException | JsonMappingException exception) {
-				String error = String.format("Could not create JSON to send to Workflow Service Event: %s", exception.getMessage());
-				LOGGER.error(error, exception);
-				logger.log(error, Severity.ERROR);
-			} catch (HttpClientErrorException | HttpServerErrorException exception) {
-				String error = String.format("Event for Loading of Data %s for Job %s could not be sent to the Workflow Service: %s",
-						dataResource.getDataId(), job.getJobId(), exception.getResponseBodyAsString());
-				LOGGER.error(error, exception);
-				logger.log(error, Severity.ERROR);
-			} catch (Exception exception) {
-				LOGGER.error(exception.getMessage(), exception);
-				logger.log(exception.getMessage(), Severity.WARNING);
+				return null;
 			}
-		} catch (InterruptedException exception) { // NOSONAR
-			String error = String.format("Thread interrupt received for Job %s", consumerRecord.key());
+		});
+		Map<String, Exception> failures = notificationSender.sendAll(notifications);
+
+		Exception searchException = failures.get(NotificationSender.SEARCH_TARGET);
+		if (searchException instanceof HttpStatusCodeException) {
+			String error = String.format("Metadata Load for %s for Job %s could not be sent to the Search Service: %s",
+					dataResource.getDataId(), job.getJobId(), ((HttpStatusCodeException) searchException).getResponseBodyAsString());
+			LOGGER.error(error, searchException);
+			logger.log(error, Severity.ERROR);
+		} else if (searchException != null) {
+			String error = String.format("Metadata Load for %s for Job %s could not be sent to the Search Service: %s",
+					dataResource.getDataId(), job.getJobId(), searchException.getMessage());
+			LOGGER.error(error, searchException);
+			logger.log(error, Severity.ERROR);
+		}
+
+		Exception workflowException = failures.get(NotificationSender.WORKFLOW_TARGET);
+		if ((workflowException instanceof JsonParseException) || (workflowException instanceof JsonMappingException)) {
+			String error = String.format("Could not create JSON to send to Workflow Service Event: %s", workflowException.getMessage());
+			LOGGER.error(error, workflowException);
+			logger.log(error, Severity.ERROR);
+		} else if (workflowException instanceof HttpStatusCodeException) {
+			String error = String.format("Event for Loading of Data %s for Job %s could not be sent to the Workflow Service: %s",
+					dataResource.getDataId(), job.getJobId(), ((HttpStatusCodeException) workflowException).getResponseBodyAsString());
+			LOGGER.error(error, workflowException);
+			logger.log(error, Severity.ERROR);
+		} else if (workflowException != null) {
+			LOGGER.error(workflowException.getMessage(), workflowException);
+			logger.log(workflowException.getMessage(), Severity.WARNING);
+		}
+	}
+
+	/**
+	 * Handles a failure of any stage of the Job. Interruption reports the Job as cancelled; anything else reports the
+	 * Job as errored.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 * @param exception
+	 *            The cause of the failure
+	 */
+	public void handleFailure(IngestTask task, Exception exception) {
+		String jobId = task.getJobId();
+		if (exception instanceof InterruptedException) {
+			String error = String.format("Thread interrupt received for Job %s", jobId);
 			LOGGER.error(error, exception);
-			logger.log(error, Severity.INFORMATIONAL, new AuditElement(consumerRecord.key(), "cancelledIngestJob", ""));
+			logger.log(error, Severity.INFORMATIONAL, new AuditElement(jobId, "cancelledIngestJob", ""));
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_CANCELLED);
 			try {
-				producer.send(JobMessageFactory.getUpdateStatusMessage(consumerRecord.key(), statusUpdate, SPACE));
+				statusUpdatePublisher.publish(task.getProducer(), jobId, statusUpdate);
 			} catch (JsonProcessingException jsonException) {
 				error = String.format(
 						"Error sending Cancelled Status from Job %s: %s. The Job was cancelled, but its status will not be updated in the Job Manager.",
-						consumerRecord.key(), jsonException.getMessage());
+						jobId, jsonException.getMessage());
 				LOGGER.error(error, jsonException);
 				logger.log(error, Severity.ERROR);
 			}
-		} catch (IOException jsonException) {
-			handleException(consumerRecord.key(), jsonException);
-			LOGGER.error("Error Parsing Data Load Job Message.", jsonException);
-		} catch (MongoException mongoException) {
-			handleException(consumerRecord.key(), mongoException);
-			LOGGER.error("Error committing Metadata object to Mongo Collections: " + mongoException.getMessage(), mongoException);
-		} catch (Exception exception) {
-			handleException(consumerRecord.key(), exception);
+		} else if (exception instanceof IOException) {
+			handleException(task.getProducer(), jobId, exception);
+			LOGGER.error("Error Parsing Data Load Job Message.", exception);
+		} else if (exception instanceof MongoException) {
+			handleException(task.getProducer(), jobId, exception);
+			LOGGER.error("Error committing Metadata object to Mongo Collections: " + exception.getMessage(), exception);
+		} else {
+			handleException(task.getProducer(), jobId, exception);
 			LOGGER.error("An unexpected error occurred while processing the Job Message: " + exception.getMessage(), exception);
-		} finally {
-			if (callback != null) {
-				callback.onComplete(consumerRecord.key());
-			}
 		}
+	}
 
-		return new AsyncResult<DataResource>(dataResource);
+	/**
+	 * Signals that the Job has finished processing, regardless of its outcome.
+	 * 
+	 * @param task
+	 *            The Job being ingested
+	 */
+	public void complete(IngestTask task) {
+		if (task.getDataResource() != null) {
+			contentSpool.release(task.getDataResource().getDataId());
+		}
+		if (task.getCallback() != null) {
+			task.getCallback().onComplete(task.getJobId());
+		}
 	}
 
 	/**
-	 * Dispatches the REST POST request to the pz-search service for the ingestion of metadata for the newly ingested
-	 * data resource.
+	 * Dispatches the metadata of the newly ingested data resource to the pz-search service. The metadata is sent in a
+	 * batch with that of other Jobs; this waits until that batch has been sent.
 	 * 
 	 * @param dataResource
 	 *            The Data Resource to ingest metadata for
 	 */
-	private void dispatchMetadataIngestMessage(DataResource dataResource, String searchUrl) {
+	private void dispatchMetadataIngestMessage(DataResource dataResource) throws InterruptedException {
 		// Create the Ingest Job that the Search Service Expects
 		SearchMetadataIngestJob job = new SearchMetadataIngestJob();
 		job.data = dataResource;
 
-		// Create Request Objects
-		HttpHeaders headers = new HttpHeaders();
-		headers.setContentType(MediaType.APPLICATION_JSON);
-		HttpEntity<SearchMetadataIngestJob> entity = new HttpEntity<SearchMetadataIngestJob>(job, headers);
-
 		// Send the Request
-		restTemplate.postForObject(searchUrl, entity, PiazzaResponse.class);
+		try {
+			searchMetadataBatcher.submit(job).get();
+		} catch (ExecutionException exception) {
+			if (exception.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) exception.getCause();
+			}
+			throw new RestClientException(exception.getCause().getMessage(), exception.getCause());
+		}
 	}
 
 	/**
@@ -312,14 +416,13 @@ public class IngestWorker {
 			throws JsonParseException, JsonMappingException, RestClientException, IOException {
 		ObjectMapper objectMapper = new ObjectMapper();
 
-		// Make an initial request to Workflow in order to get the UUID of the System Event.
-		String url = String.format("%s/%s?name=%s", WORKFLOW_URL, "eventType", INGEST_EVENT_TYPE_NAME);
-		EventType eventType = objectMapper.readValue(restTemplate.getForObject(url, String.class), EventTypeListResponse.class).data.get(0);
+		// Get the UUID of the System Event. This is cached, and only requested from Workflow when it expires.
+		String eventTypeId = eventTypeCache.getEventTypeId(INGEST_EVENT_TYPE_NAME);
 
 		// Create the Event to Post
 		Event event = new Event();
 		event.createdBy = job.getCreatedBy();
-		event.eventTypeId = eventType.eventTypeId;
+		event.eventTypeId = eventTypeId;
 
 		// Populate the Event Data
 		event.data = new HashMap<String, Object>();
@@ -333,11 +436,19 @@ public class IngestWorker {
 		event.data.put("hosted", ((IngestJob) job.getJobType()).getHost());
 
 		// Send the Event
-		HttpHeaders headers = new HttpHeaders();
-		String eventString = objectMapper.writeValueAsString(event);
-		HttpEntity<String> entity = new HttpEntity<String>(eventString, headers);
-		headers.setContentType(MediaType.APPLICATION_JSON);
-		ResponseEntity<Object> response = restTemplate.postForEntity(workflowUrl, entity, Object.class);
+		ResponseEntity<Object> response;
+		try {
+			response = postWorkflowEvent(objectMapper, event, workflowUrl);
+		} catch (HttpClientErrorException exception) {
+			// The cached Event Type may no longer exist. Reload it, and resend if it has changed.
+			eventTypeCache.invalidate(INGEST_EVENT_TYPE_NAME);
+			String refreshedEventTypeId = eventTypeCache.getEventTypeId(INGEST_EVENT_TYPE_NAME);
+			if (refreshedEventTypeId.equals(eventTypeId)) {
+				throw exception;
+			}
+			event.eventTypeId = refreshedEventTypeId;
+			response = postWorkflowEvent(objectMapper, event, workflowUrl);
+		}
 		if (response.getStatusCode() == HttpStatus.CREATED) {
 			// The Event was successfully received by pz-workflow
 			logger.log(
@@ -353,21 +464,41 @@ public class IngestWorker {
 		}
 	}
 
+	/**
+	 * Posts the Event to the pz-workflow service.
+	 * 
+	 * @param objectMapper
+	 *            The mapper used to serialize the Event
+	 * @param event
+	 *            The Event
+	 * @return The response from pz-workflow
+	 */
+	private ResponseEntity<Object> postWorkflowEvent(ObjectMapper objectMapper, Event event, String workflowUrl)
+			throws JsonProcessingException, RestClientException {
+		HttpHeaders headers = new HttpHeaders();
+		String eventString = objectMapper.writeValueAsString(event);
+		HttpEntity<String> entity = new HttpEntity<String>(eventString, headers);
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return restTemplate.postForEntity(workflowUrl, entity, Object.class);
+	}
+
 	/**
 	 * Handles the common exception actions that should be taken upon errors encountered during the
 	 * inspection/parsing/loading process. Sends the error message to Kafka that this Job has errored out.
 	 * 
+	 * @param producer
+	 *            The Kafka producer, used to send the error message
 	 * @param jobId
 	 * @param exception
 	 */
-	private void handleException(String jobId, Exception exception) {
+	private void handleException(Producer<String, String> producer, String jobId, Exception exception) {
 		String error = String.format("An Error occurred during Data Load for Job %s: %s", jobId, exception.getMessage());
 		LOGGER.error(error);
 		logger.log(error, Severity.ERROR, new AuditElement(jobId, "failedToLoadData", ""));
 		try {
 			StatusUpdate statusUpdate = new StatusUpdate(StatusUpdate.STATUS_ERROR);
 			statusUpdate.setResult(new ErrorResult("Error while Loading the Data.", exception.getMessage()));
-			this.producer.send(JobMessageFactory.getUpdateStatusMessage(jobId, statusUpdate, SPACE));
+			statusUpdatePublisher.publish(producer, jobId, statusUpdate);
 		} catch (JsonProcessingException jsonException) {
 			LOGGER.info(
 					"Could update Job Manager with failure event in Loader Worker. Error creating message: " + jsonException.getMessage(),
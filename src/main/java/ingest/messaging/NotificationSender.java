@@ -0,0 +1,291 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.client.RestClientException;
+
+import ingest.utility.CircuitBreaker;
+
+/**
+ * Sends the notifications for an ingested Data item to their target services concurrently.
+ *
+ * <p>
+ * Each target has its own time limit, after which its notification is abandoned. Failures caused by the target being
+ * unavailable (I/O errors and 5xx responses) are retried a bounded number of times, with exponential backoff and
+ * jitter. Each target also has a circuit breaker: while a target is down, its notifications fail immediately rather
+ * than holding a Thread until they time out.
+ * </p>
+ *
+ * <p>
+ * Notifications wait in a bounded queue for a Thread; once it is full, further notifications fail immediately instead
+ * of piling up behind a slow target.
+ * </p>
+ */
+@Component
+public class NotificationSender {
+	public static final String SEARCH_TARGET = "search";
+	public static final String WORKFLOW_TARGET = "workflow";
+
+	@Value("${notify.threads}")
+	private int notifyThreads;
+	@Value("${notify.queue}")
+	private int notifyQueue;
+	@Value("${notify.search.timeout.ms}")
+	private long searchTimeoutMillis;
+	@Value("${notify.workflow.timeout.ms}")
+	private long workflowTimeoutMillis;
+	@Value("${notify.retry.attempts}")
+	private int retryAttempts;
+	@Value("${notify.retry.backoff.ms}")
+	private long retryBackoffMillis;
+	@Value("${notify.circuit.failure.threshold}")
+	private int circuitFailureThreshold;
+	@Value("${notify.circuit.open.ms}")
+	private long circuitOpenMillis;
+
+	private ThreadPoolTaskExecutor executor;
+	private final Map<String, CircuitBreaker> circuitBreakers = new HashMap<String, CircuitBreaker>();
+	private final Map<String, Long> timeouts = new HashMap<String, Long>();
+	private final AtomicLong timeoutCount = new AtomicLong(0);
+
+	/**
+	 * Creates the Thread Pool and the circuit breaker for each target.
+	 */
+	@PostConstruct
+	public void initialize() {
+		executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(Math.max(1, notifyThreads));
+		executor.setMaxPoolSize(Math.max(1, notifyThreads));
+		executor.setQueueCapacity(Math.max(0, notifyQueue));
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		executor.setThreadNamePrefix("ingest-notification-");
+		executor.initialize();
+		addTarget(SEARCH_TARGET, searchTimeoutMillis);
+		addTarget(WORKFLOW_TARGET, workflowTimeoutMillis);
+	}
+
+	/**
+	 * Stops the Thread Pool.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	private void addTarget(String target, long timeoutMillis) {
+		circuitBreakers.put(target, new CircuitBreaker(target, circuitFailureThreshold, circuitOpenMillis));
+		timeouts.put(target, timeoutMillis);
+	}
+
+	/**
+	 * Sends the notifications concurrently, and waits until each has succeeded, failed, or run out of time.
+	 *
+	 * @param notifications
+	 *            The notification to send to each target, keyed by target name
+	 * @return The failure of each target that could not be notified. Empty if all were notified.
+	 */
+	public Map<String, Exception> sendAll(Map<String, Callable<?>> notifications) {
+		long startTime = System.currentTimeMillis();
+		Map<String, Future<?>> futures = new LinkedHashMap<String, Future<?>>();
+		Map<String, Attempt> attempts = new HashMap<String, Attempt>();
+		Map<String, Exception> failures = new LinkedHashMap<String, Exception>();
+		for (final Map.Entry<String, Callable<?>> notification : notifications.entrySet()) {
+			final Attempt attempt = new Attempt();
+			try {
+				futures.put(notification.getKey(), executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() throws Exception {
+						return sendWithRetries(notification.getKey(), notification.getValue(), attempt);
+					}
+				}));
+				attempts.put(notification.getKey(), attempt);
+			} catch (TaskRejectedException exception) {
+				failures.put(notification.getKey(), exception);
+			}
+		}
+
+		for (Map.Entry<String, Future<?>> entry : futures.entrySet()) {
+			String target = entry.getKey();
+			Future<?> future = entry.getValue();
+			long remainingMillis = startTime + getTimeout(target) - System.currentTimeMillis();
+			try {
+				future.get(Math.max(0, remainingMillis), TimeUnit.MILLISECONDS);
+			} catch (TimeoutException exception) {
+				// The timeout is the outcome of the request in progress, if
+				// any; the interrupted request records nothing further.
+				if (attempts.get(target).abandon()) {
+					getCircuitBreaker(target).recordFailure();
+				}
+				future.cancel(true);
+				timeoutCount.incrementAndGet();
+				failures.put(target,
+						new RestClientException(String.format("Notification to %s timed out after %s ms", target, getTimeout(target))));
+			} catch (ExecutionException exception) {
+				failures.put(target, (exception.getCause() instanceof Exception) ? (Exception) exception.getCause() : exception);
+			} catch (InterruptedException exception) {
+				future.cancel(true);
+				Thread.currentThread().interrupt();
+				failures.put(target, exception);
+			}
+		}
+		return failures;
+	}
+
+	/**
+	 * Sends a notification to the target, retrying while the target is unavailable. The outcome of each request is
+	 * recorded on the circuit breaker only if the notification has not been abandoned in the meantime, and never if the
+	 * request was interrupted.
+	 */
+	private Object sendWithRetries(String target, Callable<?> notification, Attempt tracker) throws Exception {
+		CircuitBreaker circuitBreaker = getCircuitBreaker(target);
+		int attempts = Math.max(1, retryAttempts);
+		for (int attempt = 1;; attempt++) {
+			if (!circuitBreaker.allowRequest()) {
+				throw new RestClientException(String.format("Notification to %s was not sent; the circuit is open.", target));
+			}
+			if (!tracker.begin()) {
+				circuitBreaker.releaseTrial();
+				throw new InterruptedException(String.format("Notification to %s was abandoned.", target));
+			}
+			try {
+				Object result = notification.call();
+				if (tracker.end()) {
+					circuitBreaker.recordSuccess();
+				}
+				return result;
+			} catch (Exception exception) {
+				boolean recordable = tracker.end();
+				if ((exception instanceof InterruptedException) || Thread.currentThread().isInterrupted()) {
+					// Interrupted, not answered; this says nothing about the target
+					if (recordable) {
+						circuitBreaker.releaseTrial();
+					}
+					throw exception;
+				}
+				if (!isRetryable(exception)) {
+					// The target responded, and rejected the request. It is not unavailable.
+					if (recordable) {
+						circuitBreaker.recordSuccess();
+					}
+					throw exception;
+				}
+				if (recordable) {
+					circuitBreaker.recordFailure();
+				}
+				if (attempt >= attempts) {
+					throw exception;
+				}
+			}
+			// Exponential backoff, with up to 50% jitter either way
+			long backoff = retryBackoffMillis << (attempt - 1);
+			Thread.sleep((long) (backoff * (0.5 + ThreadLocalRandom.current().nextDouble())));
+		}
+	}
+
+	/**
+	 * Determines if the failure indicates the target is unavailable, and the request is worth retrying.
+	 */
+	private boolean isRetryable(Exception exception) {
+		if (exception instanceof HttpStatusCodeException) {
+			return ((HttpStatusCodeException) exception).getStatusCode().is5xxServerError();
+		}
+		return true;
+	}
+
+	/**
+	 * Tracks the request in progress for a notification, so that its outcome is recorded exactly once: either by the
+	 * sending Thread when the request returns, or by the caller when it abandons the notification on timeout.
+	 */
+	private static class Attempt {
+		private final AtomicBoolean inProgress = new AtomicBoolean(false);
+		private volatile boolean abandoned = false;
+
+		/**
+		 * @return False if the notification has been abandoned, and no request should be made
+		 */
+		public boolean begin() {
+			inProgress.set(true);
+			if (abandoned) {
+				inProgress.set(false);
+				return false;
+			}
+			return true;
+		}
+
+		/**
+		 * @return True if the sending Thread is to record the outcome of the request
+		 */
+		public boolean end() {
+			return inProgress.compareAndSet(true, false);
+		}
+
+		/**
+		 * @return True if a request was in progress, and the caller is to record its timeout
+		 */
+		public boolean abandon() {
+			abandoned = true;
+			return inProgress.compareAndSet(true, false);
+		}
+	}
+
+	private CircuitBreaker getCircuitBreaker(String target) {
+		CircuitBreaker circuitBreaker = circuitBreakers.get(target);
+		if (circuitBreaker == null) {
+			throw new IllegalArgumentException("Unknown notification target " + target);
+		}
+		return circuitBreaker;
+	}
+
+	private long getTimeout(String target) {
+		return timeouts.get(target);
+	}
+
+	/**
+	 * Gets the circuit state of each target.
+	 *
+	 * @return Map of notification statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		for (CircuitBreaker circuitBreaker : circuitBreakers.values()) {
+			stats.put(circuitBreaker.getName(), circuitBreaker.getStats());
+		}
+		stats.put("timeouts", timeoutCount.get());
+		stats.put("activeThreads", executor.getActiveCount());
+		return stats;
+	}
+}
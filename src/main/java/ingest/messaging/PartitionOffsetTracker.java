@@ -0,0 +1,160 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+
+/**
+ * Tracks the completion of Kafka records that have been dispatched to the Thread Pool, per partition. Since Jobs can
+ * complete in any order, the offset that is safe to commit for a partition is the one just past the highest offset for
+ * which that record, and every record before it, has completed. Committing only this offset guarantees that a crash
+ * will redeliver every Job that was still in flight.
+ *
+ * <p>
+ * Dispatch and completion may be reported from any thread. The committable offsets should only be collected and
+ * committed by the thread that owns the Kafka Consumer.
+ * </p>
+ */
+public class PartitionOffsetTracker {
+	private final Map<TopicPartition, PartitionState> partitions = new HashMap<TopicPartition, PartitionState>();
+	private long lastGeneration = 0;
+
+	/**
+	 * Records that the record at the specified offset has been handed to a Worker.
+	 *
+	 * @param partition
+	 *            The partition the record was consumed from
+	 * @param offset
+	 *            The offset of the record
+	 * @return The generation of the assignment of the partition the record was dispatched under, which its completion
+	 *         must report
+	 */
+	public synchronized long dispatched(TopicPartition partition, long offset) {
+		PartitionState state = partitions.get(partition);
+		if (state == null) {
+			state = new PartitionState(++lastGeneration);
+			partitions.put(partition, state);
+		}
+		state.inFlight.add(offset);
+		state.highestDispatched = Math.max(state.highestDispatched, offset);
+		return state.generation;
+	}
+
+	/**
+	 * Records that the Worker for the record at the specified offset has finished, regardless of success. Completions
+	 * for offsets that are not being tracked are ignored, so this may safely be called more than once per record.
+	 * Completions from an earlier assignment of the partition are ignored as well, so that a Job that outlived the
+	 * revocation of its partition cannot complete the redelivery of its record at the same offset.
+	 *
+	 * @param partition
+	 *            The partition the record was consumed from
+	 * @param offset
+	 *            The offset of the record
+	 * @param generation
+	 *            The generation returned when the record was dispatched
+	 */
+	public synchronized void completed(TopicPartition partition, long offset, long generation) {
+		PartitionState state = partitions.get(partition);
+		if ((state != null) && (state.generation == generation)) {
+			state.inFlight.remove(offset);
+		}
+	}
+
+	/**
+	 * Gets the offsets that can be committed for each partition that has made progress since its last commit. The
+	 * committed offset is the offset of the next record to consume, per Kafka convention.
+	 *
+	 * @return Map of partitions to the offsets to commit. Empty if no partition has made progress.
+	 */
+	public synchronized Map<TopicPartition, OffsetAndMetadata> getCommittableOffsets() {
+		Map<TopicPartition, OffsetAndMetadata> offsets = new HashMap<TopicPartition, OffsetAndMetadata>();
+		for (Map.Entry<TopicPartition, PartitionState> entry : partitions.entrySet()) {
+			PartitionState state = entry.getValue();
+			long committable = state.inFlight.isEmpty() ? state.highestDispatched + 1 : state.inFlight.first();
+			if (committable > state.committed) {
+				offsets.put(entry.getKey(), new OffsetAndMetadata(committable));
+			}
+		}
+		return offsets;
+	}
+
+	/**
+	 * Records that the offsets have been successfully committed to Kafka.
+	 *
+	 * @param offsets
+	 *            The offsets that were committed
+	 */
+	public synchronized void markCommitted(Map<TopicPartition, OffsetAndMetadata> offsets) {
+		for (Map.Entry<TopicPartition, OffsetAndMetadata> entry : offsets.entrySet()) {
+			PartitionState state = partitions.get(entry.getKey());
+			if (state != null) {
+				state.committed = Math.max(state.committed, entry.getValue().offset());
+			}
+		}
+	}
+
+	/**
+	 * Stops tracking the partitions, typically because they have been revoked from this consumer. Later completions for
+	 * records of these partitions are ignored.
+	 *
+	 * @param revoked
+	 *            The partitions to stop tracking
+	 * @return The number of records of these partitions that were still in flight
+	 */
+	public synchronized int removePartitions(Collection<TopicPartition> revoked) {
+		int inFlight = 0;
+		for (TopicPartition partition : revoked) {
+			PartitionState state = partitions.remove(partition);
+			if (state != null) {
+				inFlight += state.inFlight.size();
+			}
+		}
+		return inFlight;
+	}
+
+	/**
+	 * Gets the number of records that have been dispatched, but not yet completed, across all partitions.
+	 *
+	 * @return The in-flight record count
+	 */
+	public synchronized int getInFlightCount() {
+		int count = 0;
+		for (PartitionState state : partitions.values()) {
+			count += state.inFlight.size();
+		}
+		return count;
+	}
+
+	/**
+	 * Dispatch and commit state for a single partition.
+	 */
+	private static class PartitionState {
+		private final long generation;
+		private final TreeSet<Long> inFlight = new TreeSet<Long>();
+		private long highestDispatched = -1;
+		private long committed = -1;
+
+		public PartitionState(long generation) {
+			this.generation = generation;
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A single stage of the Ingest pipeline: a fixed set of Threads, and a bounded number of Jobs that may be queued for
+ * them. Work is handed to the stage either with {@link #offer(Runnable)}, which fails immediately if the stage is full,
+ * or with {@link #put(Runnable)}, which waits for room. Waiting on a full downstream stage is what propagates
+ * backpressure up the pipeline.
+ */
+public class PipelineStage {
+	private final String name;
+	private final int threads;
+	private final int capacity;
+	private final Semaphore slots;
+	private final ThreadPoolExecutor executor;
+
+	/**
+	 * Creates the stage and starts its Threads.
+	 *
+	 * @param name
+	 *            The name of the stage, used to name its Threads
+	 * @param threads
+	 *            The number of Threads working on the stage
+	 * @param queueCapacity
+	 *            The number of Jobs that may wait for a Thread
+	 */
+	public PipelineStage(final String name, int threads, int queueCapacity) {
+		this.name = name;
+		this.threads = Math.max(1, threads);
+		this.capacity = this.threads + Math.max(0, queueCapacity);
+		this.slots = new Semaphore(capacity, true);
+		this.executor = new ThreadPoolExecutor(this.threads, this.threads, 0L, TimeUnit.MILLISECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger threadCount = new AtomicInteger(0);
+
+					@Override
+					public Thread newThread(Runnable runnable) {
+						return new Thread(runnable, String.format("ingest-%s-%s", name, threadCount.incrementAndGet()));
+					}
+				});
+		executor.prestartAllCoreThreads();
+	}
+
+	/**
+	 * Hands work to the stage, if it has room.
+	 *
+	 * @param task
+	 *            The work to execute
+	 * @return True if accepted, false if the stage is full
+	 */
+	public boolean offer(Runnable task) {
+		if (!slots.tryAcquire()) {
+			return false;
+		}
+		execute(task);
+		return true;
+	}
+
+	/**
+	 * Hands work to the stage, waiting for room if it is full.
+	 *
+	 * @param task
+	 *            The work to execute
+	 * @throws InterruptedException
+	 *             If interrupted while waiting for room
+	 */
+	public void put(Runnable task) throws InterruptedException {
+		slots.acquire();
+		execute(task);
+	}
+
+	/**
+	 * Executes the task on the stage Threads, freeing its slot once it has finished.
+	 */
+	private void execute(final Runnable task) {
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						slots.release();
+					}
+				}
+			});
+		} catch (RejectedExecutionException exception) {
+			slots.release();
+			throw exception;
+		}
+	}
+
+	/**
+	 * Gets the number of Jobs that are queued or active on this stage.
+	 *
+	 * @return The count of Jobs
+	 */
+	public int getOccupancy() {
+		return capacity - slots.availablePermits();
+	}
+
+	/**
+	 * Stops the stage Threads once the work already handed to the stage has finished.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Gets the occupancy of this stage.
+	 *
+	 * @return Map of stage statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("threads", threads);
+		stats.put("capacity", capacity);
+		stats.put("activeThreads", executor.getActiveCount());
+		stats.put("queued", executor.getQueue().size());
+		stats.put("occupancy", getOccupancy());
+		stats.put("waitingToEnter", slots.getQueueLength());
+		stats.put("completed", executor.getCompletedTaskCount());
+		return stats;
+	}
+
+	public String getName() {
+		return name;
+	}
+}
@@ -0,0 +1,156 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.springframework.stereotype.Component;
+
+import ingest.model.RunningJob;
+import messaging.job.WorkerCallback;
+
+/**
+ * Registry of the Ingest Jobs currently being processed by this instance. The registry is updated concurrently by the
+ * polling Threads, the abort Thread and the Workers, and never blocks any of them. Snapshots are weakly consistent:
+ * they reflect each Job's state at the time it was read.
+ */
+@Component
+public class RunningJobRegistry {
+	private final ConcurrentMap<String, RunningJob> jobs = new ConcurrentHashMap<String, RunningJob>();
+
+	/**
+	 * Registers a Job before it is dispatched. Registering before dispatch ensures that a Job that completes
+	 * immediately is still removed from the registry.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param callback
+	 *            The callback to invoke if the Job is aborted before it is able to run
+	 * @return The registered Job
+	 */
+	public RunningJob register(String jobId, WorkerCallback callback) {
+		RunningJob job = new RunningJob(jobId, callback);
+		jobs.put(jobId, job);
+		return job;
+	}
+
+	/**
+	 * Removes the Job from the registry, if it is still the instance registered with the specified callback. This
+	 * prevents a redelivered Job with the same Id from being removed by the completion of an earlier delivery.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param callback
+	 *            The callback the Job was registered with
+	 */
+	public void remove(String jobId, WorkerCallback callback) {
+		RunningJob job = jobs.get(jobId);
+		if ((job != null) && (job.getCallback() == callback)) {
+			jobs.remove(jobId, job);
+		}
+	}
+
+	/**
+	 * Gets the running Job for the Job Id.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The Job, or null if it is not running on this instance
+	 */
+	public RunningJob get(String jobId) {
+		return jobs.get(jobId);
+	}
+
+	/**
+	 * Removes and cancels the Job, if it is running on this instance.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @return The cancelled Job, or null if it is not running on this instance
+	 */
+	public RunningJob abort(String jobId) {
+		RunningJob job = jobs.remove(jobId);
+		if (job != null) {
+			job.cancel();
+		}
+		return job;
+	}
+
+	/**
+	 * Updates the current stage of the Job, if it is running on this instance.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param stage
+	 *            The stage the Job has entered
+	 */
+	public void setStage(String jobId, RunningJob.Stage stage) {
+		RunningJob job = jobs.get(jobId);
+		if (job != null) {
+			job.setStage(stage);
+		}
+	}
+
+	/**
+	 * Adds to the number of bytes processed for the Job, if it is running on this instance.
+	 *
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param bytes
+	 *            The number of bytes processed
+	 */
+	public void addBytesProcessed(String jobId, long bytes) {
+		RunningJob job = jobs.get(jobId);
+		if (job != null) {
+			job.addBytesProcessed(bytes);
+		}
+	}
+
+	/**
+	 * Gets the number of Jobs running on this instance.
+	 *
+	 * @return The count of running Jobs
+	 */
+	public int size() {
+		return jobs.size();
+	}
+
+	/**
+	 * Gets the Ids of the Jobs running on this instance.
+	 *
+	 * @return The list of Job Ids
+	 */
+	public List<String> getJobIds() {
+		return new ArrayList<String>(jobs.keySet());
+	}
+
+	/**
+	 * Gets the state of every Job running on this instance.
+	 *
+	 * @return List of per-Job state
+	 */
+	public List<Map<String, Object>> getSnapshot() {
+		List<Map<String, Object>> snapshot = new ArrayList<Map<String, Object>>();
+		for (RunningJob job : jobs.values()) {
+			snapshot.add(job.toStats());
+		}
+		return snapshot;
+	}
+}
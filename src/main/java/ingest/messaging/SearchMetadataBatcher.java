@@ -0,0 +1,297 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import model.job.type.SearchMetadataIngestJob;
+import model.response.PiazzaResponse;
+
+/**
+ * Batches the metadata of ingested Data to pz-search. Metadata submitted within a short linger period of each other,
+ * up to a maximum batch size, is sent to the bulk endpoint in a single request. A single item is sent to the regular
+ * endpoint.
+ *
+ * <p>
+ * If the bulk endpoint is not supported by pz-search (404, 405 or 415), the batch is sent as individual requests
+ * instead, and bulk requests are not attempted again until the retry period has elapsed. If pz-search rejects the
+ * batch as invalid (400 or 422), its items are also sent individually, so that one invalid item fails only its own Job.
+ * </p>
+ */
+@Component
+public class SearchMetadataBatcher {
+	@Value("${search.url}")
+	private String SEARCH_URL;
+	@Value("${search.ingest.endpoint}")
+	private String SEARCH_ENDPOINT;
+	@Value("${search.ingest.bulk.endpoint}")
+	private String SEARCH_BULK_ENDPOINT;
+	@Value("${search.batch.max.items}")
+	private int batchMaxItems;
+	@Value("${search.batch.linger.ms}")
+	private long batchLingerMillis;
+	@Value("${search.batch.senders}")
+	private int batchSenders;
+	@Value("${search.bulk.retry.ms}")
+	private long bulkRetryMillis;
+
+	@Autowired
+	@Qualifier("notificationRestTemplate")
+	private RestTemplate restTemplate;
+
+	private final BlockingQueue<PendingMetadata> queue = new LinkedBlockingQueue<PendingMetadata>();
+	private final AtomicBoolean closed = new AtomicBoolean(false);
+	private final AtomicLong batchCount = new AtomicLong(0);
+	private final AtomicLong itemCount = new AtomicLong(0);
+	private final AtomicLong fallbackCount = new AtomicLong(0);
+	private final AtomicLong rejectedBatchCount = new AtomicLong(0);
+	private volatile long bulkUnsupportedTime = 0;
+	private ThreadPoolTaskExecutor senders;
+	private Thread batchingThread;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(SearchMetadataBatcher.class);
+
+	/**
+	 * Starts the batching Thread, and the Threads that send the batches.
+	 */
+	@PostConstruct
+	public void initialize() {
+		senders = new ThreadPoolTaskExecutor();
+		senders.setCorePoolSize(Math.max(1, batchSenders));
+		senders.setMaxPoolSize(Math.max(1, batchSenders));
+		senders.setThreadNamePrefix("ingest-search-batch-");
+		senders.initialize();
+
+		batchingThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				collectBatches();
+			}
+		}, "ingest-search-batcher");
+		batchingThread.setDaemon(true);
+		batchingThread.start();
+	}
+
+	/**
+	 * Stops batching. Batches already being sent complete; metadata that has not yet been batched is failed.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		closed.set(true);
+		batchingThread.interrupt();
+		senders.shutdown();
+	}
+
+	/**
+	 * Submits the metadata to be sent to pz-search in the next batch.
+	 *
+	 * @param job
+	 *            The metadata ingest Job that pz-search expects
+	 * @return Future that completes once the batch containing the metadata has been accepted by pz-search, or
+	 *         completes exceptionally with the error that prevented it
+	 */
+	public Future<Void> submit(SearchMetadataIngestJob job) {
+		PendingMetadata pending = new PendingMetadata(job);
+		if (closed.get()) {
+			pending.future.completeExceptionally(new IllegalStateException("The Search Metadata batcher is shut down."));
+		} else {
+			queue.add(pending);
+		}
+		return pending.future;
+	}
+
+	/**
+	 * Gets the batching statistics.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("batches", batchCount.get());
+		stats.put("items", itemCount.get());
+		stats.put("singleFallbacks", fallbackCount.get());
+		stats.put("rejectedBatches", rejectedBatchCount.get());
+		stats.put("queued", queue.size());
+		stats.put("bulkSupported", isBulkSupported());
+		return stats;
+	}
+
+	/**
+	 * Collects submitted metadata into batches, until shut down. A batch is closed when it is full, or when the linger
+	 * period since its first item has elapsed.
+	 */
+	private void collectBatches() {
+		while (!closed.get() || !queue.isEmpty()) {
+			try {
+				PendingMetadata first = queue.poll(1, TimeUnit.SECONDS);
+				if (first == null) {
+					continue;
+				}
+				final List<PendingMetadata> batch = new ArrayList<PendingMetadata>();
+				batch.add(first);
+				long deadline = System.currentTimeMillis() + batchLingerMillis;
+				while (batch.size() < batchMaxItems) {
+					long remaining = deadline - System.currentTimeMillis();
+					PendingMetadata next;
+					try {
+						next = (remaining > 0) ? queue.poll(remaining, TimeUnit.MILLISECONDS) : queue.poll();
+					} catch (InterruptedException exception) {
+						// Shutting down; close the batch with what it has
+						next = null;
+					}
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				try {
+					senders.execute(new Runnable() {
+						@Override
+						public void run() {
+							send(batch);
+						}
+					});
+				} catch (TaskRejectedException exception) {
+					completeExceptionally(batch, exception);
+				}
+			} catch (InterruptedException exception) {
+				// Interrupted on shutdown; the loop drains whatever remains
+				LOGGER.info("Search Metadata batcher interrupted.");
+			} catch (Exception exception) {
+				LOGGER.error("Error batching Search Metadata: " + exception.getMessage(), exception);
+			}
+		}
+	}
+
+	/**
+	 * Sends the batch, falling back to individual requests if the bulk endpoint is unavailable, or rejects the batch.
+	 */
+	private void send(List<PendingMetadata> batch) {
+		batchCount.incrementAndGet();
+		itemCount.addAndGet(batch.size());
+		if ((batch.size() > 1) && isBulkSupported()) {
+			try {
+				List<SearchMetadataIngestJob> jobs = new ArrayList<SearchMetadataIngestJob>();
+				for (PendingMetadata pending : batch) {
+					jobs.add(pending.job);
+				}
+				restTemplate.postForEntity(String.format("%s/%s", SEARCH_URL, SEARCH_BULK_ENDPOINT),
+						new HttpEntity<List<SearchMetadataIngestJob>>(jobs, getHeaders()), String.class);
+				for (PendingMetadata pending : batch) {
+					pending.future.complete(null);
+				}
+				return;
+			} catch (HttpClientErrorException exception) {
+				if (isBulkUnsupported(exception.getStatusCode())) {
+					LOGGER.warn(String.format("Search Service does not support bulk metadata (%s); sending individually.",
+							exception.getStatusCode()));
+					bulkUnsupportedTime = System.currentTimeMillis();
+				} else if (isItemRejected(exception.getStatusCode())) {
+					// Some item of the batch is invalid. Send each on its own,
+					// so that only the invalid items fail.
+					LOGGER.warn(String.format("Search Service rejected a bulk metadata batch of %s items (%s); sending individually.",
+							batch.size(), exception.getStatusCode()));
+					rejectedBatchCount.incrementAndGet();
+				} else {
+					completeExceptionally(batch, exception);
+					return;
+				}
+			} catch (Exception exception) {
+				completeExceptionally(batch, exception);
+				return;
+			}
+		}
+
+		// Send each item on its own
+		if (batch.size() > 1) {
+			fallbackCount.incrementAndGet();
+		}
+		for (PendingMetadata pending : batch) {
+			try {
+				restTemplate.postForObject(String.format("%s/%s/", SEARCH_URL, SEARCH_ENDPOINT),
+						new HttpEntity<SearchMetadataIngestJob>(pending.job, getHeaders()), PiazzaResponse.class);
+				pending.future.complete(null);
+			} catch (Exception exception) {
+				pending.future.completeExceptionally(exception);
+			}
+		}
+	}
+
+	private void completeExceptionally(List<PendingMetadata> batch, Exception exception) {
+		for (PendingMetadata pending : batch) {
+			pending.future.completeExceptionally(exception);
+		}
+	}
+
+	private boolean isBulkSupported() {
+		return (batchMaxItems > 1) && (System.currentTimeMillis() - bulkUnsupportedTime >= bulkRetryMillis);
+	}
+
+	private boolean isBulkUnsupported(HttpStatus status) {
+		return (status == HttpStatus.NOT_FOUND) || (status == HttpStatus.METHOD_NOT_ALLOWED)
+				|| (status == HttpStatus.UNSUPPORTED_MEDIA_TYPE);
+	}
+
+	private boolean isItemRejected(HttpStatus status) {
+		return (status == HttpStatus.BAD_REQUEST) || (status == HttpStatus.UNPROCESSABLE_ENTITY);
+	}
+
+	private HttpHeaders getHeaders() {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		return headers;
+	}
+
+	/**
+	 * Metadata waiting to be sent, and the Future of its submission.
+	 */
+	private static class PendingMetadata {
+		private final SearchMetadataIngestJob job;
+		private final CompletableFuture<Void> future = new CompletableFuture<Void>();
+
+		public PendingMetadata(SearchMetadataIngestJob job) {
+			this.job = job;
+		}
+	}
+}
@@ -0,0 +1,229 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+
+import messaging.job.JobMessageFactory;
+import model.logger.Severity;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Publishes Job Status Updates to Kafka without blocking the Worker that produced them.
+ *
+ * <p>
+ * Each Job has at most one Status Update in flight to Kafka at a time, so updates for the same Job are always delivered
+ * in the order they were published. If further updates are published for a Job while one is in flight, only the most
+ * recent is kept and sent once the in-flight update has been acknowledged; the superseded updates are dropped, since the
+ * Job Manager only reflects the latest status. Updates for different Jobs are sent independently.
+ * </p>
+ *
+ * <p>
+ * Delivery failures are reported to the Piazza Logger from the Kafka Producer callback, and counted in the statistics.
+ * The follow-up update is sent from a Thread of this publisher rather than from the callback, since the callback runs
+ * on the I/O Thread of the Producer, and a send that blocks on a full buffer there would stall every other send.
+ * </p>
+ */
+@Component
+public class StatusUpdatePublisher {
+	@Value("${SPACE}")
+	private String SPACE;
+
+	@Autowired
+	private PiazzaLogger logger;
+
+	private final Map<String, JobChannel> channels = new HashMap<String, JobChannel>();
+	private final AtomicLong publishedCount = new AtomicLong(0);
+	private final AtomicLong deliveredCount = new AtomicLong(0);
+	private final AtomicLong coalescedCount = new AtomicLong(0);
+	private final AtomicLong failedCount = new AtomicLong(0);
+	private Executor followUpExecutor;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(StatusUpdatePublisher.class);
+
+	/**
+	 * Creates the Thread that sends follow-up updates.
+	 */
+	@PostConstruct
+	public void initialize() {
+		followUpExecutor = Executors.newSingleThreadExecutor(new CustomizableThreadFactory("ingest-status-publisher-"));
+	}
+
+	/**
+	 * Stops the follow-up Thread. Updates still pending are dropped.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (followUpExecutor instanceof ExecutorService) {
+			((ExecutorService) followUpExecutor).shutdownNow();
+		}
+	}
+
+	/**
+	 * Publishes the Status Update for the Job. Returns immediately; the update is sent as soon as no earlier update for
+	 * the same Job is in flight.
+	 *
+	 * @param producer
+	 *            The Kafka producer to send the update with
+	 * @param jobId
+	 *            The Id of the Job
+	 * @param statusUpdate
+	 *            The Status Update
+	 * @throws JsonProcessingException
+	 *             If the Status Update could not be serialized
+	 */
+	public void publish(Producer<String, String> producer, String jobId, StatusUpdate statusUpdate) throws JsonProcessingException {
+		ProducerRecord<String, String> record = JobMessageFactory.getUpdateStatusMessage(jobId, statusUpdate, SPACE);
+		publishedCount.incrementAndGet();
+		boolean sendNow = false;
+		synchronized (channels) {
+			JobChannel channel = channels.get(jobId);
+			if (channel == null) {
+				channels.put(jobId, new JobChannel());
+				sendNow = true;
+			} else {
+				if (channel.pendingRecord != null) {
+					coalescedCount.incrementAndGet();
+				}
+				channel.pendingRecord = record;
+				channel.pendingProducer = producer;
+			}
+		}
+		if (sendNow) {
+			send(producer, jobId, record);
+		}
+	}
+
+	/**
+	 * Gets the number of Jobs that currently have a Status Update in flight.
+	 *
+	 * @return The count of Jobs
+	 */
+	public int getInFlightCount() {
+		synchronized (channels) {
+			return channels.size();
+		}
+	}
+
+	/**
+	 * Gets the delivery statistics of the published Status Updates.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("published", publishedCount.get());
+		stats.put("delivered", deliveredCount.get());
+		stats.put("coalesced", coalescedCount.get());
+		stats.put("failed", failedCount.get());
+		stats.put("inFlightJobs", getInFlightCount());
+		return stats;
+	}
+
+	/**
+	 * Sends the record to Kafka. Upon acknowledgement, successful or not, the next pending update for the Job is handed
+	 * to the follow-up Thread to send.
+	 */
+	private void send(Producer<String, String> producer, final String jobId, final ProducerRecord<String, String> record) {
+		try {
+			producer.send(record, new Callback() {
+				@Override
+				public void onCompletion(RecordMetadata metadata, Exception exception) {
+					if (exception != null) {
+						reportFailure(jobId, exception);
+					} else {
+						deliveredCount.incrementAndGet();
+					}
+					// Never send from the I/O Thread of the Producer
+					followUpExecutor.execute(new Runnable() {
+						@Override
+						public void run() {
+							sendNext(jobId);
+						}
+					});
+				}
+			});
+		} catch (Exception exception) {
+			// The Producer may reject the record outright, such as when it has been closed.
+			reportFailure(jobId, exception);
+			sendNext(jobId);
+		}
+	}
+
+	/**
+	 * Sends the pending update for the Job, if any; otherwise the Job no longer has an update in flight.
+	 */
+	private void sendNext(String jobId) {
+		ProducerRecord<String, String> next = null;
+		Producer<String, String> producer = null;
+		synchronized (channels) {
+			JobChannel channel = channels.get(jobId);
+			if (channel != null) {
+				next = channel.pendingRecord;
+				producer = channel.pendingProducer;
+				channel.pendingRecord = null;
+				channel.pendingProducer = null;
+				if (next == null) {
+					channels.remove(jobId);
+				}
+			}
+		}
+		if (next != null) {
+			send(producer, jobId, next);
+		}
+	}
+
+	/**
+	 * Reports that a Status Update could not be delivered.
+	 */
+	private void reportFailure(String jobId, Exception exception) {
+		failedCount.incrementAndGet();
+		String error = String.format("Status Update for Job %s could not be delivered to the Job Manager: %s", jobId,
+				exception.getMessage());
+		LOGGER.error(error, exception);
+		logger.log(error, Severity.ERROR);
+	}
+
+	/**
+	 * The Status Update waiting to be sent for a Job, once its in-flight update is acknowledged.
+	 */
+	private static class JobChannel {
+		private ProducerRecord<String, String> pendingRecord;
+		private Producer<String, String> pendingProducer;
+	}
+}
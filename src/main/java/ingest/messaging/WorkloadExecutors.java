@@ -0,0 +1,286 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.messaging;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+
+import ingest.model.WorkloadClass;
+import ingest.utility.CpuBoundLimiter;
+
+/**
+ * Manages a separately sized Thread Pool for each class of Ingest workload, on which Jobs are inspected. Each pool has
+ * a bounded queue, and Jobs reserve a slot on it when they are admitted; once every slot is reserved, further Jobs of
+ * that class are rejected rather than queued behind the heavy Jobs, and the caller is expected to retry later.
+ * 
+ * <p>
+ * In the default "pooled" execution mode, each pool has a fixed number of Threads. In the "elastic" execution mode,
+ * each Job is started on its own small-stack Thread as soon as it is submitted, up to a per-class maximum, and idle
+ * Threads are reclaimed. Since Ingest Jobs are mostly blocked on S3, PostGIS, Mongo and HTTP calls, this allows many
+ * more of them to run concurrently. CPU-heavy sections are still bounded separately by the {@link CpuBoundLimiter}.
+ * </p>
+ */
+@Component
+public class WorkloadExecutors {
+	private static final int HANDOFF_WAIT_SECONDS = 30;
+
+	@Value("${workload.raster.threads}")
+	private int rasterThreads;
+	@Value("${workload.raster.queue}")
+	private int rasterQueue;
+	@Value("${workload.vector.threads}")
+	private int vectorThreads;
+	@Value("${workload.vector.queue}")
+	private int vectorQueue;
+	@Value("${workload.remote.threads}")
+	private int remoteThreads;
+	@Value("${workload.remote.queue}")
+	private int remoteQueue;
+	@Value("${workload.light.threads}")
+	private int lightThreads;
+	@Value("${workload.light.queue}")
+	private int lightQueue;
+	@Value("${workload.execution.mode}")
+	private String executionMode;
+	@Value("${workload.elastic.max.threads}")
+	private int elasticMaxThreads;
+	@Value("${workload.elastic.thread.stack.kb}")
+	private int elasticThreadStackKb;
+	@Value("${workload.elastic.keep.alive.seconds}")
+	private int elasticKeepAliveSeconds;
+
+	private final Map<WorkloadClass, ThreadPoolTaskExecutor> executors = new EnumMap<WorkloadClass, ThreadPoolTaskExecutor>(
+			WorkloadClass.class);
+	private final Map<WorkloadClass, AtomicLong> rejections = new EnumMap<WorkloadClass, AtomicLong>(WorkloadClass.class);
+	private final Map<WorkloadClass, Integer> capacities = new EnumMap<WorkloadClass, Integer>(WorkloadClass.class);
+	private final Map<WorkloadClass, AtomicInteger> reservations = new EnumMap<WorkloadClass, AtomicInteger>(WorkloadClass.class);
+
+	/**
+	 * Creates the Thread Pools for each workload class.
+	 */
+	@PostConstruct
+	public void initialize() {
+		createExecutor(WorkloadClass.RASTER, rasterThreads, rasterQueue);
+		createExecutor(WorkloadClass.VECTOR_HOSTING, vectorThreads, vectorQueue);
+		createExecutor(WorkloadClass.REMOTE_METADATA, remoteThreads, remoteQueue);
+		createExecutor(WorkloadClass.LIGHTWEIGHT, lightThreads, lightQueue);
+	}
+
+	/**
+	 * Shuts down all Thread Pools.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		for (ThreadPoolTaskExecutor executor : executors.values()) {
+			executor.shutdown();
+		}
+	}
+
+	/**
+	 * Creates the Thread Pool for the workload class. In pooled mode this is a fixed-size pool with a bounded queue.
+	 * In elastic mode, a new Thread is started for each submission when none are idle, up to the elastic maximum, and
+	 * nothing is queued.
+	 */
+	private void createExecutor(final WorkloadClass workloadClass, int threads, int queueCapacity) {
+		final String threadNamePrefix = String.format("ingest-%s-", workloadClass.getPropertyName());
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setCorePoolSize(Math.max(1, threads));
+		if (isElastic()) {
+			executor.setMaxPoolSize(Math.max(Math.max(1, threads), elasticMaxThreads));
+			executor.setQueueCapacity(0);
+			executor.setKeepAliveSeconds(elasticKeepAliveSeconds);
+			executor.setThreadFactory(new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					// Ingest Threads spend their time blocked on I/O and need
+					// little stack, so thousands of them remain affordable.
+					Thread thread = new Thread(null, runnable, threadNamePrefix + threadCount.incrementAndGet(),
+							elasticThreadStackKb * 1024L);
+					thread.setDaemon(false);
+					return thread;
+				}
+			});
+		} else {
+			executor.setMaxPoolSize(Math.max(1, threads));
+			executor.setQueueCapacity(Math.max(0, queueCapacity));
+			executor.setThreadNamePrefix(threadNamePrefix);
+		}
+		executor.setRejectedExecutionHandler(new RejectedExecutionHandler() {
+			@Override
+			public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor) {
+				// Work only arrives with a reserved slot, so a full pool is
+				// one whose Thread has released its slot but not yet returned
+				// to the pool. Wait for that Thread rather than rejecting.
+				try {
+					if (threadPoolExecutor.isShutdown()
+							|| !threadPoolExecutor.getQueue().offer(runnable, HANDOFF_WAIT_SECONDS, TimeUnit.SECONDS)) {
+						throw new RejectedExecutionException(
+								String.format("The %s workload Thread Pool did not accept the work.", workloadClass.getPropertyName()));
+					}
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+					throw new RejectedExecutionException("Interrupted while waiting for the workload Thread Pool.", exception);
+				}
+			}
+		});
+		executor.initialize();
+		executors.put(workloadClass, executor);
+		rejections.put(workloadClass, new AtomicLong(0));
+		reservations.put(workloadClass, new AtomicInteger(0));
+		capacities.put(workloadClass, executor.getMaxPoolSize() + (isElastic() ? 0 : Math.max(0, queueCapacity)));
+	}
+
+	/**
+	 * Reserves a slot on the Thread Pool for the workload class, for a Job that will be executed on it once its earlier
+	 * stages complete. A Job that holds a reservation is not rejected by {@link #execute(WorkloadClass, Runnable)}, so
+	 * the Thread handing it off never has to wait on a busy workload class, only on a Thread returning to the pool.
+	 * 
+	 * @param workloadClass
+	 *            The class of the work
+	 * @throws TaskRejectedException
+	 *             If every slot of the workload class is already reserved
+	 */
+	public void reserve(WorkloadClass workloadClass) throws TaskRejectedException {
+		AtomicInteger reserved = reservations.get(workloadClass);
+		if (reserved.incrementAndGet() > capacities.get(workloadClass)) {
+			reserved.decrementAndGet();
+			rejections.get(workloadClass).incrementAndGet();
+			throw new TaskRejectedException(String.format("The %s workload is at capacity.", workloadClass.getPropertyName()));
+		}
+	}
+
+	/**
+	 * Releases a slot reserved by {@link #reserve(WorkloadClass)}, once the work has finished or will not be executed.
+	 * 
+	 * @param workloadClass
+	 *            The class of the work
+	 */
+	public void release(WorkloadClass workloadClass) {
+		reservations.get(workloadClass).decrementAndGet();
+	}
+
+	/**
+	 * Executes work on the Thread Pool for its workload class. A slot must have been reserved for the work. If every
+	 * Thread is still busy, this waits briefly for one that has released its slot to return to the pool.
+	 * 
+	 * @param workloadClass
+	 *            The class of the work
+	 * @param task
+	 *            The work to execute
+	 * @throws TaskRejectedException
+	 *             If the Thread Pool has been shut down, or did not free up in time
+	 */
+	public void execute(WorkloadClass workloadClass, Runnable task) throws TaskRejectedException {
+		executors.get(workloadClass).execute(task);
+	}
+
+	/**
+	 * Gets the number of Jobs that hold a reservation across all workload classes.
+	 * 
+	 * @return The count of pending work
+	 */
+	public int getPendingCount() {
+		int pending = 0;
+		for (AtomicInteger reserved : reservations.values()) {
+			pending += reserved.get();
+		}
+		return pending;
+	}
+
+	/**
+	 * Gets the number of Threads running Jobs across all workload classes.
+	 * 
+	 * @return The count of active Threads
+	 */
+	public int getActiveCount() {
+		int active = 0;
+		for (ThreadPoolTaskExecutor executor : executors.values()) {
+			active += executor.getActiveCount();
+		}
+		return active;
+	}
+
+	/**
+	 * Gets the number of Jobs waiting for a Thread across all workload classes.
+	 * 
+	 * @return The count of queued Jobs
+	 */
+	public int getQueuedCount() {
+		int queued = 0;
+		for (ThreadPoolTaskExecutor executor : executors.values()) {
+			ThreadPoolExecutor threadPoolExecutor = executor.getThreadPoolExecutor();
+			if (threadPoolExecutor != null) {
+				queued += threadPoolExecutor.getQueue().size();
+			}
+		}
+		return queued;
+	}
+
+	/**
+	 * Determines if the pools run in elastic execution mode.
+	 * 
+	 * @return True if elastic, false if pooled
+	 */
+	public boolean isElastic() {
+		return "elastic".equalsIgnoreCase(executionMode);
+	}
+
+	/**
+	 * Gets the utilization of each workload class Thread Pool.
+	 * 
+	 * @return Map of workload class names to pool statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		for (Map.Entry<WorkloadClass, ThreadPoolTaskExecutor> entry : executors.entrySet()) {
+			ThreadPoolTaskExecutor executor = entry.getValue();
+			Map<String, Object> poolStats = new HashMap<String, Object>();
+			poolStats.put("activeThreads", executor.getActiveCount());
+			poolStats.put("poolSize", executor.getPoolSize());
+			poolStats.put("maxPoolSize", executor.getMaxPoolSize());
+			ThreadPoolExecutor threadPoolExecutor = executor.getThreadPoolExecutor();
+			if (threadPoolExecutor != null) {
+				poolStats.put("queued", threadPoolExecutor.getQueue().size());
+				poolStats.put("queueRemaining", threadPoolExecutor.getQueue().remainingCapacity());
+				poolStats.put("completed", threadPoolExecutor.getCompletedTaskCount());
+			}
+			poolStats.put("rejected", rejections.get(entry.getKey()).get());
+			poolStats.put("reserved", reservations.get(entry.getKey()).get());
+			poolStats.put("capacity", capacities.get(entry.getKey()));
+			stats.put(entry.getKey().getPropertyName(), poolStats);
+		}
+		stats.put("executionMode", isElastic() ? "elastic" : "pooled");
+		return stats;
+	}
+}
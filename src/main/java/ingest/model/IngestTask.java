@@ -0,0 +1,87 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.model;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.Producer;
+
+import messaging.job.WorkerCallback;
+import model.data.DataResource;
+import model.job.Job;
+import model.job.type.IngestJob;
+
+/**
+ * The state of a single Ingest Job as it is handed from one stage of ingest to the next. Each stage runs on a
+ * different Thread, but only one stage works on the Job at a time; the handoff between stages publishes the state
+ * safely to the next Thread.
+ */
+public class IngestTask {
+	private final ConsumerRecord<String, String> consumerRecord;
+	private final Producer<String, String> producer;
+	private final WorkerCallback callback;
+	private Job job;
+	private IngestJob ingestJob;
+	private DataResource dataResource;
+
+	public IngestTask(ConsumerRecord<String, String> consumerRecord, Producer<String, String> producer, WorkerCallback callback) {
+		this.consumerRecord = consumerRecord;
+		this.producer = producer;
+		this.callback = callback;
+	}
+
+	public ConsumerRecord<String, String> getConsumerRecord() {
+		return consumerRecord;
+	}
+
+	/**
+	 * @return The Job Id, which is the key of the Kafka Message
+	 */
+	public String getJobId() {
+		return consumerRecord.key();
+	}
+
+	public Producer<String, String> getProducer() {
+		return producer;
+	}
+
+	public WorkerCallback getCallback() {
+		return callback;
+	}
+
+	public Job getJob() {
+		return job;
+	}
+
+	public void setJob(Job job) {
+		this.job = job;
+	}
+
+	public IngestJob getIngestJob() {
+		return ingestJob;
+	}
+
+	public void setIngestJob(IngestJob ingestJob) {
+		this.ingestJob = ingestJob;
+	}
+
+	public DataResource getDataResource() {
+		return dataResource;
+	}
+
+	public void setDataResource(DataResource dataResource) {
+		this.dataResource = dataResource;
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.model;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import messaging.job.WorkerCallback;
+
+/**
+ * State of a single Ingest Job that is being processed by this instance. The Job is registered before it is handed to
+ * the Thread Pool, and its Future is attached once dispatched. Fields are safe to read from any thread without locking.
+ */
+public class RunningJob {
+	/**
+	 * The stages an Ingest Job passes through, in order.
+	 */
+	public enum Stage {
+		QUEUED, FETCHING, INSPECTING, PERSISTING, NOTIFYING
+	}
+
+	private final String jobId;
+	private final long startTime;
+	private final WorkerCallback callback;
+	private final AtomicLong bytesProcessed = new AtomicLong(0);
+	private volatile Stage stage = Stage.QUEUED;
+	private volatile Future<?> future;
+	private volatile boolean cancelled = false;
+
+	public RunningJob(String jobId, WorkerCallback callback) {
+		this.jobId = jobId;
+		this.callback = callback;
+		this.startTime = System.currentTimeMillis();
+	}
+
+	public String getJobId() {
+		return jobId;
+	}
+
+	public long getStartTime() {
+		return startTime;
+	}
+
+	public WorkerCallback getCallback() {
+		return callback;
+	}
+
+	public Stage getStage() {
+		return stage;
+	}
+
+	public void setStage(Stage stage) {
+		this.stage = stage;
+	}
+
+	public long getBytesProcessed() {
+		return bytesProcessed.get();
+	}
+
+	public void addBytesProcessed(long bytes) {
+		bytesProcessed.addAndGet(bytes);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Attaches the Future of the dispatched Job. If the Job was cancelled before the Future was attached, the Future is
+	 * cancelled immediately.
+	 *
+	 * @param future
+	 *            The Future of the Job
+	 */
+	public void attach(Future<?> future) {
+		this.future = future;
+		if (cancelled) {
+			future.cancel(true);
+		}
+	}
+
+	/**
+	 * Cancels the Job, interrupting it if it is running.
+	 */
+	public void cancel() {
+		cancelled = true;
+		Future<?> current = future;
+		if (current != null) {
+			current.cancel(true);
+		}
+	}
+
+	/**
+	 * Gets a point-in-time view of this Job suitable for reporting.
+	 *
+	 * @return Map of Job state
+	 */
+	public Map<String, Object> toStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("jobId", jobId);
+		stats.put("stage", stage.toString());
+		stats.put("startTime", startTime);
+		stats.put("elapsedMillis", System.currentTimeMillis() - startTime);
+		stats.put("bytesProcessed", bytesProcessed.get());
+		return stats;
+	}
+}
@@ -0,0 +1,54 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.model;
+
+/**
+ * Classes of Ingest work that are executed on separate Thread Pools, so that long-running Jobs of one class cannot
+ * delay the quick Jobs of another.
+ */
+public enum WorkloadClass {
+	/**
+	 * Raster files that are downloaded and decoded, such as GeoTIFFs.
+	 */
+	RASTER("raster"),
+	/**
+	 * Vector files or services that are parsed and, if hosted, copied into PostGIS.
+	 */
+	VECTOR_HOSTING("vector"),
+	/**
+	 * Resources whose metadata is obtained from a remote service, without reading the data here.
+	 */
+	REMOTE_METADATA("remote"),
+	/**
+	 * Resources that require little or no inspection, such as text.
+	 */
+	LIGHTWEIGHT("light");
+
+	private final String propertyName;
+
+	private WorkloadClass(String propertyName) {
+		this.propertyName = propertyName;
+	}
+
+	/**
+	 * Gets the name used for this class in configuration properties and statistics.
+	 * 
+	 * @return The property name
+	 */
+	public String getPropertyName() {
+		return propertyName;
+	}
+}
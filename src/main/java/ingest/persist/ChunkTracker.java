@@ -0,0 +1,56 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+/**
+ * Counts the chunks of a load that are writing. Once the load is abandoned, no further chunk may start, and the load
+ * waits for the chunks that started, so that no COPY is still running once it returns.
+ */
+public class ChunkTracker {
+	private boolean aborted = false;
+	private int running = 0;
+
+	/**
+	 * Marks a chunk as started, unless the load has been abandoned.
+	 *
+	 * @return True if the chunk may write
+	 */
+	public synchronized boolean begin() {
+		if (aborted) {
+			return false;
+		}
+		running++;
+		return true;
+	}
+
+	/**
+	 * Marks a started chunk as finished.
+	 */
+	public synchronized void end() {
+		running--;
+		notifyAll();
+	}
+
+	/**
+	 * Prevents further chunks from starting, and waits for the started chunks to finish.
+	 */
+	public synchronized void abortAndAwait() throws InterruptedException {
+		aborted = true;
+		while (running > 0) {
+			wait();
+		}
+	}
+}
@@ -0,0 +1,62 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * The progress of a checkpointed load of a Data Resource into PostGIS: the chunks of Features already committed by
+ * earlier attempts, which are skipped when the load is resumed.
+ */
+public class LoadCheckpoint {
+	private final String dataId;
+	private final String schemaHash;
+	private final Set<Integer> committedChunks;
+
+	public LoadCheckpoint(String dataId, String schemaHash, Set<Integer> committedChunks) {
+		this.dataId = dataId;
+		this.schemaHash = schemaHash;
+		this.committedChunks = Collections.unmodifiableSet(committedChunks);
+	}
+
+	public String getDataId() {
+		return dataId;
+	}
+
+	/**
+	 * @return Hash of the table schema and chunk size the chunks were committed with
+	 */
+	public String getSchemaHash() {
+		return schemaHash;
+	}
+
+	/**
+	 * @param chunkIndex
+	 *            The index of the chunk in the source
+	 * @return True if the chunk was committed by an earlier attempt
+	 */
+	public boolean isCommitted(int chunkIndex) {
+		return committedChunks.contains(chunkIndex);
+	}
+
+	/**
+	 * @return True if an earlier attempt committed any chunks
+	 */
+	public boolean isResumed() {
+		return !committedChunks.isEmpty();
+	}
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Records, in the Piazza PostGIS database, which chunks of a hosted load have been committed. Each chunk is committed
+ * together with its checkpoint row, so a load that fails part way through can be resumed by a retried or redelivered
+ * Job without reloading the chunks already in the table.
+ *
+ * <p>
+ * Checkpoints are keyed by Data Id, and carry a hash of the table schema and chunk size. Checkpoints with a different
+ * hash were made for different chunks, and are discarded rather than resumed.
+ * </p>
+ */
+@Component
+public class LoadCheckpointStore {
+	@Value("${postgres.load.checkpoint.enabled}")
+	private boolean checkpointEnabled;
+	@Value("${postgres.load.chunk.features}")
+	private int chunkFeatures;
+	@Value("${postgres.schema}")
+	private String POSTGRES_SCHEMA;
+
+	private static final String CHECKPOINT_TABLE = "ingest_load_checkpoint";
+
+	private volatile boolean tableCreated = false;
+
+	/**
+	 * Determines if loads are checkpointed.
+	 *
+	 * @return True if chunks of hosted loads should be checkpointed
+	 */
+	public boolean isEnabled() {
+		return checkpointEnabled;
+	}
+
+	/**
+	 * Gets the hash that identifies how a table is loaded in chunks.
+	 *
+	 * @param schema
+	 *            The schema of the table
+	 * @return The hash of the schema and chunk size
+	 */
+	public String getSchemaHash(SimpleFeatureType schema) {
+		try {
+			String spec = String.format("%s|%s|%s", schema.getTypeName(), DataUtilities.encodeType(schema), chunkFeatures);
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(spec.getBytes(StandardCharsets.UTF_8));
+			StringBuilder hash = new StringBuilder();
+			for (byte value : digest) {
+				hash.append(String.format("%02x", value));
+			}
+			return hash.toString();
+		} catch (NoSuchAlgorithmException exception) {
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	/**
+	 * Gets the checkpoint of the load of a Data Resource. Checkpoints made with a different schema hash are discarded.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store
+	 * @param dataId
+	 *            The Id of the Data Resource being loaded
+	 * @param schemaHash
+	 *            The schema hash of the load
+	 * @return The checkpoint; with no committed chunks if the load has not been attempted before
+	 */
+	public LoadCheckpoint getCheckpoint(DataStore dataStore, String dataId, String schemaHash) throws IOException {
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		Set<Integer> committedChunks = new HashSet<Integer>();
+		boolean stale = false;
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			createTable(connection);
+			try (PreparedStatement query = connection
+					.prepareStatement(String.format("SELECT chunk_index, schema_hash FROM %s WHERE data_id = ?", getTable()))) {
+				query.setString(1, dataId);
+				try (ResultSet results = query.executeQuery()) {
+					while (results.next()) {
+						if (schemaHash.equals(results.getString(2))) {
+							committedChunks.add(results.getInt(1));
+						} else {
+							stale = true;
+						}
+					}
+				}
+			}
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not read the load checkpoint of Data %s: %s", dataId, exception.getMessage()),
+					exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+
+		if (stale) {
+			// The table was loaded differently; none of its chunks can be trusted
+			clear(dataStore, dataId);
+			committedChunks.clear();
+		}
+		return new LoadCheckpoint(dataId, schemaHash, committedChunks);
+	}
+
+	/**
+	 * Records a committed chunk. Must be called in the transaction that loads the chunk, so that the chunk and its
+	 * checkpoint are committed together.
+	 *
+	 * @param connection
+	 *            The connection loading the chunk
+	 * @param checkpoint
+	 *            The checkpoint of the load
+	 * @param chunkIndex
+	 *            The index of the chunk in the source
+	 * @param featureCount
+	 *            The number of Features in the chunk
+	 */
+	public void recordChunk(Connection connection, LoadCheckpoint checkpoint, int chunkIndex, long featureCount) throws SQLException {
+		try (PreparedStatement insert = connection.prepareStatement(
+				String.format("INSERT INTO %s (data_id, chunk_index, schema_hash, feature_count) VALUES (?, ?, ?, ?)", getTable()))) {
+			insert.setString(1, checkpoint.getDataId());
+			insert.setInt(2, chunkIndex);
+			insert.setString(3, checkpoint.getSchemaHash());
+			insert.setLong(4, featureCount);
+			insert.executeUpdate();
+		}
+	}
+
+	/**
+	 * Removes the checkpoints of a Data Resource, once its load is complete or is to be started over.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store
+	 * @param dataId
+	 *            The Id of the Data Resource
+	 */
+	public void clear(DataStore dataStore, String dataId) throws IOException {
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			createTable(connection);
+			try (PreparedStatement delete = connection.prepareStatement(String.format("DELETE FROM %s WHERE data_id = ?", getTable()))) {
+				delete.setString(1, dataId);
+				delete.executeUpdate();
+			}
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not clear the load checkpoint of Data %s: %s", dataId, exception.getMessage()),
+					exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Gets how long ago each checkpointed load last committed a chunk, so that loads that were abandoned can be found.
+	 * The age is computed by the database, so that it does not depend on the time zones or clocks of the database and
+	 * of this process agreeing.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store
+	 * @return The time in milliseconds since the last committed chunk, by the Id of the Data Resource
+	 */
+	public Map<String, Long> getIdleTimes(DataStore dataStore) throws IOException {
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		Map<String, Long> idleTimes = new HashMap<String, Long>();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			createTable(connection);
+			try (Statement query = connection.createStatement();
+					ResultSet results = query.executeQuery(
+							String.format("SELECT data_id, CAST(extract(epoch FROM now() - max(committed_on)) * 1000 AS bigint) "
+									+ "FROM %s GROUP BY data_id", getTable()))) {
+				while (results.next()) {
+					idleTimes.put(results.getString(1), results.getLong(2));
+				}
+			}
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not read the load checkpoints: %s", exception.getMessage()), exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+		return idleTimes;
+	}
+
+	private void createTable(Connection connection) throws SQLException {
+		if (!tableCreated) {
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(String.format("CREATE TABLE IF NOT EXISTS %s (data_id varchar(64) NOT NULL, chunk_index integer NOT NULL, "
+						+ "schema_hash char(64) NOT NULL, feature_count bigint NOT NULL, committed_on timestamptz NOT NULL DEFAULT now(), "
+						+ "PRIMARY KEY (data_id, chunk_index))", getTable()));
+			}
+			tableCreated = true;
+		}
+	}
+
+	private String getTable() {
+		return String.format("%s.%s", PostGisCopyLoader.quote(POSTGRES_SCHEMA), PostGisCopyLoader.quote(CHECKPOINT_TABLE));
+	}
+}
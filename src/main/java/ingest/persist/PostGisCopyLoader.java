@@ -0,0 +1,604 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Transaction;
+import org.geotools.data.jdbc.datasource.DataSourceFinder;
+import org.geotools.data.jdbc.datasource.UnWrapper;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.factory.Hints;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.ByteOrderValues;
+import com.vividsolutions.jts.io.WKBWriter;
+
+/**
+ * Loads Features into an existing PostGIS table with a binary COPY, rather than row-by-row INSERTs. Geometries are
+ * sent as EWKB, which the PostGIS geometry type accepts directly.
+ *
+ * <p>
+ * The COPY is a single statement: if it fails, no rows are loaded, and the caller can fall back to inserting the
+ * Features through the Feature Store. Tables with column types that have no binary encoding here are rejected before
+ * any data is sent.
+ * </p>
+ * 
+ * <p>
+ * Large loads are split into chunks of Features, each sent with its own COPY over its own pooled connection, by a
+ * bounded set of writer threads shared by all Jobs. If any chunk fails, the table is truncated, so the load still
+ * either completes or leaves the table empty.
+ * </p>
+ * 
+ * <p>
+ * A checkpointed load instead commits each chunk together with its checkpoint, and leaves committed chunks in place if
+ * it fails, so that a later attempt can skip them. Chunks are numbered by their position in the source, so the source
+ * must return its Features in the same order each time it is read.
+ * </p>
+ */
+@Component
+public class PostGisCopyLoader {
+	private static final byte[] COPY_SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 };
+	private static final long POSTGRES_EPOCH_DAY = LocalDate.of(2000, 1, 1).toEpochDay();
+	private static final LocalDateTime POSTGRES_EPOCH = LocalDateTime.of(2000, 1, 1, 0, 0);
+	private static final int COPY_BUFFER_BYTES = 64 * 1024;
+
+	@Value("${postgres.copy.enabled}")
+	private boolean copyEnabled;
+	@Value("${postgres.load.writers}")
+	private int writers;
+	@Value("${postgres.load.chunk.features}")
+	private int chunkFeatures;
+
+	@Autowired
+	private LoadCheckpointStore checkpointStore;
+
+	private ExecutorService writerExecutor;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(PostGisCopyLoader.class);
+
+	/**
+	 * Starts the writer threads for loads split into chunks.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (writers > 1) {
+			writerExecutor = Executors.newFixedThreadPool(writers, new CustomizableThreadFactory("ingest-postgis-writer-"));
+		}
+	}
+
+	/**
+	 * Stops the writer threads.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (writerExecutor != null) {
+			writerExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Determines if loading with COPY is enabled.
+	 *
+	 * @return True if Features should be loaded with COPY
+	 */
+	public boolean isEnabled() {
+		return copyEnabled;
+	}
+
+	/**
+	 * Loads the Features into the table with a binary COPY.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store containing the table
+	 * @param tableName
+	 *            The table, newly created from the schema of the Features. It is truncated if the load fails.
+	 * @param features
+	 *            The Features to load
+	 * @return The number of Features loaded
+	 * @throws UnsupportedOperationException
+	 *             If the Data Store is not PostGIS, or the table has a column type that cannot be sent
+	 */
+	public long load(DataStore dataStore, String tableName, SimpleFeatureCollection features) throws IOException, SQLException {
+		return load(dataStore, tableName, features, null);
+	}
+
+	/**
+	 * Loads the Features into the table with a binary COPY, committing each chunk with a checkpoint. Chunks committed
+	 * by an earlier attempt are skipped, and if the load fails, the chunks committed so far are kept.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store containing the table
+	 * @param tableName
+	 *            The table, created from the schema of the Features
+	 * @param features
+	 *            The Features to load, in the same order as in earlier attempts
+	 * @param checkpoint
+	 *            The checkpoint of the load, or null to load without one
+	 * @return The number of Features in the table once loaded
+	 * @throws UnsupportedOperationException
+	 *             If the Data Store is not PostGIS, or the table has a column type that cannot be sent
+	 */
+	public long load(DataStore dataStore, String tableName, SimpleFeatureCollection features, LoadCheckpoint checkpoint)
+			throws IOException, SQLException {
+		if (!(dataStore instanceof JDBCDataStore)) {
+			throw new UnsupportedOperationException("COPY requires a JDBC Data Store.");
+		}
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		SimpleFeatureType tableSchema = jdbcStore.getSchema(tableName);
+		List<Column> columns = getColumns(tableSchema);
+		String sql = getCopySql(jdbcStore.getDatabaseSchema(), tableName, columns);
+
+		if ((writerExecutor == null) && (checkpoint == null)) {
+			return copy(jdbcStore, sql, columns, features, null, 0);
+		}
+		try {
+			return copyInChunks(jdbcStore, sql, tableSchema, features, checkpoint);
+		} catch (IOException | SQLException exception) {
+			if (checkpoint == null) {
+				truncate(jdbcStore, tableName);
+			}
+			throw exception;
+		}
+	}
+
+	/**
+	 * Sends the Features in chunks, each with its own COPY, on the writer threads. The Features are read on the calling
+	 * thread; the number of chunks read ahead of the writers is bounded, so large sources are not held in memory. Without
+	 * writer threads, the chunks are sent on the calling thread.
+	 */
+	private long copyInChunks(final JDBCDataStore jdbcStore, final String sql, final SimpleFeatureType tableSchema,
+			SimpleFeatureCollection features, final LoadCheckpoint checkpoint) throws IOException, SQLException {
+		final Semaphore chunksInFlight = new Semaphore(Math.max(1, writers) * 2);
+		final ChunkTracker tracker = new ChunkTracker();
+		List<Future<Long>> chunks = new ArrayList<Future<Long>>();
+		long skipped = 0;
+		SimpleFeatureIterator iterator = features.features();
+		try {
+			List<SimpleFeature> chunk = new ArrayList<SimpleFeature>();
+			int chunkIndex = 0;
+			while (iterator.hasNext()) {
+				chunk.add(iterator.next());
+				if ((chunk.size() >= chunkFeatures) || !iterator.hasNext()) {
+					if (hasFailed(chunks)) {
+						// The failure is thrown below; there is no need to read the rest of the source
+						break;
+					}
+					if ((checkpoint != null) && checkpoint.isCommitted(chunkIndex)) {
+						// Loaded by an earlier attempt
+						skipped += chunk.size();
+					} else {
+						chunksInFlight.acquire();
+						final SimpleFeatureCollection chunkCollection = DataUtilities.collection(chunk);
+						final int index = chunkIndex;
+						chunks.add(submit(new Callable<Long>() {
+							@Override
+							public Long call() throws Exception {
+								try {
+									if (!tracker.begin()) {
+										throw new CancellationException("The load has been abandoned.");
+									}
+									try {
+										// Each writer encodes with its own columns, as the geometry writers are not thread-safe
+										return copy(jdbcStore, sql, getColumns(tableSchema), chunkCollection, checkpoint, index);
+									} finally {
+										tracker.end();
+									}
+								} finally {
+									chunksInFlight.release();
+								}
+							}
+						}));
+					}
+					chunk = new ArrayList<SimpleFeature>();
+					chunkIndex++;
+				}
+			}
+
+			long count = skipped;
+			for (Future<Long> future : chunks) {
+				count += future.get();
+			}
+			return count;
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while loading Features with COPY.", exception);
+		} catch (ExecutionException exception) {
+			Throwable cause = exception.getCause();
+			if (cause instanceof SQLException) {
+				throw (SQLException) cause;
+			}
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			throw new IOException(cause.getMessage(), cause);
+		} finally {
+			iterator.close();
+			awaitChunks(chunks, tracker);
+		}
+	}
+
+	/**
+	 * Sends a chunk on the writer threads, or runs it on the calling thread if there are none.
+	 */
+	private Future<Long> submit(Callable<Long> chunk) {
+		if (writerExecutor != null) {
+			return writerExecutor.submit(chunk);
+		}
+		FutureTask<Long> task = new FutureTask<Long>(chunk);
+		task.run();
+		return task;
+	}
+
+	/**
+	 * Determines if any chunk already sent has failed, so that no more need be read.
+	 */
+	private boolean hasFailed(List<Future<Long>> chunks) {
+		for (Future<Long> future : chunks) {
+			if (future.isDone()) {
+				try {
+					future.get();
+				} catch (InterruptedException | ExecutionException | CancellationException exception) {
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Stops the chunks that have not started, and waits for the rest to finish, so no COPY is still running once the
+	 * load returns. A cancelled Future reports as done while its task may still be running, so the chunks that started
+	 * are counted by the tracker instead.
+	 */
+	private void awaitChunks(List<Future<Long>> chunks, ChunkTracker tracker) {
+		for (Future<Long> future : chunks) {
+			future.cancel(false);
+		}
+		try {
+			tracker.abortAndAwait();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Removes the rows of chunks that were loaded before a load failed.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store containing the table
+	 * @param tableName
+	 *            The table to empty
+	 */
+	public void truncate(DataStore dataStore, String tableName) throws IOException, SQLException {
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		String databaseSchema = jdbcStore.getDatabaseSchema();
+		String table = (databaseSchema != null) ? quote(databaseSchema) + "." + quote(tableName) : quote(tableName);
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("TRUNCATE " + table);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Sends the Features with a single COPY, on a connection of its own. With a checkpoint, the COPY and the checkpoint
+	 * of the chunk are committed in one transaction.
+	 */
+	private long copy(JDBCDataStore jdbcStore, String sql, List<Column> columns, SimpleFeatureCollection features,
+			LoadCheckpoint checkpoint, int chunkIndex) throws IOException, SQLException {
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			if (checkpoint != null) {
+				connection.setAutoCommit(false);
+			}
+			CopyIn copyIn = getCopyManager(connection).copyIn(sql);
+			long count;
+			try {
+				count = writeFeatures(new DataOutputStream(new BufferedOutputStream(new CopyInStream(copyIn), COPY_BUFFER_BYTES)),
+						columns, features);
+				copyIn.endCopy();
+			} finally {
+				if (copyIn.isActive()) {
+					copyIn.cancelCopy();
+				}
+			}
+			if (checkpoint != null) {
+				checkpointStore.recordChunk(connection, checkpoint, chunkIndex, count);
+				connection.commit();
+				connection.setAutoCommit(true);
+			}
+			return count;
+		} catch (IOException | SQLException exception) {
+			if (checkpoint != null) {
+				rollbackSafe(connection);
+			}
+			throw exception;
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Rolls back a chunk that failed, and returns its connection to auto-commit before it goes back to the pool.
+	 */
+	private void rollbackSafe(Connection connection) {
+		try {
+			connection.rollback();
+			connection.setAutoCommit(true);
+		} catch (SQLException exception) {
+			LOGGER.warn(String.format("Could not roll back a failed COPY: %s", exception.getMessage()));
+		}
+	}
+
+	/**
+	 * Writes the binary COPY header, a tuple for each Feature, and the trailer.
+	 */
+	private long writeFeatures(DataOutputStream output, List<Column> columns, SimpleFeatureCollection features) throws IOException {
+		output.write(COPY_SIGNATURE);
+		// Flags, and header extension length
+		output.writeInt(0);
+		output.writeInt(0);
+
+		long count = 0;
+		SimpleFeatureIterator iterator = features.features();
+		try {
+			while (iterator.hasNext()) {
+				SimpleFeature feature = iterator.next();
+				output.writeShort(columns.size());
+				for (Column column : columns) {
+					column.write(output, feature.getAttribute(column.name));
+				}
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+
+		output.writeShort(-1);
+		output.flush();
+		return count;
+	}
+
+	/**
+	 * Gets the columns of the table to load, and how each is encoded. Throws if any column cannot be encoded.
+	 */
+	private List<Column> getColumns(SimpleFeatureType tableSchema) {
+		List<Column> columns = new ArrayList<Column>();
+		for (AttributeDescriptor descriptor : tableSchema.getAttributeDescriptors()) {
+			Class<?> binding = descriptor.getType().getBinding();
+			if (Geometry.class.isAssignableFrom(binding)) {
+				Object srid = descriptor.getUserData().get(JDBCDataStore.JDBC_NATIVE_SRID);
+				Object dimension = descriptor.getUserData().get(Hints.COORDINATE_DIMENSION);
+				columns.add(new GeometryColumn(descriptor.getLocalName(), (srid instanceof Integer) ? (Integer) srid : 0,
+						(dimension instanceof Integer) ? (Integer) dimension : 2));
+			} else if (isSupported(binding)) {
+				columns.add(new Column(descriptor.getLocalName(), binding));
+			} else {
+				throw new UnsupportedOperationException(
+						String.format("Column %s of type %s cannot be sent with COPY.", descriptor.getLocalName(), binding.getName()));
+			}
+		}
+		return columns;
+	}
+
+	private boolean isSupported(Class<?> binding) {
+		return (binding == String.class) || (binding == Integer.class) || (binding == Long.class) || (binding == Short.class)
+				|| (binding == Double.class) || (binding == Float.class) || (binding == Boolean.class) || (binding == byte[].class)
+				|| (binding == java.sql.Date.class) || (binding == Timestamp.class);
+	}
+
+	private String getCopySql(String databaseSchema, String tableName, List<Column> columns) {
+		StringBuilder columnList = new StringBuilder();
+		for (Column column : columns) {
+			if (columnList.length() > 0) {
+				columnList.append(", ");
+			}
+			columnList.append(quote(column.name));
+		}
+		String table = (databaseSchema != null) ? quote(databaseSchema) + "." + quote(tableName) : quote(tableName);
+		return String.format("COPY %s (%s) FROM STDIN WITH (FORMAT binary)", table, columnList);
+	}
+
+	/**
+	 * Quotes a PostgreSQL identifier, such as a table name that is a Data Id.
+	 */
+	static String quote(String identifier) {
+		return "\"" + identifier.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Gets the COPY API of the PostgreSQL connection underneath the pooled connection.
+	 */
+	private CopyManager getCopyManager(Connection connection) throws SQLException {
+		Connection unwrapped = connection;
+		UnWrapper unwrapper = DataSourceFinder.getUnWrapper(connection);
+		if (unwrapper != null) {
+			unwrapped = unwrapper.unwrap(connection);
+		}
+		if (unwrapped instanceof PGConnection) {
+			return ((PGConnection) unwrapped).getCopyAPI();
+		}
+		if (connection.isWrapperFor(PGConnection.class)) {
+			return connection.unwrap(PGConnection.class).getCopyAPI();
+		}
+		throw new UnsupportedOperationException("The connection is not a PostgreSQL connection.");
+	}
+
+	/**
+	 * A column of the table, and the binary encoding of its values.
+	 */
+	private static class Column {
+		protected final String name;
+		private final Class<?> binding;
+
+		public Column(String name, Class<?> binding) {
+			this.name = name;
+			this.binding = binding;
+		}
+
+		/**
+		 * Writes the length of the value, followed by its binary representation. Null is written as a length of -1.
+		 */
+		public void write(DataOutputStream output, Object value) throws IOException {
+			if (value == null) {
+				output.writeInt(-1);
+			} else if (binding == String.class) {
+				writeBytes(output, value.toString().getBytes(StandardCharsets.UTF_8));
+			} else if (binding == Integer.class) {
+				output.writeInt(4);
+				output.writeInt(((Number) value).intValue());
+			} else if (binding == Long.class) {
+				output.writeInt(8);
+				output.writeLong(((Number) value).longValue());
+			} else if (binding == Short.class) {
+				output.writeInt(2);
+				output.writeShort(((Number) value).shortValue());
+			} else if (binding == Double.class) {
+				output.writeInt(8);
+				output.writeDouble(((Number) value).doubleValue());
+			} else if (binding == Float.class) {
+				output.writeInt(4);
+				output.writeFloat(((Number) value).floatValue());
+			} else if (binding == Boolean.class) {
+				output.writeInt(1);
+				output.writeByte(((Boolean) value) ? 1 : 0);
+			} else if (binding == byte[].class) {
+				writeBytes(output, (byte[]) value);
+			} else if (binding == java.sql.Date.class) {
+				// Days since 2000-01-01, in the local time zone as JDBC would send it
+				LocalDate date = new java.sql.Date(((java.util.Date) value).getTime()).toLocalDate();
+				output.writeInt(4);
+				output.writeInt((int) (date.toEpochDay() - POSTGRES_EPOCH_DAY));
+			} else if (binding == Timestamp.class) {
+				// Microseconds since 2000-01-01 00:00
+				LocalDateTime dateTime = new Timestamp(((java.util.Date) value).getTime()).toLocalDateTime();
+				output.writeInt(8);
+				output.writeLong(ChronoUnit.MICROS.between(POSTGRES_EPOCH, dateTime));
+			} else {
+				throw new IOException(String.format("Column %s of type %s cannot be sent with COPY.", name, binding.getName()));
+			}
+		}
+
+		protected void writeBytes(DataOutputStream output, byte[] bytes) throws IOException {
+			output.writeInt(bytes.length);
+			output.write(bytes);
+		}
+	}
+
+	/**
+	 * A geometry column. Values are written as EWKB, with the SRID of the column.
+	 */
+	private static class GeometryColumn extends Column {
+		private static final int EWKB_SRID_FLAG = 0x20000000;
+
+		private final int srid;
+		private final WKBWriter writer;
+
+		public GeometryColumn(String name, int srid, int dimension) {
+			super(name, Geometry.class);
+			this.srid = srid;
+			this.writer = new WKBWriter(Math.max(2, Math.min(3, dimension)), ByteOrderValues.BIG_ENDIAN, false);
+		}
+
+		@Override
+		public void write(DataOutputStream output, Object value) throws IOException {
+			if (value == null) {
+				output.writeInt(-1);
+				return;
+			}
+			byte[] wkb = writer.write((Geometry) value);
+			if (srid <= 0) {
+				writeBytes(output, wkb);
+				return;
+			}
+			// Add the SRID of the column to the EWKB header, rather than setting it on the geometry of the source
+			// Feature: the byte order, then the type with the SRID flag, then the SRID, then the rest of the WKB
+			output.writeInt(wkb.length + 4);
+			output.writeByte(wkb[0]);
+			output.writeInt(ByteBuffer.wrap(wkb, 1, 4).getInt() | EWKB_SRID_FLAG);
+			output.writeInt(srid);
+			output.write(wkb, 5, wkb.length - 5);
+		}
+	}
+
+	/**
+	 * Sends the bytes written to it to a COPY in progress.
+	 */
+	private static class CopyInStream extends OutputStream {
+		private final CopyIn copyIn;
+
+		public CopyInStream(CopyIn copyIn) {
+			this.copyIn = copyIn;
+		}
+
+		@Override
+		public void write(int value) throws IOException {
+			write(new byte[] { (byte) value }, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			try {
+				copyIn.writeToCopy(bytes, offset, length);
+			} catch (SQLException exception) {
+				throw new IOException(exception.getMessage(), exception);
+			}
+		}
+	}
+}
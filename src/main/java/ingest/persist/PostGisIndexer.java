@@ -0,0 +1,151 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.geotools.data.DataStore;
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.JDBCDataStore;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Defers the spatial indexes of a hosted PostGIS table until its Features have been loaded. The PostGIS Data Store
+ * creates a GiST index on each geometry column along with the table; left in place, that index is updated for every
+ * row loaded. Dropping it while the table is still empty, and building it once the load is done, is much cheaper.
+ *
+ * <p>
+ * After the indexes are built, the table is analyzed so the planner has statistics for it, and is optionally
+ * clustered on its spatial index so that Features near one another are stored together.
+ * </p>
+ */
+@Component
+public class PostGisIndexer {
+	@Value("${postgres.load.defer.index}")
+	private boolean deferIndex;
+	@Value("${postgres.load.cluster}")
+	private boolean cluster;
+
+	private static final String GIST_INDEX_QUERY = "SELECT i.relname FROM pg_index x JOIN pg_class i ON i.oid = x.indexrelid "
+			+ "JOIN pg_class t ON t.oid = x.indrelid JOIN pg_namespace n ON n.oid = t.relnamespace JOIN pg_am a ON a.oid = i.relam "
+			+ "WHERE n.nspname = ? AND t.relname = ? AND a.amname = 'gist'";
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(PostGisIndexer.class);
+
+	/**
+	 * Drops the spatial indexes of a newly created, empty table, so they can be built after it is loaded.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store containing the table
+	 * @param tableName
+	 *            The table
+	 * @return True if the indexes were dropped, and must be built with {@link #buildSpatialIndexes}. False if index
+	 *         creation is not deferred, or the Data Store is not PostGIS.
+	 */
+	public boolean dropSpatialIndexes(DataStore dataStore, String tableName) throws IOException {
+		if (!deferIndex || !(dataStore instanceof JDBCDataStore)) {
+			return false;
+		}
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		String schema = getDatabaseSchema(jdbcStore);
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			List<String> indexes = new ArrayList<String>();
+			try (PreparedStatement query = connection.prepareStatement(GIST_INDEX_QUERY)) {
+				query.setString(1, schema);
+				query.setString(2, tableName);
+				try (ResultSet results = query.executeQuery()) {
+					while (results.next()) {
+						indexes.add(results.getString(1));
+					}
+				}
+			}
+			try (Statement statement = connection.createStatement()) {
+				for (String index : indexes) {
+					statement.execute(String.format("DROP INDEX %s.%s", PostGisCopyLoader.quote(schema), PostGisCopyLoader.quote(index)));
+				}
+			}
+			return true;
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not drop the spatial indexes of PostGIS Table %s: %s", tableName,
+					exception.getMessage()), exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Builds a GiST index on each geometry column of a loaded table, clusters the table on the first of them if
+	 * clustering is enabled, and analyzes the table.
+	 *
+	 * @param dataStore
+	 *            The PostGIS Data Store containing the table
+	 * @param tableName
+	 *            The table
+	 */
+	public void buildSpatialIndexes(DataStore dataStore, String tableName) throws IOException {
+		JDBCDataStore jdbcStore = (JDBCDataStore) dataStore;
+		String table = String.format("%s.%s", PostGisCopyLoader.quote(getDatabaseSchema(jdbcStore)), PostGisCopyLoader.quote(tableName));
+		List<String> indexes = new ArrayList<String>();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try (Statement statement = connection.createStatement()) {
+			for (AttributeDescriptor descriptor : jdbcStore.getSchema(tableName).getAttributeDescriptors()) {
+				if (Geometry.class.isAssignableFrom(descriptor.getType().getBinding())) {
+					// Named as the PostGIS Data Store names the index it would have created; renamed after the final table on publish
+					String index = String.format("spatial_%s_%s", tableName, descriptor.getLocalName()).toLowerCase();
+					statement.execute(String.format("CREATE INDEX %s ON %s USING GIST (%s)", PostGisCopyLoader.quote(index), table,
+							PostGisCopyLoader.quote(descriptor.getLocalName())));
+					indexes.add(index);
+				}
+			}
+		} catch (SQLException exception) {
+			jdbcStore.closeSafe(connection);
+			throw new IOException(String.format("Could not build the spatial indexes of PostGIS Table %s: %s", tableName,
+					exception.getMessage()), exception);
+		}
+
+		// The table is usable without these; a failure only costs query performance
+		try (Statement statement = connection.createStatement()) {
+			if (cluster && !indexes.isEmpty()) {
+				statement.execute(String.format("CLUSTER %s USING %s", table, PostGisCopyLoader.quote(indexes.get(0))));
+			}
+			statement.execute(String.format("ANALYZE %s", table));
+		} catch (SQLException exception) {
+			LOGGER.warn(String.format("Could not cluster or analyze PostGIS Table %s: %s", tableName, exception.getMessage()));
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+		LOGGER.info(String.format("Built %s spatial indexes on PostGIS Table %s%s.", indexes.size(), tableName,
+				(cluster && !indexes.isEmpty()) ? ", and clustered it" : ""));
+	}
+
+	private String getDatabaseSchema(JDBCDataStore jdbcStore) {
+		return (jdbcStore.getDatabaseSchema() != null) ? jdbcStore.getDatabaseSchema() : "public";
+	}
+}
@@ -0,0 +1,311 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.apache.commons.dbcp.BasicDataSource;
+import org.geotools.data.DataStore;
+import org.geotools.data.DataStoreFinder;
+import org.geotools.data.Transaction;
+import org.geotools.data.jdbc.datasource.DBCPDataSource;
+import org.geotools.jdbc.JDBCDataStore;
+import org.geotools.jdbc.JDBCDataStoreFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the PostGIS Data Store shared by every Job that reads or writes the Piazza PostGIS database, and by the delete
+ * endpoint. The Data Store, and the pool of connections behind it, live as long as the application does; callers must
+ * not dispose of it.
+ *
+ * <p>
+ * The pool is bounded, and idle connections are kept warm between Jobs up to the minimum size.
+ * </p>
+ */
+@Component
+public class PostGisStore {
+	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.hostname}")
+	private String POSTGRES_HOST;
+	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.port}")
+	private String POSTGRES_PORT;
+	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.database}")
+	private String POSTGRES_DB_NAME;
+	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.username}")
+	private String POSTGRES_USER;
+	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.password}")
+	private String POSTGRES_PASSWORD;
+	@Value("${postgres.schema}")
+	private String POSTGRES_SCHEMA;
+	@Value("${postgres.pool.max.connections}")
+	private int maxConnections;
+	@Value("${postgres.pool.min.connections}")
+	private int minConnections;
+	@Value("${postgres.pool.max.wait.seconds}")
+	private int maxWaitSeconds;
+	@Value("${postgres.pool.max.idle.seconds}")
+	private int maxIdleSeconds;
+
+	private static final String STAGING_PREFIX = "staging_";
+	private static final String STAGING_QUERY = "SELECT tablename FROM pg_tables WHERE schemaname = ? AND tablename LIKE ?";
+	private static final String INDEX_QUERY = "SELECT indexname FROM pg_indexes WHERE schemaname = ? AND tablename = ?";
+
+	private volatile DataStore dataStore;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(PostGisStore.class);
+
+	/**
+	 * Gets the shared PostGIS Data Store, connecting on first use.
+	 *
+	 * @return The PostGIS Data Store
+	 */
+	public DataStore getDataStore() throws IOException {
+		DataStore store = dataStore;
+		if (store == null) {
+			synchronized (this) {
+				if (dataStore == null) {
+					dataStore = createDataStore();
+				}
+				store = dataStore;
+			}
+		}
+		return store;
+	}
+
+	/**
+	 * Closes the pooled connections.
+	 */
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (dataStore != null) {
+			dataStore.dispose();
+			dataStore = null;
+		}
+	}
+
+	/**
+	 * Gets the name of the table a hosted Data Resource is loaded into before it is published.
+	 *
+	 * @param tableName
+	 *            The table name of the Data Resource
+	 * @return The staging table name
+	 */
+	public String getStagingTableName(String tableName) {
+		return STAGING_PREFIX + tableName;
+	}
+
+	/**
+	 * Gets the table name of the Data Resource that a staging table is loaded for.
+	 *
+	 * @param stagingTable
+	 *            The staging table name
+	 * @return The table name of the Data Resource, or null if the table is not a staging table
+	 */
+	public String getTableName(String stagingTable) {
+		return stagingTable.startsWith(STAGING_PREFIX) ? stagingTable.substring(STAGING_PREFIX.length()) : null;
+	}
+
+	/**
+	 * Lists the staging tables in the Piazza schema, including those left behind by failed loads.
+	 *
+	 * @return The staging table names
+	 */
+	public List<String> getStagingTables() throws IOException {
+		JDBCDataStore jdbcStore = getJdbcStore();
+		List<String> tables = new ArrayList<String>();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try (PreparedStatement query = connection.prepareStatement(STAGING_QUERY)) {
+			query.setString(1, POSTGRES_SCHEMA);
+			query.setString(2, STAGING_PREFIX.replace("_", "\\_") + "%");
+			try (ResultSet results = query.executeQuery()) {
+				while (results.next()) {
+					tables.add(results.getString(1));
+				}
+			}
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not list the PostGIS staging Tables: %s", exception.getMessage()), exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+		return tables;
+	}
+
+	/**
+	 * Drops a table from the Piazza schema, if it exists.
+	 *
+	 * @param tableName
+	 *            The table to drop
+	 */
+	public void dropTable(String tableName) throws IOException {
+		JDBCDataStore jdbcStore = getJdbcStore();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute(String.format("DROP TABLE IF EXISTS %s.%s", PostGisCopyLoader.quote(POSTGRES_SCHEMA),
+					PostGisCopyLoader.quote(tableName)));
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not drop PostGIS Table %s: %s", tableName, exception.getMessage()), exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Publishes a loaded staging table under its final name. Renaming a table does not rename its indexes, so the
+	 * spatial indexes named after the staging table are renamed after the final table as well. The renames are made in
+	 * a single transaction, so the table appears under its final name only once it is complete.
+	 *
+	 * @param stagingTable
+	 *            The loaded staging table
+	 * @param tableName
+	 *            The final table name
+	 */
+	public void publishTable(String stagingTable, String tableName) throws IOException {
+		JDBCDataStore jdbcStore = getJdbcStore();
+		String schema = PostGisCopyLoader.quote(POSTGRES_SCHEMA);
+		String stagingPrefix = String.format("spatial_%s_", stagingTable).toLowerCase();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try {
+			connection.setAutoCommit(false);
+			List<String> indexes = new ArrayList<String>();
+			try (PreparedStatement query = connection.prepareStatement(INDEX_QUERY)) {
+				query.setString(1, POSTGRES_SCHEMA);
+				query.setString(2, stagingTable);
+				try (ResultSet results = query.executeQuery()) {
+					while (results.next()) {
+						indexes.add(results.getString(1));
+					}
+				}
+			}
+			try (Statement statement = connection.createStatement()) {
+				statement.execute(String.format("ALTER TABLE %s.%s RENAME TO %s", schema, PostGisCopyLoader.quote(stagingTable),
+						PostGisCopyLoader.quote(tableName)));
+				for (String index : indexes) {
+					if (index.startsWith(stagingPrefix)) {
+						String published = String.format("spatial_%s_", tableName).toLowerCase() + index.substring(stagingPrefix.length());
+						statement.execute(String.format("ALTER INDEX %s.%s RENAME TO %s", schema, PostGisCopyLoader.quote(index),
+								PostGisCopyLoader.quote(published)));
+					}
+				}
+			}
+			connection.commit();
+		} catch (SQLException exception) {
+			try {
+				connection.rollback();
+			} catch (SQLException rollbackException) {
+				LOGGER.warn("Could not roll back publishing PostGIS Table " + stagingTable + ": " + rollbackException.getMessage());
+			}
+			throw new IOException(String.format("Could not publish PostGIS Table %s as %s: %s", stagingTable, tableName,
+					exception.getMessage()), exception);
+		} finally {
+			try {
+				connection.setAutoCommit(true);
+			} catch (SQLException exception) {
+				LOGGER.warn("Could not restore auto-commit on a PostGIS connection: " + exception.getMessage());
+			}
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	/**
+	 * Determines if a table exists in the Piazza schema.
+	 *
+	 * @param tableName
+	 *            The table name
+	 * @return True if the table exists
+	 */
+	public boolean tableExists(String tableName) throws IOException {
+		JDBCDataStore jdbcStore = getJdbcStore();
+		Connection connection = jdbcStore.getConnection(Transaction.AUTO_COMMIT);
+		try (ResultSet tables = connection.getMetaData().getTables(null, POSTGRES_SCHEMA, tableName, new String[] { "TABLE" })) {
+			return tables.next();
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not look up PostGIS Table %s: %s", tableName, exception.getMessage()), exception);
+		} finally {
+			jdbcStore.closeSafe(connection);
+		}
+	}
+
+	private JDBCDataStore getJdbcStore() throws IOException {
+		DataStore store = getDataStore();
+		if (!(store instanceof JDBCDataStore)) {
+			throw new IOException("Tables can only be managed in a JDBC Data Store.");
+		}
+		return (JDBCDataStore) store;
+	}
+
+	private DataStore createDataStore() throws IOException {
+		Map<String, Object> params = new HashMap<String, Object>();
+		params.put("dbtype", "postgis");
+		params.put("host", POSTGRES_HOST);
+		params.put("port", POSTGRES_PORT);
+		params.put("schema", POSTGRES_SCHEMA);
+		params.put("database", POSTGRES_DB_NAME);
+		params.put("user", POSTGRES_USER);
+		params.put("passwd", POSTGRES_PASSWORD);
+		params.put(JDBCDataStoreFactory.MAXCONN.key, Math.max(1, maxConnections));
+		params.put(JDBCDataStoreFactory.MINCONN.key, Math.max(0, Math.min(minConnections, maxConnections)));
+		params.put(JDBCDataStoreFactory.MAXWAIT.key, maxWaitSeconds);
+		params.put(JDBCDataStoreFactory.VALIDATECONN.key, Boolean.TRUE);
+		params.put(JDBCDataStoreFactory.MAXIDLE.key, maxIdleSeconds);
+		params.put(JDBCDataStoreFactory.EVICTOR_RUN_PERIODICITY.key, maxIdleSeconds);
+
+		DataStore store = DataStoreFinder.getDataStore(params);
+		if (store == null) {
+			throw new IOException(String.format("Could not create the PostGIS Data Store for %s:%s/%s", POSTGRES_HOST, POSTGRES_PORT,
+					POSTGRES_DB_NAME));
+		}
+		LOGGER.info(String.format("Created the PostGIS Data Store for %s:%s/%s with up to %s connections.", POSTGRES_HOST,
+				POSTGRES_PORT, POSTGRES_DB_NAME, maxConnections));
+		return store;
+	}
+
+	/**
+	 * Gets the connection pool utilization.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("maxConnections", maxConnections);
+		stats.put("connected", dataStore != null);
+		DataStore store = dataStore;
+		if (store instanceof JDBCDataStore) {
+			DataSource dataSource = ((JDBCDataStore) store).getDataSource();
+			if (dataSource instanceof DBCPDataSource) {
+				dataSource = ((DBCPDataSource) dataSource).getWrappedDataSource();
+			}
+			if (dataSource instanceof BasicDataSource) {
+				stats.put("activeConnections", ((BasicDataSource) dataSource).getNumActive());
+				stats.put("idleConnections", ((BasicDataSource) dataSource).getNumIdle());
+			}
+		}
+		return stats;
+	}
+}
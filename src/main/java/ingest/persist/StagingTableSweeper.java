@@ -0,0 +1,129 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.persist;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.geotools.data.DataStore;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Removes the staging tables and load checkpoints left behind by loads that failed and were never retried. A
+ * checkpointed load keeps both so that a retry of the Job can resume it, but a retry may never arrive, or may be given
+ * a new Data Id.
+ *
+ * <p>
+ * A load is abandoned once it has committed no chunk for the time to live. Staging tables without a checkpoint have no
+ * recorded age, so they are aged from the first sweep that found them.
+ * </p>
+ */
+@Component
+public class StagingTableSweeper {
+	@Value("${postgres.load.staging.ttl.hours}")
+	private long ttlHours;
+	@Value("${postgres.load.staging.sweep.minutes}")
+	private long sweepMinutes;
+
+	@Autowired
+	private PostGisStore postGis;
+	@Autowired
+	private LoadCheckpointStore checkpointStore;
+
+	private final Map<String, Long> firstSeen = new ConcurrentHashMap<String, Long>();
+	private ScheduledExecutorService sweepExecutor;
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(StagingTableSweeper.class);
+
+	/**
+	 * Sweeps on startup, and then periodically.
+	 */
+	@PostConstruct
+	public void initialize() {
+		sweepExecutor = Executors.newSingleThreadScheduledExecutor(new CustomizableThreadFactory("ingest-staging-sweeper-"));
+		sweepExecutor.scheduleWithFixedDelay(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					sweep(System.currentTimeMillis());
+				} catch (Exception exception) {
+					LOGGER.warn(String.format("Could not sweep abandoned PostGIS staging Tables: %s", exception.getMessage()), exception);
+				}
+			}
+		}, 0, sweepMinutes, TimeUnit.MINUTES);
+	}
+
+	/**
+	 * Stops sweeping.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		if (sweepExecutor != null) {
+			sweepExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Drops the staging tables, and clears the checkpoints, of loads that have been abandoned.
+	 *
+	 * @param now
+	 *            The current time in milliseconds, used to age staging tables without a checkpoint
+	 */
+	public void sweep(long now) throws IOException {
+		long ttlMillis = TimeUnit.HOURS.toMillis(ttlHours);
+		DataStore dataStore = postGis.getDataStore();
+		Map<String, Long> idleTimes = checkpointStore.getIdleTimes(dataStore);
+		Set<String> stagingTables = new HashSet<String>(postGis.getStagingTables());
+		firstSeen.keySet().retainAll(stagingTables);
+
+		for (String stagingTable : stagingTables) {
+			String dataId = postGis.getTableName(stagingTable);
+			Long idleMillis = idleTimes.remove(dataId);
+			if (idleMillis == null) {
+				Long seen = firstSeen.putIfAbsent(stagingTable, now);
+				idleMillis = (seen != null) ? now - seen : 0;
+			}
+			if (idleMillis > ttlMillis) {
+				LOGGER.info(String.format("Dropping abandoned PostGIS staging Table %s.", stagingTable));
+				postGis.dropTable(stagingTable);
+				checkpointStore.clear(dataStore, dataId);
+				firstSeen.remove(stagingTable);
+			}
+		}
+
+		// Checkpoints whose staging table is gone
+		for (Map.Entry<String, Long> idleTime : idleTimes.entrySet()) {
+			if (idleTime.getValue() > ttlMillis) {
+				LOGGER.info(String.format("Clearing the abandoned load checkpoint of Data %s.", idleTime.getKey()));
+				checkpointStore.clear(dataStore, idleTime.getKey());
+			}
+		}
+	}
+}
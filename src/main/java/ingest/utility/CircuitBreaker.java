@@ -0,0 +1,131 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Circuit breaker for calls to a remote service. After a number of consecutive failures the circuit opens, and calls
+ * are refused without being attempted. Once the open period has elapsed, a single trial call is allowed: if it
+ * succeeds the circuit closes, and if it fails the circuit opens again.
+ */
+public class CircuitBreaker {
+	/**
+	 * The states of the circuit.
+	 */
+	public enum State {
+		CLOSED, OPEN, HALF_OPEN
+	}
+
+	private final String name;
+	private final int failureThreshold;
+	private final long openMillis;
+	private State state = State.CLOSED;
+	private int consecutiveFailures = 0;
+	private long openedTime = 0;
+	private boolean trialInFlight = false;
+	private long openedCount = 0;
+	private long refusedCount = 0;
+
+	/**
+	 * @param name
+	 *            The name of the remote service
+	 * @param failureThreshold
+	 *            The number of consecutive failures that opens the circuit
+	 * @param openMillis
+	 *            How long the circuit stays open before a trial call is allowed
+	 */
+	public CircuitBreaker(String name, int failureThreshold, long openMillis) {
+		this.name = name;
+		this.failureThreshold = Math.max(1, failureThreshold);
+		this.openMillis = openMillis;
+	}
+
+	/**
+	 * Determines if a call may be attempted. A caller that is allowed must report the outcome through
+	 * {@link #recordSuccess()} or {@link #recordFailure()}, or, if the call yields no outcome, through
+	 * {@link #releaseTrial()}.
+	 *
+	 * @return True if the call may be attempted, false if it should fail immediately
+	 */
+	public synchronized boolean allowRequest() {
+		if ((state == State.OPEN) && (System.currentTimeMillis() - openedTime >= openMillis)) {
+			state = State.HALF_OPEN;
+			trialInFlight = false;
+		}
+		if ((state == State.OPEN) || ((state == State.HALF_OPEN) && trialInFlight)) {
+			refusedCount++;
+			return false;
+		}
+		if (state == State.HALF_OPEN) {
+			trialInFlight = true;
+		}
+		return true;
+	}
+
+	/**
+	 * Records a successful call, closing the circuit.
+	 */
+	public synchronized void recordSuccess() {
+		consecutiveFailures = 0;
+		trialInFlight = false;
+		state = State.CLOSED;
+	}
+
+	/**
+	 * Records a failed call, opening the circuit if the threshold is reached or the trial call failed.
+	 */
+	public synchronized void recordFailure() {
+		consecutiveFailures++;
+		trialInFlight = false;
+		if ((state == State.HALF_OPEN) || ((state == State.CLOSED) && (consecutiveFailures >= failureThreshold))) {
+			state = State.OPEN;
+			openedTime = System.currentTimeMillis();
+			openedCount++;
+		}
+	}
+
+	/**
+	 * Records that an allowed call was not completed, such as when it was interrupted, so says nothing about the remote
+	 * service. If it was the trial call of a half-open circuit, another trial is allowed.
+	 */
+	public synchronized void releaseTrial() {
+		trialInFlight = false;
+	}
+
+	public synchronized State getState() {
+		return state;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the state of the circuit.
+	 *
+	 * @return Map of circuit statistics
+	 */
+	public synchronized Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("state", state.toString());
+		stats.put("consecutiveFailures", consecutiveFailures);
+		stats.put("timesOpened", openedCount);
+		stats.put("refused", refusedCount);
+		return stats;
+	}
+}
@@ -0,0 +1,215 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.DeferredFileOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.AmazonClientException;
+
+import exception.InvalidInputException;
+import model.data.DataResource;
+import model.data.FileRepresentation;
+import model.data.location.FileLocation;
+
+/**
+ * Holds a local copy of the file of each Data Resource being ingested, so that the file is only downloaded from its
+ * source once. The size probe, the copy to the Piazza S3 bucket, and the inspectors all read from the spool.
+ *
+ * <p>
+ * Small files are spooled in memory; anything larger than the memory threshold is spooled to a file in the temporary
+ * data directory. A spool is held until it is released, once the Job has completed.
+ * </p>
+ */
+@Component
+public class ContentSpool {
+	@Value("${data.temp.path}")
+	private String DATA_TEMP_PATH;
+	@Value("${spool.memory.threshold.bytes}")
+	private int memoryThresholdBytes;
+
+	@Autowired
+	private S3ClientManager s3ClientManager;
+
+	private final Map<String, SpooledContent> spools = new ConcurrentHashMap<String, SpooledContent>();
+	private final AtomicLong downloadCount = new AtomicLong(0);
+	private final AtomicLong downloadedBytes = new AtomicLong(0);
+	private final AtomicLong spooledReads = new AtomicLong(0);
+
+	private final static Logger LOGGER = LoggerFactory.getLogger(ContentSpool.class);
+
+	/**
+	 * Downloads the file of the Data Resource from its source into the spool. Does nothing if it is already spooled.
+	 *
+	 * @param dataResource
+	 *            The Data Resource with a File Representation
+	 * @return The size of the file, in bytes
+	 */
+	public long spool(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
+		SpooledContent existing = spools.get(dataResource.getDataId());
+		if (existing != null) {
+			return existing.size;
+		}
+
+		File spoolFile = new File(String.format("%s%s%s.%s", DATA_TEMP_PATH, File.separator, dataResource.getDataId(), "spool"));
+		DeferredFileOutputStream outputStream = new DeferredFileOutputStream(memoryThresholdBytes, spoolFile);
+		try (InputStream inputStream = openSource(dataResource)) {
+			if (spoolFile.getParentFile() != null) {
+				spoolFile.getParentFile().mkdirs();
+			}
+			IOUtils.copyLarge(inputStream, outputStream);
+		} catch (AmazonClientException | InvalidInputException | IOException exception) {
+			outputStream.close();
+			Files.deleteIfExists(spoolFile.toPath());
+			throw exception;
+		}
+		outputStream.close();
+
+		SpooledContent content = outputStream.isInMemory() ? new SpooledContent(outputStream.getData(), null)
+				: new SpooledContent(null, spoolFile);
+		spools.put(dataResource.getDataId(), content);
+		downloadCount.incrementAndGet();
+		downloadedBytes.addAndGet(content.size);
+		LOGGER.info(String.format("Spooled %s bytes of Data %s %s.", content.size, dataResource.getDataId(),
+				outputStream.isInMemory() ? "in memory" : "to " + spoolFile.getPath()));
+		return content.size;
+	}
+
+	/**
+	 * Opens the file of the Data Resource. Reads from the spool if it has been spooled; otherwise reads from its
+	 * source.
+	 *
+	 * @param dataResource
+	 *            The Data Resource with a File Representation
+	 * @return Stream of the file contents. The caller must close it.
+	 */
+	public InputStream openStream(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
+		SpooledContent content = spools.get(dataResource.getDataId());
+		if (content == null) {
+			return openSource(dataResource);
+		}
+		spooledReads.incrementAndGet();
+		if (content.data != null) {
+			return new ByteArrayInputStream(content.data);
+		}
+		return new BufferedInputStream(Files.newInputStream(content.file.toPath()));
+	}
+
+	/**
+	 * Gets the size of the spooled file of the Data Resource.
+	 *
+	 * @param dataResource
+	 *            The Data Resource
+	 * @return The size of the file in bytes, or -1 if it has not been spooled
+	 */
+	public long getSpooledSize(DataResource dataResource) {
+		SpooledContent content = spools.get(dataResource.getDataId());
+		return (content != null) ? content.size : -1;
+	}
+
+	/**
+	 * Gets the file the Data Resource was spooled to.
+	 *
+	 * @param dataResource
+	 *            The Data Resource
+	 * @return The spool file, or null if the Data Resource was not spooled, or was spooled in memory
+	 */
+	public File getSpoolFile(DataResource dataResource) {
+		SpooledContent content = spools.get(dataResource.getDataId());
+		return (content != null) ? content.file : null;
+	}
+
+	/**
+	 * Releases the spool of the Data Resource, deleting its spool file if it has one.
+	 *
+	 * @param dataId
+	 *            The Id of the Data Resource
+	 */
+	public void release(String dataId) {
+		if (dataId == null) {
+			return;
+		}
+		SpooledContent content = spools.remove(dataId);
+		if ((content != null) && (content.file != null)) {
+			try {
+				Files.deleteIfExists(content.file.toPath());
+			} catch (IOException exception) {
+				LOGGER.warn(String.format("Could not delete spool file %s: %s", content.file.getPath(), exception.getMessage()));
+			}
+		}
+	}
+
+	/**
+	 * Gets the spool statistics.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		long memoryBytes = 0;
+		long diskBytes = 0;
+		for (SpooledContent content : spools.values()) {
+			if (content.data != null) {
+				memoryBytes += content.size;
+			} else {
+				diskBytes += content.size;
+			}
+		}
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("spooled", spools.size());
+		stats.put("memoryBytes", memoryBytes);
+		stats.put("diskBytes", diskBytes);
+		stats.put("downloads", downloadCount.get());
+		stats.put("downloadedBytes", downloadedBytes.get());
+		stats.put("spooledReads", spooledReads.get());
+		return stats;
+	}
+
+	private InputStream openSource(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
+		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
+		return s3ClientManager.openStream(fileLocation);
+	}
+
+	/**
+	 * The spooled file contents; either in memory, or on disk.
+	 */
+	private static class SpooledContent {
+		private final byte[] data;
+		private final File file;
+		private final long size;
+
+		public SpooledContent(byte[] data, File file) {
+			this.data = data;
+			this.file = file;
+			this.size = (data != null) ? data.length : file.length();
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounds the number of Ingest Threads that may be in a CPU-heavy section, such as raster decoding or geometry parsing,
+ * at the same time. Ingest Threads otherwise spend most of their time blocked on I/O, so many more of them can run than
+ * there are cores; only these sections compete for the CPU.
+ * 
+ * <p>
+ * Usage:
+ * 
+ * <pre>
+ * cpuBoundLimiter.acquire();
+ * try {
+ * 	// CPU-heavy work
+ * } finally {
+ * 	cpuBoundLimiter.release();
+ * }
+ * </pre>
+ * </p>
+ */
+@Component
+public class CpuBoundLimiter {
+	@Value("${cpu.bound.permits}")
+	private int cpuBoundPermits;
+
+	private Semaphore permits;
+
+	/**
+	 * Creates the permits. If not configured, one permit is available per processor.
+	 */
+	@PostConstruct
+	public void initialize() {
+		if (cpuBoundPermits <= 0) {
+			cpuBoundPermits = Runtime.getRuntime().availableProcessors();
+		}
+		permits = new Semaphore(cpuBoundPermits, true);
+	}
+
+	/**
+	 * Waits for, and acquires, a permit to enter a CPU-heavy section.
+	 * 
+	 * @throws InterruptedIOException
+	 *             If the Thread is interrupted, such as by a Job being aborted, while waiting
+	 */
+	public void acquire() throws InterruptedIOException {
+		try {
+			permits.acquire();
+		} catch (InterruptedException exception) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to enter a CPU-bound section.");
+		}
+	}
+
+	/**
+	 * Releases a permit acquired by {@link #acquire()}.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Gets the utilization of the CPU-bound permits.
+	 * 
+	 * @return Map of permit statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("permits", cpuBoundPermits);
+		stats.put("available", permits.availablePermits());
+		stats.put("waiting", permits.getQueueLength());
+		return stats;
+	}
+}
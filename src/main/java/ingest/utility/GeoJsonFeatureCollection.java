@@ -0,0 +1,550 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.collection.BaseSimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.geotools.geometry.jts.ReferencedEnvelope;
+import org.opengis.feature.Property;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.opengis.feature.type.AttributeDescriptor;
+import org.opengis.feature.type.GeometryDescriptor;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A GeoJSON Feature Collection that is parsed as it is read, rather than held in memory. Each iteration opens the
+ * source again and streams its Features, so the collection can be read as many times as needed with memory that does
+ * not depend on the size of the file.
+ *
+ * <p>
+ * The bounds and size of the collection are accumulated by whichever iteration first reads it to the end, such as the
+ * load into PostGIS, so they cost no extra pass unless nothing has read the whole collection yet.
+ * </p>
+ *
+ * <p>
+ * The schema is inferred from the leading Features only, so later Features may not fit it. Their properties that are
+ * not in the schema are dropped, and their values are converted to the type of the schema where they can be, such as
+ * to text for a text property. Values that cannot be converted are dropped. The completed iteration counts each of
+ * these, so that the loss can be reported.
+ * </p>
+ * 
+ * <p>
+ * When created over a local file with a parse pool, the "features" array is split into byte ranges of whole Features,
+ * which are parsed in parallel, and returned in file order.
+ * </p>
+ */
+public class GeoJsonFeatureCollection extends BaseSimpleFeatureCollection {
+	private static final byte[] RANGE_PREFIX = "{\"type\":\"FeatureCollection\",\"features\":[".getBytes(StandardCharsets.UTF_8);
+	private static final byte[] RANGE_SUFFIX = "]}".getBytes(StandardCharsets.UTF_8);
+	private static final int SCAN_BUFFER_BYTES = 64 * 1024;
+
+	private final Source source;
+	private final File file;
+	private final ForkJoinPool parsePool;
+	private final int rangeBytes;
+	private ReferencedEnvelope completedBounds;
+	private int completedSize = -1;
+	private long droppedProperties = 0;
+	private long convertedValues = 0;
+	private long droppedValues = 0;
+
+	/**
+	 * Opens the GeoJSON to stream Features from.
+	 */
+	public interface Source {
+		/**
+		 * @return A new stream of the GeoJSON. The caller closes it.
+		 */
+		InputStream open() throws IOException;
+	}
+
+	/**
+	 * Creates the collection. Features read from the source are retyped to the schema; properties that are not in the
+	 * schema, and values that cannot be converted to its types, are dropped.
+	 *
+	 * @param schema
+	 *            The schema of the Features, such as from {@link #inferSchema}
+	 * @param source
+	 *            Opens the GeoJSON
+	 */
+	public GeoJsonFeatureCollection(SimpleFeatureType schema, Source source) {
+		this(schema, source, null, null, 0);
+	}
+
+	/**
+	 * Creates a collection over a local GeoJSON file that is parsed in parallel.
+	 *
+	 * @param schema
+	 *            The schema of the Features, such as from {@link #inferSchema}
+	 * @param source
+	 *            Opens the GeoJSON
+	 * @param file
+	 *            The GeoJSON file, to read ranges of
+	 * @param parsePool
+	 *            The pool to parse ranges on
+	 * @param rangeBytes
+	 *            The size of the ranges to parse
+	 */
+	public GeoJsonFeatureCollection(SimpleFeatureType schema, Source source, File file, ForkJoinPool parsePool, int rangeBytes) {
+		super(schema);
+		this.source = source;
+		this.file = file;
+		this.parsePool = parsePool;
+		this.rangeBytes = rangeBytes;
+	}
+
+	/**
+	 * Infers the schema of a GeoJSON Feature Collection from its leading Features. A property with values of differing
+	 * types takes the widest of them: integers widen to Long, mixed numbers to Double, and anything else to String.
+	 *
+	 * @param source
+	 *            Opens the GeoJSON
+	 * @param typeName
+	 *            The name of the Feature Type
+	 * @param sampleSize
+	 *            The number of leading Features to read
+	 * @return The inferred schema
+	 */
+	public static SimpleFeatureType inferSchema(Source source, String typeName, int sampleSize) throws IOException {
+		try (InputStream inputStream = source.open()) {
+			FeatureIterator<SimpleFeature> iterator = new FeatureJSON().streamFeatureCollection(inputStream);
+			try {
+				return inferSchema(iterator, typeName, sampleSize);
+			} finally {
+				iterator.close();
+			}
+		}
+	}
+
+	/**
+	 * Infers the schema of Features from the leading Features of an iterator.
+	 *
+	 * @param iterator
+	 *            The Features, as parsed
+	 * @param typeName
+	 *            The name of the Feature Type
+	 * @param sampleSize
+	 *            The number of leading Features to read
+	 * @return The inferred schema
+	 */
+	protected static SimpleFeatureType inferSchema(FeatureIterator<SimpleFeature> iterator, String typeName, int sampleSize) {
+		String geometryName = "geometry";
+		Class<?> geometryBinding = null;
+		CoordinateReferenceSystem crs = null;
+		Map<String, Class<?>> attributes = new LinkedHashMap<String, Class<?>>();
+
+		for (int count = 0; (count < Math.max(1, sampleSize)) && iterator.hasNext(); count++) {
+			SimpleFeature feature = iterator.next();
+			GeometryDescriptor geometryDescriptor = feature.getFeatureType().getGeometryDescriptor();
+			if (geometryDescriptor != null) {
+				geometryName = geometryDescriptor.getLocalName();
+				if (crs == null) {
+					crs = geometryDescriptor.getCoordinateReferenceSystem();
+				}
+			}
+			for (Property property : feature.getProperties()) {
+				Object value = property.getValue();
+				String name = property.getName().getLocalPart();
+				if (value instanceof Geometry) {
+					geometryBinding = widen(geometryBinding, value.getClass());
+				} else if ((geometryDescriptor == null) || !name.equals(geometryDescriptor.getLocalName())) {
+					attributes.put(name, (value != null) ? widen(attributes.get(name), value.getClass()) : attributes.get(name));
+				}
+			}
+		}
+
+		SimpleFeatureTypeBuilder builder = new SimpleFeatureTypeBuilder();
+		builder.setName(typeName);
+		builder.setCRS(crs);
+		builder.add(geometryName, (geometryBinding != null) ? geometryBinding : Geometry.class);
+		builder.setDefaultGeometry(geometryName);
+		for (Map.Entry<String, Class<?>> attribute : attributes.entrySet()) {
+			// Properties that were null throughout the sample are kept as text
+			builder.add(attribute.getKey(), (attribute.getValue() != null) ? attribute.getValue() : String.class);
+		}
+		return builder.buildFeatureType();
+	}
+
+	/**
+	 * Gets the binding that can hold values of both bindings.
+	 */
+	private static Class<?> widen(Class<?> binding, Class<?> valueBinding) {
+		if ((binding == null) || binding.equals(valueBinding)) {
+			return valueBinding;
+		}
+		if (Geometry.class.isAssignableFrom(binding) && Geometry.class.isAssignableFrom(valueBinding)) {
+			return Geometry.class;
+		}
+		if (Number.class.isAssignableFrom(binding) && Number.class.isAssignableFrom(valueBinding)) {
+			return (isIntegral(binding) && isIntegral(valueBinding)) ? Long.class : Double.class;
+		}
+		return String.class;
+	}
+
+	private static boolean isIntegral(Class<?> binding) {
+		return (binding == Integer.class) || (binding == Long.class) || (binding == Short.class);
+	}
+
+	/**
+	 * @return The source of the GeoJSON
+	 */
+	protected Source getSource() {
+		return source;
+	}
+
+	@Override
+	public SimpleFeatureIterator features() {
+		try {
+			if ((file != null) && (parsePool != null)) {
+				return new ParallelIterator();
+			}
+			return new StreamingIterator(source.open());
+		} catch (IOException exception) {
+			throw new RuntimeException(String.format("Could not open the GeoJSON: %s", exception.getMessage()), exception);
+		}
+	}
+
+	@Override
+	public ReferencedEnvelope getBounds() {
+		scan();
+		return completedBounds;
+	}
+
+	@Override
+	public int size() {
+		scan();
+		return completedSize;
+	}
+
+	/**
+	 * Reads the collection to the end if no iteration has yet, to accumulate its bounds and size.
+	 */
+	private void scan() {
+		if (getCompletedSize() < 0) {
+			SimpleFeatureIterator iterator = features();
+			try {
+				while (iterator.hasNext()) {
+					iterator.next();
+				}
+			} finally {
+				iterator.close();
+			}
+		}
+	}
+
+	private synchronized int getCompletedSize() {
+		return completedSize;
+	}
+
+	private synchronized void complete(AccumulatingIterator iterator) {
+		if (completedSize < 0) {
+			completedBounds = iterator.bounds;
+			completedSize = iterator.count;
+			droppedProperties = iterator.droppedProperties.get();
+			convertedValues = iterator.convertedValues.get();
+			droppedValues = iterator.droppedValues.get();
+		}
+	}
+
+	/**
+	 * @return The number of non-null properties of the Features that were dropped because they are not in the schema,
+	 *         as counted by the first iteration that read the whole collection
+	 */
+	public synchronized long getDroppedProperties() {
+		return droppedProperties;
+	}
+
+	/**
+	 * @return The number of values that were converted to text because they did not match the type of the schema, as
+	 *         counted by the first iteration that read the whole collection
+	 */
+	public synchronized long getConvertedValues() {
+		return convertedValues;
+	}
+
+	/**
+	 * @return The number of values that were dropped because they could not be converted to the type of the schema,
+	 *         as counted by the first iteration that read the whole collection
+	 */
+	public synchronized long getDroppedValues() {
+		return droppedValues;
+	}
+
+	/**
+	 * Reads the Features of one read of the source, retyping them to the schema, and accumulating their bounds. Features
+	 * may be retyped on other threads, so the counts of what did not fit the schema are atomic.
+	 */
+	protected abstract class AccumulatingIterator implements SimpleFeatureIterator {
+		private final ReferencedEnvelope bounds = new ReferencedEnvelope(getSchema().getCoordinateReferenceSystem());
+		private int count = 0;
+		private final AtomicLong droppedProperties = new AtomicLong();
+		private final AtomicLong convertedValues = new AtomicLong();
+		private final AtomicLong droppedValues = new AtomicLong();
+
+		/**
+		 * @return True if there is another Feature
+		 */
+		protected abstract boolean hasNextFeature();
+
+		/**
+		 * @return The next Feature, retyped to the schema
+		 */
+		protected abstract SimpleFeature nextFeature();
+
+		@Override
+		public boolean hasNext() {
+			boolean hasNext = hasNextFeature();
+			if (!hasNext) {
+				complete(this);
+			}
+			return hasNext;
+		}
+
+		@Override
+		public SimpleFeature next() throws NoSuchElementException {
+			SimpleFeature feature = nextFeature();
+			Object geometry = feature.getDefaultGeometry();
+			if (geometry instanceof Geometry) {
+				bounds.expandToInclude(((Geometry) geometry).getEnvelopeInternal());
+			}
+			count++;
+			return feature;
+		}
+
+		/**
+		 * Retypes a parsed Feature to the schema. Unlike {@link SimpleFeatureBuilder#retype}, which keeps a value that
+		 * cannot be converted as it is, the values are always of the types of the schema, and what does not fit is
+		 * counted.
+		 *
+		 * @param feature
+		 *            The parsed Feature
+		 * @param builder
+		 *            A builder of the schema, used by one thread at a time
+		 * @return The Feature of the schema
+		 */
+		protected SimpleFeature retype(SimpleFeature feature, SimpleFeatureBuilder builder) {
+			for (Property property : feature.getProperties()) {
+				Object value = property.getValue();
+				if (value == null) {
+					continue;
+				}
+				String name = property.getName().getLocalPart();
+				AttributeDescriptor descriptor = getSchema().getDescriptor(name);
+				if (descriptor == null) {
+					droppedProperties.incrementAndGet();
+					continue;
+				}
+				Class<?> binding = descriptor.getType().getBinding();
+				if (binding.isInstance(value)) {
+					builder.set(name, value);
+				} else if ((binding == Double.class) && (value instanceof Number)) {
+					builder.set(name, ((Number) value).doubleValue());
+				} else if ((binding == Long.class) && isIntegral(value.getClass())) {
+					builder.set(name, ((Number) value).longValue());
+				} else if (binding == String.class) {
+					// Widened as the schema inference widens mixed types
+					builder.set(name, value.toString());
+					convertedValues.incrementAndGet();
+				} else {
+					droppedValues.incrementAndGet();
+				}
+			}
+			return builder.buildFeature(feature.getID());
+		}
+	}
+
+	/**
+	 * Parses the Features of the source in order, on the reading thread.
+	 */
+	private class StreamingIterator extends AccumulatingIterator {
+		private final InputStream inputStream;
+		private final FeatureIterator<SimpleFeature> parsed;
+		private final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(getSchema());
+
+		public StreamingIterator(InputStream inputStream) throws IOException {
+			this.inputStream = inputStream;
+			try {
+				this.parsed = new FeatureJSON().streamFeatureCollection(inputStream);
+			} catch (IOException | RuntimeException exception) {
+				inputStream.close();
+				throw exception;
+			}
+		}
+
+		@Override
+		protected boolean hasNextFeature() {
+			return parsed.hasNext();
+		}
+
+		@Override
+		protected SimpleFeature nextFeature() {
+			return retype(parsed.next(), builder);
+		}
+
+		@Override
+		public void close() {
+			parsed.close();
+			try {
+				inputStream.close();
+			} catch (IOException exception) {
+				// Only reading
+			}
+		}
+	}
+
+	/**
+	 * Splits the file into ranges of whole Features as it is scanned, and parses the ranges on the parse pool. The
+	 * parsed ranges are returned in file order, so the Features are in the same order as a sequential read. A bounded
+	 * number of ranges are parsed ahead of the reader.
+	 */
+	private class ParallelIterator extends AccumulatingIterator {
+		private final InputStream scanStream;
+		private final FileChannel channel;
+		private final GeoJsonRangeScanner scanner;
+		private final Deque<ForkJoinTask<List<SimpleFeature>>> pending = new ArrayDeque<ForkJoinTask<List<SimpleFeature>>>();
+		private Iterator<SimpleFeature> current = Collections.<SimpleFeature> emptyList().iterator();
+
+		public ParallelIterator() throws IOException {
+			channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+			try {
+				scanStream = new BufferedInputStream(Files.newInputStream(file.toPath()), SCAN_BUFFER_BYTES);
+			} catch (IOException exception) {
+				channel.close();
+				throw exception;
+			}
+			scanner = new GeoJsonRangeScanner(scanStream);
+		}
+
+		@Override
+		protected boolean hasNextFeature() {
+			while (!current.hasNext()) {
+				fill();
+				if (pending.isEmpty()) {
+					return false;
+				}
+				current = pending.poll().join().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		protected SimpleFeature nextFeature() {
+			if (!hasNextFeature()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+
+		/**
+		 * Scans ahead, and submits ranges to parse, until enough are in flight to keep the pool busy.
+		 */
+		private void fill() {
+			try {
+				while (pending.size() < (parsePool.getParallelism() * 2)) {
+					final long[] range = scanner.nextRange(rangeBytes);
+					if (range == null) {
+						break;
+					}
+					pending.add(parsePool.submit(new Callable<List<SimpleFeature>>() {
+						@Override
+						public List<SimpleFeature> call() throws IOException {
+							return parseRange(channel, range[0], range[1], ParallelIterator.this);
+						}
+					}));
+				}
+			} catch (IOException exception) {
+				throw new RuntimeException(String.format("Could not scan the GeoJSON: %s", exception.getMessage()), exception);
+			}
+		}
+
+		@Override
+		public void close() {
+			for (ForkJoinTask<List<SimpleFeature>> task : pending) {
+				task.cancel(false);
+			}
+			pending.clear();
+			try {
+				scanStream.close();
+				channel.close();
+			} catch (IOException exception) {
+				// Only reading
+			}
+		}
+	}
+
+	/**
+	 * Parses a range of whole Features of the file, as the members of a Feature Collection of their own, and retypes
+	 * them with the iterator that reads them.
+	 */
+	private List<SimpleFeature> parseRange(FileChannel channel, long start, long end, AccumulatingIterator iterator)
+			throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate((int) (end - start));
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, start + buffer.position()) < 0) {
+				throw new EOFException(String.format("The GeoJSON ended within the Features at %s.", start));
+			}
+		}
+		InputStream rangeStream = new SequenceInputStream(Collections.enumeration(Arrays.<InputStream> asList(
+				new ByteArrayInputStream(RANGE_PREFIX), new ByteArrayInputStream(buffer.array()), new ByteArrayInputStream(RANGE_SUFFIX))));
+
+		// Each range uses its own builder, as builders are not thread-safe
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(getSchema());
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		FeatureIterator<SimpleFeature> parsed = new FeatureJSON().streamFeatureCollection(rangeStream);
+		try {
+			while (parsed.hasNext()) {
+				features.add(iterator.retype(parsed.next(), builder));
+			}
+		} finally {
+			parsed.close();
+		}
+		return features;
+	}
+}
@@ -0,0 +1,138 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Splits the "features" array of a GeoJSON Feature Collection into byte ranges that each hold whole Features, without
+ * parsing them. Only brackets, braces, and strings are tracked, so the scan runs far faster than a JSON parse, and the
+ * ranges can then be parsed independently.
+ */
+public class GeoJsonRangeScanner {
+	private static final String FEATURES_KEY = "features";
+
+	private final InputStream inputStream;
+	private long position = 0;
+	private int depth = 0;
+	private boolean inString = false;
+	private boolean escaped = false;
+	private final StringBuilder lastKey = new StringBuilder();
+	private boolean inFeatures = false;
+	private boolean done = false;
+	private long featureStart = -1;
+	private long featureEnd = -1;
+
+	/**
+	 * @param inputStream
+	 *            The GeoJSON, read from its first byte. Should be buffered.
+	 */
+	public GeoJsonRangeScanner(InputStream inputStream) {
+		this.inputStream = inputStream;
+	}
+
+	/**
+	 * Gets the next range of whole Features.
+	 *
+	 * @param targetBytes
+	 *            The size at which to end the range. The range ends at the first Feature boundary past this size.
+	 * @return The start offset, inclusive, and end offset, exclusive, of the range; or null if there are no more
+	 *         Features
+	 */
+	public long[] nextRange(int targetBytes) throws IOException {
+		long rangeStart = -1;
+		long rangeEnd = -1;
+		while (nextFeature()) {
+			if (rangeStart < 0) {
+				rangeStart = featureStart;
+			}
+			rangeEnd = featureEnd;
+			if ((rangeEnd - rangeStart) >= targetBytes) {
+				break;
+			}
+		}
+		return (rangeStart >= 0) ? new long[] { rangeStart, rangeEnd } : null;
+	}
+
+	/**
+	 * Reads to the end of the next Feature in the "features" array.
+	 *
+	 * @return True if a Feature was found; false if the array, or the stream, has ended
+	 */
+	private boolean nextFeature() throws IOException {
+		while (!done) {
+			int value = inputStream.read();
+			if (value < 0) {
+				done = true;
+				break;
+			}
+			position++;
+
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (value == '\\') {
+					escaped = true;
+				} else if (value == '"') {
+					inString = false;
+				} else if ((depth == 1) && (lastKey.length() <= FEATURES_KEY.length())) {
+					lastKey.append((char) value);
+				}
+				continue;
+			}
+
+			switch (value) {
+			case '"':
+				inString = true;
+				if (depth == 1) {
+					// Keys of the root object; the string just before an array at this depth is its key
+					lastKey.setLength(0);
+				}
+				break;
+			case '[':
+				if ((depth == 1) && FEATURES_KEY.contentEquals(lastKey)) {
+					inFeatures = true;
+				}
+				depth++;
+				break;
+			case '{':
+				if (inFeatures && (depth == 2)) {
+					featureStart = position - 1;
+				}
+				depth++;
+				break;
+			case '}':
+				depth--;
+				if (inFeatures && (depth == 2)) {
+					featureEnd = position;
+					return true;
+				}
+				break;
+			case ']':
+				depth--;
+				if (inFeatures && (depth == 1)) {
+					inFeatures = false;
+					done = true;
+				}
+				break;
+			default:
+				break;
+			}
+		}
+		return false;
+	}
+}
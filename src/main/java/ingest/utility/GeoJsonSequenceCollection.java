@@ -0,0 +1,528 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.geotools.feature.FeatureIterator;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.feature.simple.SimpleFeatureTypeBuilder;
+import org.geotools.geojson.feature.FeatureJSON;
+import org.geotools.geojson.geom.GeometryJSON;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * A sequence of GeoJSON Features, one per record, rather than a single Feature Collection. Both GeoJSON Text Sequences
+ * (RFC 8142), where each Feature is preceded by a record separator, and newline-delimited GeoJSON, with one Feature per
+ * line, are read. Other GeoJSON texts, such as a single pretty-printed Feature, are split into their JSON objects
+ * instead. A bare Geometry is read as a Feature without properties. Records are parsed one at a time, so memory does
+ * not depend on the number of Features.
+ *
+ * <p>
+ * With a parse pool, records are read in batches on the reading thread, and the batches are parsed in parallel and
+ * returned in order.
+ * </p>
+ */
+public class GeoJsonSequenceCollection extends GeoJsonFeatureCollection {
+	private static final char RECORD_SEPARATOR = 0x1E;
+	private static final char BYTE_ORDER_MARK = 0xFEFF;
+	private static final int DETECT_LIMIT_BYTES = 16 * 1024 * 1024;
+	private static final Set<String> GEOMETRY_TYPES = new HashSet<String>(Arrays.asList("Point", "MultiPoint", "LineString",
+			"MultiLineString", "Polygon", "MultiPolygon", "GeometryCollection"));
+
+	private final ForkJoinPool parsePool;
+	private final int batchChars;
+
+	/**
+	 * Creates the collection.
+	 *
+	 * @param schema
+	 *            The schema of the Features, such as from {@link #inferSequenceSchema}
+	 * @param source
+	 *            Opens the GeoJSON sequence
+	 * @param parsePool
+	 *            The pool to parse batches of records on, or null to parse them on the reading thread
+	 * @param batchChars
+	 *            The size of the batches to parse
+	 */
+	public GeoJsonSequenceCollection(SimpleFeatureType schema, Source source, ForkJoinPool parsePool, int batchChars) {
+		super(schema, source);
+		this.parsePool = parsePool;
+		this.batchChars = batchChars;
+	}
+
+	/**
+	 * Determines if GeoJSON is a sequence of Features rather than a single Feature Collection. It is a sequence if it
+	 * starts with a record separator, or if its first JSON object is followed by another, or is a single Feature or
+	 * Geometry.
+	 *
+	 * @param inputStream
+	 *            The GeoJSON. Only its start is read.
+	 * @return True if the GeoJSON is a sequence
+	 */
+	public static boolean isSequence(InputStream inputStream) throws IOException {
+		Reader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+		JsonScanner scanner = new JsonScanner();
+		boolean objectEnded = false;
+		for (int count = 0; count < DETECT_LIMIT_BYTES; count++) {
+			int value = reader.read();
+			if (value < 0) {
+				// A single Feature or Geometry is a sequence of one
+				return objectEnded && !"FeatureCollection".equals(scanner.getType());
+			}
+			if (objectEnded) {
+				if (isWhitespace(value)) {
+					continue;
+				}
+				// Another JSON text follows the first
+				return (value == '{') || (value == RECORD_SEPARATOR);
+			}
+			if ((scanner.getDepth() == 0) && (value == RECORD_SEPARATOR)) {
+				return true;
+			}
+			if ((value == '[') && scanner.isAtKey("features")) {
+				// A Feature Collection; there is no need to read it to the end
+				return false;
+			}
+			if (scanner.accept(value)) {
+				if ((scanner.getDepth() == 0) && (value != '}')) {
+					return false;
+				}
+				objectEnded = (scanner.getDepth() == 0);
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines if a character is JSON whitespace, or a byte order mark. The record separator is not whitespace here.
+	 */
+	private static boolean isWhitespace(int value) {
+		return (value == ' ') || (value == '\t') || (value == '\r') || (value == '\n') || (value == BYTE_ORDER_MARK);
+	}
+
+	/**
+	 * Infers the schema of a GeoJSON sequence from its leading Features, as
+	 * {@link GeoJsonFeatureCollection#inferSchema(Source, String, int)} does for a Feature Collection.
+	 *
+	 * @param source
+	 *            Opens the GeoJSON sequence
+	 * @param typeName
+	 *            The name of the Feature Type
+	 * @param sampleSize
+	 *            The number of leading Features to read
+	 * @return The inferred schema
+	 */
+	public static SimpleFeatureType inferSequenceSchema(Source source, String typeName, int sampleSize) throws IOException {
+		try (InputStream inputStream = source.open()) {
+			RecordFeatureIterator iterator = new RecordFeatureIterator(new RecordReader(inputStream));
+			try {
+				return inferSchema(iterator, typeName, sampleSize);
+			} finally {
+				iterator.close();
+			}
+		}
+	}
+
+	@Override
+	public SimpleFeatureIterator features() {
+		try {
+			RecordReader records = new RecordReader(getSource().open());
+			if (parsePool != null) {
+				return new BatchIterator(records);
+			}
+			return new SequenceIterator(records);
+		} catch (IOException exception) {
+			throw new RuntimeException(String.format("Could not open the GeoJSON: %s", exception.getMessage()), exception);
+		}
+	}
+
+	/**
+	 * Parses the records in order, on the reading thread.
+	 */
+	private class SequenceIterator extends AccumulatingIterator {
+		private final RecordFeatureIterator parsed;
+		private final SimpleFeatureBuilder builder = new SimpleFeatureBuilder(getSchema());
+
+		public SequenceIterator(RecordReader records) {
+			parsed = new RecordFeatureIterator(records);
+		}
+
+		@Override
+		protected boolean hasNextFeature() {
+			return parsed.hasNext();
+		}
+
+		@Override
+		protected SimpleFeature nextFeature() {
+			return retype(parsed.next(), builder);
+		}
+
+		@Override
+		public void close() {
+			parsed.close();
+		}
+	}
+
+	/**
+	 * Reads batches of records, and parses the batches on the parse pool. The batches are returned in order, and a
+	 * bounded number of them are parsed ahead of the reader.
+	 */
+	private class BatchIterator extends AccumulatingIterator {
+		private final RecordReader records;
+		private final Deque<ForkJoinTask<List<SimpleFeature>>> pending = new ArrayDeque<ForkJoinTask<List<SimpleFeature>>>();
+		private Iterator<SimpleFeature> current = Collections.<SimpleFeature> emptyList().iterator();
+
+		public BatchIterator(RecordReader records) {
+			this.records = records;
+		}
+
+		@Override
+		protected boolean hasNextFeature() {
+			while (!current.hasNext()) {
+				fill();
+				if (pending.isEmpty()) {
+					return false;
+				}
+				current = pending.poll().join().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		protected SimpleFeature nextFeature() {
+			if (!hasNextFeature()) {
+				throw new NoSuchElementException();
+			}
+			return current.next();
+		}
+
+		/**
+		 * Reads ahead, and submits batches to parse, until enough are in flight to keep the pool busy.
+		 */
+		private void fill() {
+			try {
+				while (pending.size() < (parsePool.getParallelism() * 2)) {
+					final List<String> batch = new ArrayList<String>();
+					int chars = 0;
+					String record;
+					while ((chars < batchChars) && ((record = records.next()) != null)) {
+						batch.add(record);
+						chars += record.length();
+					}
+					if (batch.isEmpty()) {
+						break;
+					}
+					pending.add(parsePool.submit(new Callable<List<SimpleFeature>>() {
+						@Override
+						public List<SimpleFeature> call() throws IOException {
+							return parseBatch(batch, BatchIterator.this);
+						}
+					}));
+				}
+			} catch (IOException exception) {
+				throw new RuntimeException(String.format("Could not read the GeoJSON: %s", exception.getMessage()), exception);
+			}
+		}
+
+		@Override
+		public void close() {
+			for (ForkJoinTask<List<SimpleFeature>> task : pending) {
+				task.cancel(false);
+			}
+			pending.clear();
+			records.close();
+		}
+	}
+
+	/**
+	 * Parses a batch of records, and retypes them with the iterator that reads them. Each batch uses its own parser and
+	 * builder, as they are not thread-safe.
+	 */
+	private List<SimpleFeature> parseBatch(List<String> batch, AccumulatingIterator iterator) throws IOException {
+		FeatureJSON featureJSON = new FeatureJSON();
+		SimpleFeatureBuilder builder = new SimpleFeatureBuilder(getSchema());
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>(batch.size());
+		for (String record : batch) {
+			features.add(iterator.retype(parseRecord(featureJSON, record), builder));
+		}
+		return features;
+	}
+
+	/**
+	 * Parses a record as a Feature. A bare Geometry becomes a Feature with only that Geometry.
+	 */
+	private static SimpleFeature parseRecord(FeatureJSON featureJSON, String record) throws IOException {
+		if (GEOMETRY_TYPES.contains(getType(record))) {
+			Geometry geometry = new GeometryJSON().read(new StringReader(record));
+			SimpleFeatureTypeBuilder typeBuilder = new SimpleFeatureTypeBuilder();
+			typeBuilder.setName("feature");
+			typeBuilder.add("geometry", geometry.getClass());
+			return SimpleFeatureBuilder.build(typeBuilder.buildFeatureType(), new Object[] { geometry }, null);
+		}
+		return featureJSON.readFeature(new StringReader(record));
+	}
+
+	/**
+	 * Gets the type member of a JSON object, or null if it has none.
+	 */
+	private static String getType(String record) {
+		JsonScanner scanner = new JsonScanner();
+		for (int index = 0; index < record.length(); index++) {
+			char value = record.charAt(index);
+			if (scanner.accept(value) && (scanner.getDepth() == 0) && (value == '}')) {
+				break;
+			}
+			if (scanner.getType() != null) {
+				break;
+			}
+		}
+		return scanner.getType();
+	}
+
+	/**
+	 * Follows the structure of JSON text a character at a time: the nesting depth, and the members of the outermost
+	 * object.
+	 */
+	private static class JsonScanner {
+		private static final int MAX_STRING_CHARS = 32;
+
+		private int depth = 0;
+		private boolean inString = false;
+		private boolean escaped = false;
+		private boolean inValue = false;
+		private boolean multiline = false;
+		private final StringBuilder string = new StringBuilder();
+		private String key = null;
+		private String type = null;
+
+		/**
+		 * Reads the next character.
+		 *
+		 * @return True if the character is part of the structure: not whitespace, and not within a string
+		 */
+		public boolean accept(int value) {
+			if ((value == '\n') && (depth > 0)) {
+				multiline = true;
+			}
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (value == '\\') {
+					escaped = true;
+				} else if (value == '"') {
+					inString = false;
+					if ((depth == 1) && inValue && "type".equals(key) && (type == null)) {
+						type = string.toString();
+					}
+				} else if ((depth == 1) && (string.length() < MAX_STRING_CHARS)) {
+					string.append((char) value);
+				}
+				return false;
+			}
+			if (isWhitespace(value)) {
+				return false;
+			}
+			switch (value) {
+			case '"':
+				inString = true;
+				if (depth == 1) {
+					string.setLength(0);
+				}
+				break;
+			case ':':
+				if (depth == 1) {
+					key = string.toString();
+					inValue = true;
+				}
+				break;
+			case ',':
+				if (depth == 1) {
+					inValue = false;
+				}
+				break;
+			case '{':
+			case '[':
+				depth++;
+				break;
+			case '}':
+			case ']':
+				depth--;
+				break;
+			default:
+				break;
+			}
+			return true;
+		}
+
+		/**
+		 * @return True if the last member read of the outermost object has the name
+		 */
+		public boolean isAtKey(String name) {
+			return (depth == 1) && inValue && name.equals(key);
+		}
+
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 * @return The type member of the outermost object, once read
+		 */
+		public String getType() {
+			return type;
+		}
+
+		/**
+		 * @return True if the outermost object has spanned more than one line
+		 */
+		public boolean isMultiline() {
+			return multiline;
+		}
+	}
+
+	/**
+	 * Splits a GeoJSON sequence into its records. If the sequence starts with a record separator, records are split on
+	 * record separators, and may span lines. Otherwise, if the first JSON object ends on the line it starts on, each
+	 * line is a record; if not, each JSON object is a record, so a pretty-printed document is read whole. Blank records
+	 * are skipped.
+	 */
+	private static class RecordReader {
+		private final Reader reader;
+		private Boolean separated = null;
+		private Boolean lines = null;
+		private JsonScanner scanner = new JsonScanner();
+
+		public RecordReader(InputStream inputStream) {
+			reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+		}
+
+		/**
+		 * @return The next record, or null at the end of the sequence
+		 */
+		public String next() throws IOException {
+			StringBuilder record = new StringBuilder();
+			int value;
+			while ((value = reader.read()) >= 0) {
+				if ((separated == null) && !isWhitespace(value)) {
+					separated = (value == RECORD_SEPARATOR);
+				}
+				boolean delimited = Boolean.TRUE.equals(separated) || Boolean.TRUE.equals(lines);
+				if (delimited && (value == (Boolean.TRUE.equals(separated) ? RECORD_SEPARATOR : '\n'))) {
+					if (!isBlank(record)) {
+						return record.toString();
+					}
+					record.setLength(0);
+					continue;
+				}
+				record.append((char) value);
+				if (!delimited && scanner.accept(value) && (scanner.getDepth() == 0) && (value == '}')) {
+					// The end of a JSON object
+					if (lines == null) {
+						lines = !scanner.isMultiline();
+					}
+					scanner = new JsonScanner();
+					return record.toString();
+				}
+			}
+			return isBlank(record) ? null : record.toString();
+		}
+
+		private boolean isBlank(StringBuilder record) {
+			for (int index = 0; index < record.length(); index++) {
+				if (!isWhitespace(record.charAt(index))) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		public void close() {
+			try {
+				reader.close();
+			} catch (IOException exception) {
+				// Only reading
+			}
+		}
+	}
+
+	/**
+	 * Parses each record of a sequence as a Feature.
+	 */
+	private static class RecordFeatureIterator implements FeatureIterator<SimpleFeature> {
+		private final RecordReader records;
+		private final FeatureJSON featureJSON = new FeatureJSON();
+		private String nextRecord;
+
+		public RecordFeatureIterator(RecordReader records) {
+			this.records = records;
+		}
+
+		@Override
+		public boolean hasNext() {
+			if (nextRecord == null) {
+				try {
+					nextRecord = records.next();
+				} catch (IOException exception) {
+					throw new RuntimeException(String.format("Could not read the GeoJSON: %s", exception.getMessage()), exception);
+				}
+			}
+			return nextRecord != null;
+		}
+
+		@Override
+		public SimpleFeature next() throws NoSuchElementException {
+			if (!hasNext()) {
+				throw new NoSuchElementException();
+			}
+			String record = nextRecord;
+			nextRecord = null;
+			try {
+				return parseRecord(featureJSON, record);
+			} catch (IOException exception) {
+				throw new RuntimeException(String.format("Could not parse a GeoJSON Feature: %s", exception.getMessage()), exception);
+			}
+		}
+
+		@Override
+		public void close() {
+			records.close();
+		}
+	}
+}
@@ -20,18 +20,27 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.JarURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Paths;
+import java.sql.SQLException;
 import java.util.HashMap;
+import java.util.Enumeration;
+import java.util.HashSet;
 import java.util.Locale;
 import java.util.Map;
+import java.util.regex.Pattern;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
 import org.apache.commons.io.FilenameUtils;
 import org.geotools.data.DataStore;
 import org.geotools.data.DataStoreFinder;
-import org.geotools.data.DefaultTransaction;
 import org.geotools.data.FeatureSource;
-import org.geotools.data.Transaction;
 import org.geotools.data.simple.SimpleFeatureCollection;
 import org.geotools.data.simple.SimpleFeatureStore;
 import org.geotools.geometry.jts.JTS;
@@ -51,18 +60,23 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import com.amazonaws.AmazonClientException;
-import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.AmazonServiceException;
 import com.amazonaws.services.s3.AmazonS3;
-import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.vividsolutions.jts.geom.Envelope;
 
 import exception.InvalidInputException;
+import ingest.persist.LoadCheckpoint;
+import ingest.persist.LoadCheckpointStore;
+import ingest.persist.PostGisCopyLoader;
+import ingest.persist.PostGisIndexer;
+import ingest.persist.PostGisStore;
 import model.data.DataResource;
 import model.data.DataType;
 import model.data.FileRepresentation;
-import model.data.location.FileAccessFactory;
 import model.data.location.FileLocation;
+import model.data.location.FolderShare;
 import model.data.location.S3FileStore;
 import model.data.type.GeoJsonDataType;
 import model.data.type.ShapefileDataType;
@@ -82,28 +96,24 @@ import util.PiazzaLogger;
 public class IngestUtilities {
 	@Autowired
 	private PiazzaLogger logger;
+	@Autowired
+	private ContentSpool contentSpool;
+	@Autowired
+	private S3ClientManager s3ClientManager;
+	@Autowired
+	private PostGisStore postGis;
+	@Autowired
+	private PostGisCopyLoader copyLoader;
+	@Autowired
+	private PostGisIndexer indexer;
+	@Autowired
+	private LoadCheckpointStore checkpointStore;
 
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.hostname}")
-	private String POSTGRES_HOST;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.port}")
-	private String POSTGRES_PORT;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.database}")
-	private String POSTGRES_DB_NAME;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.username}")
-	private String POSTGRES_USER;
-	@Value("${vcap.services.pz-geoserver-efs.credentials.postgres.password}")
-	private String POSTGRES_PASSWORD;
-	@Value("${postgres.schema}")
-	private String POSTGRES_SCHEMA;
-
-	@Value("${vcap.services.pz-blobstore.credentials.access_key_id}")
-	private String AMAZONS3_ACCESS_KEY;
-	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key}")
-	private String AMAZONS3_PRIVATE_KEY;
 	@Value("${vcap.services.pz-blobstore.credentials.bucket}")
 	private String AMAZONS3_BUCKET_NAME;
 
 	private final static Logger LOGGER = LoggerFactory.getLogger(IngestUtilities.class);
+	private final static Pattern ARCHIVED_ENTRY_NAME = Pattern.compile("[A-Za-z0-9_\\-]+\\.[A-Za-z]+");
 
 	/**
 	 * Recursive deletion of directory
@@ -212,9 +222,20 @@ public class IngestUtilities {
 	 * @return The GeoTools Shapefile Data Store Feature Source
 	 */
 	public FeatureSource<SimpleFeatureType, SimpleFeature> getShapefileDataStore(String shapefilePath) throws IOException {
-		File shapefile = new File(shapefilePath);
+		return getShapefileDataStore(new File(shapefilePath).toURI().toURL());
+	}
+
+	/**
+	 * Gets the GeoTools Feature Store for the Shapefile at a URL, such as a Shapefile read in place from a zip by
+	 * {@link #findArchivedShapefile(File)}.
+	 * 
+	 * @param shapefileUrl
+	 *            The URL of the *.shp file
+	 * @return The GeoTools Shapefile Data Store Feature Source
+	 */
+	public FeatureSource<SimpleFeatureType, SimpleFeature> getShapefileDataStore(URL shapefileUrl) throws IOException {
 		Map<String, Object> map = new HashMap<String, Object>();
-		map.put("url", shapefile.toURI().toURL());
+		map.put("url", shapefileUrl);
 		DataStore dataStore = DataStoreFinder.getDataStore(map);
 		String typeName = dataStore.getTypeNames()[0];
 		FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = dataStore.getFeatureSource(typeName);
@@ -222,7 +243,94 @@ public class IngestUtilities {
 	}
 
 	/**
-	 * Loads the contents of a DataResource into the PostGIS Database.
+	 * Finds the Shapefile in a zip, so that it can be read in place rather than extracted. The sidecar files are read
+	 * beside the *.shp file, so they must share its name; as with extraction, only entries at the root of the zip are
+	 * read.
+	 * 
+	 * @param zipFile
+	 *            The zipped Shapefile
+	 * @return The jar URL of the *.shp entry, or null if the Shapefile must be extracted to be read
+	 */
+	public URL findArchivedShapefile(File zipFile) throws IOException {
+		String zipUrl = zipFile.getCanonicalFile().toURI().toURL().toString();
+		if (zipUrl.contains("!")) {
+			// Would be read as the separator of the jar URL
+			return null;
+		}
+
+		String shapefileName = null;
+		Map<String, String> entryNames = new HashMap<String, String>();
+		try (ZipFile zip = new ZipFile(zipFile)) {
+			Enumeration<? extends ZipEntry> entries = zip.entries();
+			while (entries.hasMoreElements()) {
+				ZipEntry zipEntry = entries.nextElement();
+				String extension = FilenameUtils.getExtension(zipEntry.getName()).toLowerCase(Locale.ROOT);
+				if (!ARCHIVED_ENTRY_NAME.matcher(zipEntry.getName()).matches()) {
+					if ("shp".equals(extension) || "shx".equals(extension) || "dbf".equals(extension) || "prj".equals(extension)) {
+						return null;
+					}
+					continue;
+				}
+				if ("shp".equals(extension)) {
+					if (shapefileName != null) {
+						// More than one Shapefile; extraction picks one of them
+						return null;
+					}
+					shapefileName = zipEntry.getName();
+				}
+				entryNames.put(extension, zipEntry.getName());
+			}
+		}
+		if ((shapefileName == null) || !entryNames.containsKey("shx")) {
+			return null;
+		}
+
+		// The sidecar files are found by swapping the extension of the *.shp file, in the same case
+		String baseName = FilenameUtils.removeExtension(shapefileName);
+		String extensionCase = FilenameUtils.getExtension(shapefileName);
+		if (!extensionCase.equals("shp") && !extensionCase.equals("SHP")) {
+			return null;
+		}
+		for (String sidecar : new String[] { "shx", "dbf", "prj" }) {
+			String entryName = entryNames.get(sidecar);
+			if (entryName == null) {
+				continue;
+			}
+			String expected = baseName + "." + (extensionCase.equals("SHP") ? sidecar.toUpperCase(Locale.ROOT) : sidecar);
+			if (!entryName.equals(expected)) {
+				return null;
+			}
+		}
+		return new URL(String.format("jar:%s!/%s", zipUrl, shapefileName));
+	}
+
+	/**
+	 * Releases a zip read in place through a jar URL. Jar URLs cache their open zip, which is closed and evicted here
+	 * once the Shapefile Data Store is disposed.
+	 * 
+	 * @param shapefileUrl
+	 *            The jar URL from {@link #findArchivedShapefile(File)}
+	 */
+	public void releaseArchivedShapefile(URL shapefileUrl) {
+		try {
+			URLConnection connection = shapefileUrl.openConnection();
+			if (connection instanceof JarURLConnection) {
+				((JarURLConnection) connection).getJarFile().close();
+			}
+		} catch (IOException exception) {
+			LOGGER.warn(String.format("Could not release the zipped Shapefile %s: %s", shapefileUrl, exception.getMessage()), exception);
+		}
+	}
+
+	/**
+	 * Loads the contents of a DataResource into the PostGIS Database. The Features are loaded into a staging table,
+	 * which is published under the Data Id only once it is complete.
+	 * 
+	 * <p>
+	 * When loads are checkpointed, the Features are committed in chunks. If the load fails after committing a chunk, the
+	 * staging table and its checkpoint are kept, and a retry of the Job resumes from the chunks already committed. Those
+	 * that are never retried are dropped by the {@link ingest.persist.StagingTableSweeper}.
+	 * </p>
 	 * 
 	 * @param featureSource
 	 *            The GeoTools FeatureSource for the ingest information.
@@ -232,104 +340,272 @@ public class IngestUtilities {
 	 */
 	public void persistFeatures(FeatureSource<SimpleFeatureType, SimpleFeature> featureSource, DataResource dataResource,
 			SimpleFeatureType featureSchema) throws IOException {
-		// Get the dataStore to the postGIS database.
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		// Get the shared dataStore to the postGIS database.
+		DataStore postGisStore = postGis.getDataStore();
 
-		// Create the schema in the data store
+		// Create the schema in the data store, under a staging name until it is loaded
 		String tableName = dataResource.getDataId();
+		String stagingTable = postGis.getStagingTableName(tableName);
+		SimpleFeatureType postGisSchema = GeoToolsUtil.cloneFeatureType(featureSchema, stagingTable);
 
-		// Associate the table name with the DataResource
-		SimpleFeatureType postGisSchema = GeoToolsUtil.cloneFeatureType(featureSchema, tableName);
-		postGisStore.createSchema(postGisSchema);
-		SimpleFeatureStore postGisFeatureStore = (SimpleFeatureStore) postGisStore.getFeatureSource(tableName);
+		// Resume an earlier, checkpointed attempt at the load if its staging table remains
+		LoadCheckpoint checkpoint = null;
+		if (checkpointStore.isEnabled() && copyLoader.isEnabled()) {
+			checkpoint = checkpointStore.getCheckpoint(postGisStore, tableName, checkpointStore.getSchemaHash(postGisSchema));
+		}
+		boolean stagingExists = postGis.tableExists(stagingTable);
+		if ((checkpoint != null) && checkpoint.isResumed() && stagingExists) {
+			logger.log(String.format("Resuming the load of Data %s into PostGIS from its checkpoint.", tableName), Severity.INFORMATIONAL,
+					new AuditElement("ingest", "resumeLoadDataToPostGis", tableName));
+		} else {
+			if ((checkpoint != null) && checkpoint.isResumed()) {
+				checkpointStore.clear(postGisStore, tableName);
+				checkpoint = new LoadCheckpoint(tableName, checkpoint.getSchemaHash(), new HashSet<Integer>());
+			}
+			if (stagingExists) {
+				// Left by an attempt that cannot be resumed
+				deleteDatabaseTable(stagingTable);
+			}
+			postGisStore.createSchema(postGisSchema);
+		}
 
 		// Commit the features to the data store
-		Transaction transaction = new DefaultTransaction();
 		try {
 			// Get the features from the FeatureCollection and add to the PostGIS store
 			SimpleFeatureCollection features = (SimpleFeatureCollection) featureSource.getFeatures();
-			postGisFeatureStore.addFeatures(features);
+			loadFeatures(postGisStore, stagingTable, features, checkpoint);
 
-			// Commit the changes and clean up
-			transaction.commit();
-			transaction.close();
+			// Associate the table name with the DataResource
+			postGis.publishTable(stagingTable, tableName);
+			if (checkpoint != null) {
+				clearCheckpoint(postGisStore, tableName);
+			}
 		} catch (IOException exception) {
-			// Clean up resources
-			transaction.rollback();
-			transaction.close();
+			// A checkpointed staging table is kept for a retry; the StagingTableSweeper drops it if none arrives
+			if (checkpoint == null) {
+				try {
+					deleteDatabaseTable(stagingTable);
+				} catch (IOException cleanupException) {
+					LOGGER.warn(String.format("Could not drop staging Table %s: %s", stagingTable, cleanupException.getMessage()));
+				}
+			}
 			String error = "Error copying DataResource to PostGIS: " + exception.getMessage();
 			LOGGER.error(error, exception);
 			logger.log(error, Severity.ERROR, new AuditElement("ingest", "failedToCopyPostGisData", dataResource.getDataId()));
 
 			// Rethrow
 			throw exception;
-		} finally {
-			// Cleanup Data Store
-			postGisStore.dispose();
 		}
 
 		logger.log("Committed Data to PostGIS.", Severity.INFORMATIONAL, new AuditElement("ingest", "loadDataToPostGis", tableName));
 	}
 
+	/**
+	 * Adds Features to a PostGIS table that was created from their schema. The Features are streamed into the table
+	 * with a binary COPY where possible; if that cannot be done, they are inserted through the Feature Store instead.
+	 * The spatial indexes of the table are built once the Features are loaded, rather than maintained row by row.
+	 * 
+	 * @param postGisStore
+	 *            The PostGIS Data Store
+	 * @param tableName
+	 *            The name of the table
+	 * @param features
+	 *            The Features to add
+	 */
+	public void loadFeatures(DataStore postGisStore, String tableName, SimpleFeatureCollection features) throws IOException {
+		loadFeatures(postGisStore, tableName, features, null);
+	}
+
+	/**
+	 * Adds Features to a PostGIS table as {@link #loadFeatures(DataStore, String, SimpleFeatureCollection)} does,
+	 * committing them in checkpointed chunks when a checkpoint is given.
+	 * 
+	 * @param checkpoint
+	 *            The checkpoint of the load, or null
+	 */
+	private void loadFeatures(DataStore postGisStore, String tableName, SimpleFeatureCollection features, LoadCheckpoint checkpoint)
+			throws IOException {
+		boolean indexesDeferred = indexer.dropSpatialIndexes(postGisStore, tableName);
+		if (!copyFeatures(postGisStore, tableName, features, checkpoint)) {
+			SimpleFeatureStore postGisFeatureStore = (SimpleFeatureStore) postGisStore.getFeatureSource(tableName);
+			postGisFeatureStore.addFeatures(features);
+		}
+		if (indexesDeferred) {
+			indexer.buildSpatialIndexes(postGisStore, tableName);
+		}
+	}
+
+	/**
+	 * Attempts to load the Features with COPY.
+	 * 
+	 * @return True if the Features were loaded; false if they must be inserted instead
+	 * @throws IOException
+	 *             If a checkpointed load failed after it committed chunks. It must be resumed, not redone.
+	 */
+	private boolean copyFeatures(DataStore postGisStore, String tableName, SimpleFeatureCollection features, LoadCheckpoint checkpoint)
+			throws IOException {
+		if (!copyLoader.isEnabled()) {
+			return false;
+		}
+		try {
+			long count = (checkpoint != null) ? copyLoader.load(postGisStore, tableName, features, checkpoint)
+					: copyLoader.load(postGisStore, tableName, features);
+			LOGGER.info(String.format("Loaded %s Features into PostGIS Table %s with COPY.", count, tableName));
+			return true;
+		} catch (UnsupportedOperationException | SQLException | IOException | ClassCastException exception) {
+			if ((checkpoint != null) && !(exception instanceof UnsupportedOperationException)) {
+				if (checkpoint.isResumed() || hasCommittedChunks(postGisStore, checkpoint)) {
+					throw new IOException(
+							String.format("Checkpointed load of PostGIS Table %s failed: %s", tableName, exception.getMessage()), exception);
+				}
+				// Nothing was committed, so there is nothing to resume; start over with inserts
+				discardLoad(postGisStore, tableName, checkpoint);
+			}
+			// Without a checkpoint, a failed load leaves the table empty; an unsupported table is rejected before loading
+			LOGGER.warn(String.format("Could not load Features into PostGIS Table %s with COPY; inserting them instead. %s", tableName,
+					exception.getMessage()));
+			return false;
+		}
+	}
+
+	/**
+	 * Determines if a checkpointed load committed any chunks before it failed. The loader returns only once none of its
+	 * chunks are still writing, so the checkpoint is final.
+	 */
+	private boolean hasCommittedChunks(DataStore postGisStore, LoadCheckpoint checkpoint) throws IOException {
+		return checkpointStore.getCheckpoint(postGisStore, checkpoint.getDataId(), checkpoint.getSchemaHash()).isResumed();
+	}
+
+	/**
+	 * Clears the checkpoint and empties the table of a checkpointed load that committed nothing, so that the Features
+	 * can be inserted instead.
+	 */
+	private void discardLoad(DataStore postGisStore, String tableName, LoadCheckpoint checkpoint) throws IOException {
+		checkpointStore.clear(postGisStore, checkpoint.getDataId());
+		try {
+			copyLoader.truncate(postGisStore, tableName);
+		} catch (SQLException exception) {
+			throw new IOException(String.format("Could not empty PostGIS Table %s after a failed load: %s", tableName,
+					exception.getMessage()), exception);
+		}
+	}
+
+	/**
+	 * Removes the checkpoint of a load that has been published. A checkpoint left behind only costs a row per chunk.
+	 */
+	private void clearCheckpoint(DataStore postGisStore, String tableName) {
+		try {
+			checkpointStore.clear(postGisStore, tableName);
+		} catch (IOException exception) {
+			LOGGER.warn(String.format("Could not clear the load checkpoint of Data %s: %s", tableName, exception.getMessage()));
+		}
+	}
+
 	/**
 	 * Will copy external AWS S3 file to piazza S3 Bucket
 	 * 
+	 * <p>
+	 * Files already in S3 are copied server-side, so their bytes never pass through this service; large files are
+	 * copied in parts. Other files are uploaded from the content spool, in parallel parts if they are large.
+	 * </p>
+	 * 
 	 * @param dataResource
 	 * @param host
 	 *            if piazza should host the data
 	 */
-	public void copyS3Source(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
+	public void copyS3Source(DataResource dataResource)
+			throws AmazonClientException, InvalidInputException, IOException, InterruptedException {
 		logger.log(String.format("Copying Data %s to Piazza S3 Location.", dataResource.getDataId()), Severity.INFORMATIONAL,
 				new AuditElement("ingest", "copyS3DataToPiazza", dataResource.getDataId()));
-		// Connect to AWS S3 Bucket. Apply security only if credentials are
-		// present
-		AmazonS3 s3Client = getAwsClient();
-
-		// Obtain file input stream
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
-		FileAccessFactory fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-		InputStream inputStream = fileFactory.getFile(fileLocation);
-
-		// Write stream directly into an s3 bucket
-		ObjectMetadata metadata = new ObjectMetadata();
 		String fileKey = String.format("%s-%s", dataResource.getDataId(), fileLocation.getFileName());
-		s3Client.putObject(AMAZONS3_BUCKET_NAME, fileKey, inputStream, metadata);
+		if (fileLocation instanceof S3FileStore) {
+			S3FileStore fileStore = (S3FileStore) fileLocation;
+			try {
+				s3ClientManager
+						.copy(new CopyObjectRequest(fileStore.getBucketName(), fileStore.getFileName(), AMAZONS3_BUCKET_NAME, fileKey));
+				return;
+			} catch (AmazonServiceException exception) {
+				if (exception.getStatusCode() != 403) {
+					throw exception;
+				}
+				// The source bucket does not allow copies into the Piazza bucket; upload it instead
+				LOGGER.warn(String.format("Server-side copy of Data %s was denied; uploading it instead. %s", dataResource.getDataId(),
+						exception.getMessage()));
+			}
+		}
+		uploadFromSpool(dataResource, fileKey);
+	}
 
-		// Clean up
-		inputStream.close();
+	/**
+	 * Uploads the file of the Data Resource to the Piazza S3 bucket. A file spooled to disk is uploaded in parallel
+	 * parts read directly from the file; otherwise, the stream is uploaded with its length, if known.
+	 */
+	private void uploadFromSpool(DataResource dataResource, String fileKey)
+			throws AmazonClientException, InvalidInputException, IOException, InterruptedException {
+		File spoolFile = contentSpool.getSpoolFile(dataResource);
+		if (spoolFile != null) {
+			s3ClientManager.upload(AMAZONS3_BUCKET_NAME, fileKey, spoolFile);
+			return;
+		}
+		try (InputStream inputStream = contentSpool.openStream(dataResource)) {
+			// A known length lets the client stream the upload, rather than buffer it to find the length
+			ObjectMetadata metadata = new ObjectMetadata();
+			long spooledSize = contentSpool.getSpooledSize(dataResource);
+			if (spooledSize >= 0) {
+				metadata.setContentLength(spooledSize);
+			}
+			s3ClientManager.upload(AMAZONS3_BUCKET_NAME, fileKey, inputStream, metadata);
+		}
 	}
 
+	/**
+	 * Gets the size, in bytes, of the file for a Data Resource. The size is read from the S3 Object metadata, or from
+	 * the file attributes of a Folder Share, without reading the file itself. Only if that fails is the file streamed
+	 * and its bytes counted.
+	 * 
+	 * @param dataResource
+	 *            The Data Resource with a File Representation
+	 * @return The size of the file, in bytes
+	 */
 	public long getFileSize(DataResource dataResource) throws AmazonClientException, InvalidInputException, IOException {
-		// Obtain file input stream
 		FileLocation fileLocation = ((FileRepresentation) dataResource.getDataType()).getLocation();
-		FileAccessFactory fileFactory = new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-		InputStream inputStream = fileFactory.getFile(fileLocation);
-
-		long counter = inputStream.read();
-		long numBytes = 0;
-		while (counter >= 0) {
-			counter = inputStream.read();
-			numBytes++;
+		try {
+			if (fileLocation instanceof S3FileStore) {
+				S3FileStore fileStore = (S3FileStore) fileLocation;
+				return getAwsClient().getObjectMetadata(fileStore.getBucketName(), fileStore.getFileName()).getContentLength();
+			} else if (fileLocation instanceof FolderShare) {
+				return Files.size(Paths.get(((FolderShare) fileLocation).filePath));
+			}
+		} catch (AmazonClientException | IOException | InvalidPathException exception) {
+			LOGGER.warn(String.format("Could not read the file size of Data %s from its metadata; counting its bytes instead. %s",
+					dataResource.getDataId(), exception.getMessage()));
 		}
+		return countFileBytes(fileLocation);
+	}
 
-		return numBytes;
+	/**
+	 * Streams the file and counts its bytes. Used only when the size cannot be read from the file metadata.
+	 */
+	private long countFileBytes(FileLocation fileLocation) throws AmazonClientException, InvalidInputException, IOException {
+		try (InputStream inputStream = s3ClientManager.openStream(fileLocation)) {
+			byte[] buffer = new byte[64 * 1024];
+			long numBytes = 0;
+			int length;
+			while ((length = inputStream.read(buffer)) >= 0) {
+				numBytes += length;
+			}
+			return numBytes;
+		}
 	}
 
 	/**
-	 * Gets an instance of an S3 client to use.
+	 * Gets the shared S3 client to use.
 	 * 
 	 * @return The S3 client
 	 */
 	public AmazonS3 getAwsClient() {
-		AmazonS3 s3Client;
-		if ((AMAZONS3_ACCESS_KEY.isEmpty()) && (AMAZONS3_PRIVATE_KEY.isEmpty())) {
-			s3Client = new AmazonS3Client();
-		} else {
-			BasicAWSCredentials credentials = new BasicAWSCredentials(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY);
-			s3Client = new AmazonS3Client(credentials);
-		}
-		return s3Client;
+		return s3ClientManager.getClient();
 	}
 
 	/**
@@ -423,8 +699,7 @@ public class IngestUtilities {
 		logger.log("Dropping Table from PostGIS", Severity.INFORMATIONAL, new AuditElement("ingest", "deletePostGisTable", tableName));
 
 		// Delete the table
-		DataStore postGisStore = GeoToolsUtil.getPostGisDataStore(POSTGRES_HOST, POSTGRES_PORT, POSTGRES_SCHEMA, POSTGRES_DB_NAME,
-				POSTGRES_USER, POSTGRES_PASSWORD);
+		DataStore postGisStore = postGis.getDataStore();
 		try {
 			postGisStore.removeSchema(tableName);
 		} catch (IllegalArgumentException exception) {
@@ -434,8 +709,6 @@ public class IngestUtilities {
 					"Attempted to delete Table %s from Database for deleting a Data Resource, but the table was not found.", tableName);
 			LOGGER.error(error, exception);
 			logger.log(error, Severity.WARNING);
-		} finally {
-			postGisStore.dispose();
 		}
 	}
 }
@@ -0,0 +1,216 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+import com.amazonaws.AmazonClientException;
+import com.amazonaws.ClientConfiguration;
+import com.amazonaws.auth.BasicAWSCredentials;
+import com.amazonaws.auth.DefaultAWSCredentialsProviderChain;
+import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.AmazonS3Client;
+import com.amazonaws.services.s3.model.CopyObjectRequest;
+import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.transfer.TransferManager;
+import com.amazonaws.services.s3.transfer.TransferManagerConfiguration;
+
+import exception.InvalidInputException;
+import model.data.location.FileAccessFactory;
+import model.data.location.FileLocation;
+import model.data.location.FolderShare;
+import model.data.location.S3FileStore;
+
+/**
+ * Holds the single S3 client, and Transfer Manager, shared by all S3 access in the ingest and delete paths. The client
+ * keeps a pool of connections that are reused between Jobs, rather than each Job opening its own.
+ */
+@Component
+public class S3ClientManager {
+	@Value("${vcap.services.pz-blobstore.credentials.access_key_id:}")
+	private String AMAZONS3_ACCESS_KEY;
+	@Value("${vcap.services.pz-blobstore.credentials.secret_access_key:}")
+	private String AMAZONS3_PRIVATE_KEY;
+	@Value("${s3.max.connections}")
+	private int maxConnections;
+	@Value("${s3.connection.timeout.ms}")
+	private int connectionTimeoutMillis;
+	@Value("${s3.socket.timeout.ms}")
+	private int socketTimeoutMillis;
+	@Value("${s3.connection.ttl.ms}")
+	private long connectionTtlMillis;
+	@Value("${s3.transfer.threads}")
+	private int transferThreads;
+	@Value("${s3.multipart.threshold.bytes}")
+	private long multipartThresholdBytes;
+	@Value("${s3.multipart.part.bytes}")
+	private long multipartPartBytes;
+
+	private AmazonS3 s3Client;
+	private TransferManager transferManager;
+	private ThreadPoolExecutor transferExecutor;
+	private final AtomicLong readCount = new AtomicLong(0);
+	private final AtomicLong copyCount = new AtomicLong(0);
+	private final AtomicLong uploadCount = new AtomicLong(0);
+	private final AtomicLong uploadedBytes = new AtomicLong(0);
+
+	/**
+	 * Creates the client and the Transfer Manager. Apply security only if credentials are present.
+	 */
+	@PostConstruct
+	public void initialize() {
+		ClientConfiguration configuration = new ClientConfiguration();
+		configuration.setMaxConnections(Math.max(1, maxConnections));
+		configuration.setConnectionTimeout(connectionTimeoutMillis);
+		configuration.setSocketTimeout(socketTimeoutMillis);
+		configuration.setConnectionTTL(connectionTtlMillis);
+		if ((AMAZONS3_ACCESS_KEY.isEmpty()) && (AMAZONS3_PRIVATE_KEY.isEmpty())) {
+			s3Client = new AmazonS3Client(new DefaultAWSCredentialsProviderChain(), configuration);
+		} else {
+			s3Client = new AmazonS3Client(new BasicAWSCredentials(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY), configuration);
+		}
+
+		// The Thread Pool bounds the number of parts in flight across all transfers
+		int threads = Math.max(1, transferThreads);
+		transferExecutor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+				new CustomizableThreadFactory("ingest-s3-transfer-"));
+		transferManager = new TransferManager(s3Client, transferExecutor);
+		TransferManagerConfiguration transferConfiguration = new TransferManagerConfiguration();
+		transferConfiguration.setMultipartUploadThreshold(multipartThresholdBytes);
+		transferConfiguration.setMinimumUploadPartSize(multipartPartBytes);
+		transferConfiguration.setMultipartCopyThreshold(multipartThresholdBytes);
+		transferConfiguration.setMultipartCopyPartSize(multipartPartBytes);
+		transferManager.setConfiguration(transferConfiguration);
+	}
+
+	/**
+	 * Stops the Transfer Manager, and releases the connections of the client.
+	 */
+	@PreDestroy
+	public void shutdown() {
+		transferManager.shutdownNow(true);
+	}
+
+	/**
+	 * Gets the shared S3 client.
+	 *
+	 * @return The S3 client
+	 */
+	public AmazonS3 getClient() {
+		return s3Client;
+	}
+
+	/**
+	 * Opens the file at the location; an S3 Object through the shared client, or a file on a Folder Share.
+	 *
+	 * @param fileLocation
+	 *            The location of the file
+	 * @return Stream of the file contents. The caller must close it.
+	 */
+	public InputStream openStream(FileLocation fileLocation) throws AmazonClientException, InvalidInputException, IOException {
+		readCount.incrementAndGet();
+		if (fileLocation instanceof S3FileStore) {
+			S3FileStore fileStore = (S3FileStore) fileLocation;
+			return s3Client.getObject(fileStore.getBucketName(), fileStore.getFileName()).getObjectContent();
+		} else if (fileLocation instanceof FolderShare) {
+			return new BufferedInputStream(Files.newInputStream(Paths.get(((FolderShare) fileLocation).filePath)));
+		}
+		return new FileAccessFactory(AMAZONS3_ACCESS_KEY, AMAZONS3_PRIVATE_KEY).getFile(fileLocation);
+	}
+
+	/**
+	 * Copies an S3 Object server-side, in parts if it is large, and waits for the copy to complete.
+	 *
+	 * @param copyObjectRequest
+	 *            The source and destination of the copy
+	 */
+	public void copy(CopyObjectRequest copyObjectRequest) throws AmazonClientException, InterruptedException {
+		transferManager.copy(copyObjectRequest).waitForCompletion();
+		copyCount.incrementAndGet();
+	}
+
+	/**
+	 * Uploads a file, in parallel parts if it is large, and waits for the upload to complete.
+	 *
+	 * @param bucketName
+	 *            The destination bucket
+	 * @param key
+	 *            The destination key
+	 * @param file
+	 *            The file to upload
+	 */
+	public void upload(String bucketName, String key, File file) throws AmazonClientException, InterruptedException {
+		transferManager.upload(bucketName, key, file).waitForCompletion();
+		uploadCount.incrementAndGet();
+		uploadedBytes.addAndGet(file.length());
+	}
+
+	/**
+	 * Uploads a stream, and waits for the upload to complete. The content length should be set in the metadata if it
+	 * is known; otherwise the client must buffer the stream to find it.
+	 *
+	 * @param bucketName
+	 *            The destination bucket
+	 * @param key
+	 *            The destination key
+	 * @param inputStream
+	 *            The contents to upload
+	 * @param metadata
+	 *            The Object metadata
+	 */
+	public void upload(String bucketName, String key, InputStream inputStream, ObjectMetadata metadata)
+			throws AmazonClientException, InterruptedException {
+		transferManager.upload(bucketName, key, inputStream, metadata).waitForCompletion();
+		uploadCount.incrementAndGet();
+		uploadedBytes.addAndGet(metadata.getContentLength());
+	}
+
+	/**
+	 * Gets the S3 client statistics.
+	 *
+	 * @return Map of statistics
+	 */
+	public Map<String, Object> getStats() {
+		Map<String, Object> stats = new HashMap<String, Object>();
+		stats.put("maxConnections", maxConnections);
+		stats.put("transferThreads", transferExecutor.getMaximumPoolSize());
+		stats.put("activeTransferThreads", transferExecutor.getActiveCount());
+		stats.put("queuedTransferTasks", transferExecutor.getQueue().size());
+		stats.put("reads", readCount.get());
+		stats.put("copies", copyCount.get());
+		stats.put("uploads", uploadCount.get());
+		stats.put("uploadedBytes", uploadedBytes.get());
+		return stats;
+	}
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.utility;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.Locale;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.io.IOUtils;
+import org.geotools.referencing.CRS;
+import org.opengis.referencing.FactoryException;
+import org.opengis.referencing.crs.CoordinateReferenceSystem;
+
+/**
+ * The metadata of a zipped Shapefile that can be read from its headers alone: the bounding box from the header of the
+ * .shp file, the number of records from the length of the .shx index, and the coordinate reference system from the
+ * .prj file. None of the records are read, so the cost does not depend on the size of the Shapefile.
+ */
+public class ShapefileHeader {
+	private static final int HEADER_BYTES = 100;
+	private static final int FILE_CODE = 9994;
+	private static final int INDEX_RECORD_BYTES = 8;
+
+	private final double minX;
+	private final double minY;
+	private final double maxX;
+	private final double maxY;
+	private final int recordCount;
+	private final CoordinateReferenceSystem crs;
+
+	private ShapefileHeader(ByteBuffer shpHeader, ByteBuffer shxHeader, CoordinateReferenceSystem crs) {
+		// The bounding box is little-endian, from byte 36 of the header
+		shpHeader.order(ByteOrder.LITTLE_ENDIAN);
+		minX = shpHeader.getDouble(36);
+		minY = shpHeader.getDouble(44);
+		maxX = shpHeader.getDouble(52);
+		maxY = shpHeader.getDouble(60);
+		// The file length is big-endian, in 16-bit words, at byte 24; each index record is a fixed size
+		int shxBytes = shxHeader.order(ByteOrder.BIG_ENDIAN).getInt(24) * 2;
+		recordCount = (shxBytes - HEADER_BYTES) / INDEX_RECORD_BYTES;
+		this.crs = crs;
+	}
+
+	/**
+	 * Reads the headers of the Shapefile in a zip file.
+	 *
+	 * @param zipFile
+	 *            The zipped Shapefile
+	 * @return The header metadata, or null if the zip does not contain a .shp, .shx, and .prj file with valid headers
+	 */
+	public static ShapefileHeader read(ZipFile zipFile) throws IOException {
+		ZipEntry shpEntry = findEntry(zipFile, null, "shp");
+		if (shpEntry == null) {
+			return null;
+		}
+		String baseName = FilenameUtils.removeExtension(shpEntry.getName());
+		ZipEntry shxEntry = findEntry(zipFile, baseName, "shx");
+		ZipEntry prjEntry = findEntry(zipFile, baseName, "prj");
+		if ((shxEntry == null) || (prjEntry == null)) {
+			return null;
+		}
+
+		ByteBuffer shpHeader = readHeader(zipFile, shpEntry);
+		ByteBuffer shxHeader = readHeader(zipFile, shxEntry);
+		if ((shpHeader == null) || (shxHeader == null)) {
+			return null;
+		}
+
+		CoordinateReferenceSystem crs;
+		try (InputStream prjStream = zipFile.getInputStream(prjEntry)) {
+			crs = CRS.parseWKT(IOUtils.toString(prjStream, StandardCharsets.UTF_8).trim());
+		} catch (FactoryException exception) {
+			return null;
+		}
+		return new ShapefileHeader(shpHeader, shxHeader, crs);
+	}
+
+	/**
+	 * Finds the entry with the extension, ignoring case. If a base name is given, the entry must have it.
+	 */
+	private static ZipEntry findEntry(ZipFile zipFile, String baseName, String extension) {
+		Enumeration<? extends ZipEntry> entries = zipFile.entries();
+		while (entries.hasMoreElements()) {
+			ZipEntry entry = entries.nextElement();
+			if (entry.isDirectory() || !FilenameUtils.getExtension(entry.getName()).toLowerCase(Locale.ROOT).equals(extension)) {
+				continue;
+			}
+			if ((baseName == null) || FilenameUtils.removeExtension(entry.getName()).equals(baseName)) {
+				return entry;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads the 100-byte header shared by the .shp and .shx files, checking its file code.
+	 */
+	private static ByteBuffer readHeader(ZipFile zipFile, ZipEntry entry) throws IOException {
+		byte[] header = new byte[HEADER_BYTES];
+		try (DataInputStream inputStream = new DataInputStream(zipFile.getInputStream(entry))) {
+			inputStream.readFully(header);
+		} catch (EOFException exception) {
+			return null;
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(header);
+		return (buffer.getInt(0) == FILE_CODE) ? buffer : null;
+	}
+
+	public double getMinX() {
+		return minX;
+	}
+
+	public double getMinY() {
+		return minY;
+	}
+
+	public double getMaxX() {
+		return maxX;
+	}
+
+	public double getMaxY() {
+		return maxY;
+	}
+
+	public int getRecordCount() {
+		return recordCount;
+	}
+
+	public CoordinateReferenceSystem getCoordinateReferenceSystem() {
+		return crs;
+	}
+}
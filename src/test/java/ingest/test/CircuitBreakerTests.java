@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import ingest.utility.CircuitBreaker;
+
+/**
+ * Tests the state transitions of the Circuit Breaker
+ */
+public class CircuitBreakerTests {
+	/**
+	 * Tests opening, the trial call, and closing of the circuit
+	 */
+	@Test
+	public void testTransitions() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker("unit-test", 2, 50);
+
+		// Consecutive failures open the circuit
+		assertTrue(circuitBreaker.allowRequest());
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.CLOSED);
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.OPEN);
+		assertTrue(circuitBreaker.allowRequest() == false);
+
+		// Once the open period elapses, only one trial call is allowed
+		Thread.sleep(100);
+		assertTrue(circuitBreaker.allowRequest());
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN);
+		assertTrue(circuitBreaker.allowRequest() == false);
+
+		// A failed trial reopens the circuit
+		circuitBreaker.recordFailure();
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.OPEN);
+
+		// A successful trial closes it
+		Thread.sleep(100);
+		assertTrue(circuitBreaker.allowRequest());
+		circuitBreaker.recordSuccess();
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.CLOSED);
+		assertTrue(circuitBreaker.allowRequest());
+	}
+
+	/**
+	 * Tests that a trial call released without an outcome lets another trial through
+	 */
+	@Test
+	public void testReleasedTrial() throws Exception {
+		CircuitBreaker circuitBreaker = new CircuitBreaker("unit-test", 1, 50);
+		circuitBreaker.recordFailure();
+		Thread.sleep(100);
+
+		// The trial is released, so the circuit stays half open and allows another
+		assertTrue(circuitBreaker.allowRequest());
+		assertTrue(circuitBreaker.allowRequest() == false);
+		circuitBreaker.releaseTrial();
+		assertTrue(circuitBreaker.getState() == CircuitBreaker.State.HALF_OPEN);
+		assertTrue(circuitBreaker.allowRequest());
+	}
+}
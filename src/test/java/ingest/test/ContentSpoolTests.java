@@ -0,0 +1,97 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.InputStream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.utility.ContentSpool;
+import ingest.utility.S3ClientManager;
+import model.data.DataResource;
+import model.data.location.FolderShare;
+import model.data.type.RasterDataType;
+
+/**
+ * Tests the spooling of Data files
+ */
+public class ContentSpoolTests {
+	private ContentSpool contentSpool;
+	private DataResource mockData;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		contentSpool = new ContentSpool();
+		ReflectionTestUtils.setField(contentSpool, "DATA_TEMP_PATH", "tmp");
+		ReflectionTestUtils.setField(contentSpool, "s3ClientManager", new S3ClientManager());
+
+		mockData = new DataResource();
+		mockData.dataId = "spool-test";
+		RasterDataType rasterType = new RasterDataType();
+		FolderShare location = new FolderShare();
+		location.filePath = "src" + File.separator + "test" + File.separator + "resources" + File.separator + "elevation.tif";
+		rasterType.location = location;
+		mockData.dataType = rasterType;
+	}
+
+	/**
+	 * Tests spooling a small file in memory
+	 */
+	@Test
+	public void testMemorySpool() throws Exception {
+		ReflectionTestUtils.setField(contentSpool, "memoryThresholdBytes", 1024 * 1024);
+
+		assertTrue(contentSpool.spool(mockData) == 90074);
+		assertTrue(contentSpool.getSpooledSize(mockData) == 90074);
+		assertTrue(new File("tmp" + File.separator + "spool-test.spool").exists() == false);
+		assertTrue(contentSpool.getSpoolFile(mockData) == null);
+		try (InputStream inputStream = contentSpool.openStream(mockData)) {
+			assertTrue(IOUtils.toByteArray(inputStream).length == 90074);
+		}
+
+		contentSpool.release(mockData.getDataId());
+		assertTrue(contentSpool.getSpooledSize(mockData) == -1);
+	}
+
+	/**
+	 * Tests spooling a file larger than the memory threshold to disk, and cleaning it up on release
+	 */
+	@Test
+	public void testFileSpool() throws Exception {
+		ReflectionTestUtils.setField(contentSpool, "memoryThresholdBytes", 1024);
+
+		assertTrue(contentSpool.spool(mockData) == 90074);
+		File spoolFile = new File("tmp" + File.separator + "spool-test.spool");
+		assertTrue(spoolFile.exists());
+		assertTrue(spoolFile.equals(contentSpool.getSpoolFile(mockData)));
+		try (InputStream inputStream = contentSpool.openStream(mockData)) {
+			assertTrue(IOUtils.toByteArray(inputStream).length == 90074);
+		}
+		assertTrue(contentSpool.getStats().get("downloads").equals(1L));
+
+		contentSpool.release(mockData.getDataId());
+		assertTrue(spoolFile.exists() == false);
+	}
+}
@@ -29,13 +29,22 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 
 import exception.InvalidInputException;
 import ingest.controller.IngestController;
+import ingest.messaging.EventTypeCache;
+import ingest.messaging.IngestPipeline;
 import ingest.messaging.IngestThreadManager;
+import ingest.messaging.NotificationSender;
+import ingest.messaging.SearchMetadataBatcher;
+import ingest.messaging.StatusUpdatePublisher;
+import ingest.messaging.WorkloadExecutors;
 import ingest.persist.PersistMetadata;
+import ingest.persist.PostGisStore;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
 import ingest.utility.IngestUtilities;
+import ingest.utility.S3ClientManager;
 import model.data.DataResource;
 import model.job.metadata.ResourceMetadata;
 import model.response.ErrorResponse;
@@ -59,7 +68,25 @@ public class ControllerTests {
 	@Mock
 	private IngestUtilities ingestUtil;
 	@Mock
-	private ThreadPoolTaskExecutor threadPoolTaskExecutor;
+	private WorkloadExecutors workloadExecutors;
+	@Mock
+	private IngestPipeline ingestPipeline;
+	@Mock
+	private CpuBoundLimiter cpuBoundLimiter;
+	@Mock
+	private StatusUpdatePublisher statusUpdatePublisher;
+	@Mock
+	private NotificationSender notificationSender;
+	@Mock
+	private SearchMetadataBatcher searchMetadataBatcher;
+	@Mock
+	private ContentSpool contentSpool;
+	@Mock
+	private S3ClientManager s3ClientManager;
+	@Mock
+	private PostGisStore postGisStore;
+	@Mock
+	private EventTypeCache eventTypeCache;
 
 	@InjectMocks
 	private IngestController ingestController;
@@ -125,6 +152,11 @@ public class ControllerTests {
 		// Verify
 		assertTrue(entity.getStatusCode().equals(HttpStatus.OK));
 		assertTrue(map.keySet().contains("jobs"));
+		assertTrue(map.keySet().contains("workloads"));
+		assertTrue(map.keySet().contains("pipeline"));
+		assertTrue(map.keySet().contains("activeThreads"));
+		assertTrue(map.keySet().contains("threadQueue"));
+		assertTrue(map.keySet().contains("eventTypes"));
 	}
 
 	/**
@@ -0,0 +1,91 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.messaging.EventTypeCache;
+
+/**
+ * Tests the caching of Workflow Event Type Ids
+ */
+public class EventTypeCacheTests {
+	private AtomicInteger fetchCount = new AtomicInteger(0);
+	private volatile boolean failFetch = false;
+	private EventTypeCache cache;
+
+	/**
+	 * Test initialization. The lookup from pz-workflow is replaced with a counter.
+	 */
+	@Before
+	public void setup() {
+		cache = new EventTypeCache() {
+			@Override
+			protected String fetchEventTypeId(String eventTypeName) throws IOException {
+				if (failFetch) {
+					throw new IOException("Workflow unavailable");
+				}
+				return String.format("%s-%s", eventTypeName, fetchCount.incrementAndGet());
+			}
+		};
+		ReflectionTestUtils.setField(cache, "cacheTtlSeconds", 300L);
+	}
+
+	/**
+	 * Tests that Ids are served from the cache until invalidated
+	 */
+	@Test
+	public void testCaching() throws Exception {
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-1"));
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-1"));
+		assertTrue(fetchCount.get() == 1);
+
+		// Invalidate; the next request reloads
+		cache.invalidate("piazza:ingest");
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-2"));
+		assertTrue(fetchCount.get() == 2);
+	}
+
+	/**
+	 * Tests that expired Ids are refreshed, and that a failed refresh serves the stale Id
+	 */
+	@Test
+	public void testExpiry() throws Exception {
+		ReflectionTestUtils.setField(cache, "cacheTtlSeconds", -1L);
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-1"));
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-2"));
+
+		// Refresh fails; the stale Id is still served
+		failFetch = true;
+		assertTrue(cache.getEventTypeId("piazza:ingest").equals("piazza:ingest-2"));
+
+		// Nothing cached, and the load fails
+		cache.invalidate("piazza:ingest");
+		try {
+			cache.getEventTypeId("piazza:ingest");
+			assertTrue(false);
+		} catch (IOException exception) {
+			assertTrue(exception.getMessage().equals("Workflow unavailable"));
+		}
+	}
+}
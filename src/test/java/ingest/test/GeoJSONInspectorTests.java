@@ -17,13 +17,29 @@ package ingest.test;
 
 import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ForkJoinPool;
+
+import org.apache.commons.io.IOUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.geotools.data.simple.SimpleFeatureIterator;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 
 import ingest.inspect.GeoJsonInspector;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
+import ingest.utility.GeoJsonFeatureCollection;
+import ingest.utility.GeoJsonSequenceCollection;
 import ingest.utility.IngestUtilities;
 import model.data.DataResource;
 import model.data.type.GeoJsonDataType;
@@ -41,6 +57,10 @@ public class GeoJSONInspectorTests {
 	private IngestUtilities ingestUtilities;
 	@Mock
 	private PiazzaLogger logger;
+	@Mock
+	private CpuBoundLimiter cpuBoundLimiter;
+	@Spy
+	private ContentSpool contentSpool = new ContentSpool();
 
 	@InjectMocks
 	private GeoJsonInspector inspector;
@@ -81,4 +101,181 @@ public class GeoJSONInspectorTests {
 		assertTrue(data.getSpatialMetadata().getMinY().equals(0.5));
 		assertTrue(data.getSpatialMetadata().getEpsgCode().equals(4326));
 	}
+
+	/**
+	 * Test inspecting newline-delimited GeoJSON
+	 */
+	@Test
+	public void testInspectSequence() throws Exception {
+		// Mock
+		((GeoJsonDataType) mockData.dataType).geoJsonContent = "{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {\"prop0\": \"value0\"}}\n{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [106.0,4]},\"properties\": {\"prop0\": \"value1\"}}\n";
+
+		// Test
+		DataResource data = inspector.inspect(mockData, true);
+
+		// Verify
+		assertTrue(data.getSpatialMetadata().getMaxX().equals(106.00));
+		assertTrue(data.getSpatialMetadata().getMaxY().equals(4.0));
+		assertTrue(data.getSpatialMetadata().getMinX().equals(102.0));
+		assertTrue(data.getSpatialMetadata().getMinY().equals(0.5));
+	}
+
+	/**
+	 * Test inspecting a single pretty-printed Feature, which is read whole rather than line by line
+	 */
+	@Test
+	public void testInspectMultilineFeature() throws Exception {
+		// Mock
+		((GeoJsonDataType) mockData.dataType).geoJsonContent = "{\n  \"type\": \"Feature\",\n  \"geometry\": {\n    \"type\": \"LineString\",\n    \"coordinates\": [[102.0, 0.5], [106.0, 4]]\n  },\n  \"properties\": {\n    \"prop0\": \"value0\"\n  }\n}\n";
+
+		// Test
+		DataResource data = inspector.inspect(mockData, true);
+
+		// Verify
+		assertTrue(data.getSpatialMetadata().getNumFeatures() == 1);
+		assertTrue(data.getSpatialMetadata().getMaxX().equals(106.00));
+		assertTrue(data.getSpatialMetadata().getMaxY().equals(4.0));
+		assertTrue(data.getSpatialMetadata().getMinX().equals(102.0));
+		assertTrue(data.getSpatialMetadata().getMinY().equals(0.5));
+	}
+
+	/**
+	 * Test inspecting a bare GeoJSON Geometry, which is read as a Feature without properties
+	 */
+	@Test
+	public void testInspectGeometry() throws Exception {
+		// Mock
+		((GeoJsonDataType) mockData.dataType).geoJsonContent = "{\n  \"type\": \"MultiPoint\",\n  \"coordinates\": [[102.0, 0.5], [106.0, 4]]\n}";
+
+		// Test
+		DataResource data = inspector.inspect(mockData, true);
+
+		// Verify
+		assertTrue(data.getSpatialMetadata().getNumFeatures() == 1);
+		assertTrue(data.getSpatialMetadata().getMaxX().equals(106.00));
+		assertTrue(data.getSpatialMetadata().getMinY().equals(0.5));
+	}
+
+	/**
+	 * Test parsing a GeoJSON Text Sequence in parallel batches
+	 */
+	@Test
+	public void testParallelSequence() throws Exception {
+		// Mock
+		final String sequence = "\u001e{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {}}\n\u001e{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [106.0,4]},\"properties\": {}}\n";
+		GeoJsonFeatureCollection.Source source = new GeoJsonFeatureCollection.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return IOUtils.toInputStream(sequence, "UTF-8");
+			}
+		};
+		ForkJoinPool parsePool = new ForkJoinPool(2);
+
+		try {
+			// Test; each record is parsed in a batch of its own
+			assertTrue(GeoJsonSequenceCollection.isSequence(source.open()));
+			SimpleFeatureType schema = GeoJsonSequenceCollection.inferSequenceSchema(source, "test", 10);
+			GeoJsonSequenceCollection features = new GeoJsonSequenceCollection(schema, source, parsePool, 1);
+
+			// Verify
+			assertTrue(features.size() == 2);
+			assertTrue(features.getBounds().getMinY() == 0.5);
+			assertTrue(features.getBounds().getMaxX() == 106.0);
+		} finally {
+			parsePool.shutdown();
+		}
+	}
+
+	/**
+	 * Test inferring the schema of streamed GeoJSON from its leading Features
+	 */
+	@Test
+	public void testInferSchema() throws Exception {
+		// Mock
+		final String geoJson = "{\"type\": \"FeatureCollection\",\"features\": [{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {\"count\": 1,\"size\": 2}},{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [106.0,4]},\"properties\": {\"count\": 3,\"size\": 2.5}}]}";
+		GeoJsonFeatureCollection.Source source = new GeoJsonFeatureCollection.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return IOUtils.toInputStream(geoJson, "UTF-8");
+			}
+		};
+
+		// Test
+		SimpleFeatureType schema = GeoJsonFeatureCollection.inferSchema(source, "test", 10);
+		GeoJsonFeatureCollection features = new GeoJsonFeatureCollection(schema, source);
+
+		// Verify
+		assertTrue(schema.getGeometryDescriptor() != null);
+		assertTrue(schema.getDescriptor("size").getType().getBinding().equals(Double.class));
+		assertTrue(features.size() == 2);
+		assertTrue(features.getBounds().getMaxX() == 106.0);
+	}
+
+	/**
+	 * Test parsing a GeoJSON file in parallel ranges
+	 */
+	@Test
+	public void testParallelParse() throws Exception {
+		// Mock
+		final File file = new File("tmp" + File.separator + "parallel.geojson");
+		file.getParentFile().mkdirs();
+		Files.write(file.toPath(), ((GeoJsonDataType) mockData.dataType).geoJsonContent.getBytes(StandardCharsets.UTF_8));
+		GeoJsonFeatureCollection.Source source = new GeoJsonFeatureCollection.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return Files.newInputStream(file.toPath());
+			}
+		};
+		ForkJoinPool parsePool = new ForkJoinPool(2);
+
+		try {
+			// Test; each Feature is parsed in a range of its own
+			SimpleFeatureType schema = GeoJsonFeatureCollection.inferSchema(source, "test", 10);
+			GeoJsonFeatureCollection features = new GeoJsonFeatureCollection(schema, source, file, parsePool, 1);
+
+			// Verify
+			assertTrue(features.size() == 2);
+			assertTrue(features.getBounds().getMinX() == 102.0);
+			assertTrue(features.getBounds().getMaxY() == 4.0);
+		} finally {
+			parsePool.shutdown();
+			file.delete();
+		}
+	}
+
+	/**
+	 * Test that Features after the sample that do not fit the inferred schema are retyped to it, and counted
+	 */
+	@Test
+	public void testSchemaMismatch() throws Exception {
+		// Mock
+		final String geoJson = "{\"type\": \"FeatureCollection\",\"features\": [{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [102.0,0.5]},\"properties\": {\"count\": 1,\"name\": \"first\"}},{\"type\": \"Feature\",\"geometry\": {\"type\": \"Point\",\"coordinates\": [106.0,4]},\"properties\": {\"count\": \"many\",\"name\": 2,\"extra\": true}}]}";
+		GeoJsonFeatureCollection.Source source = new GeoJsonFeatureCollection.Source() {
+			@Override
+			public InputStream open() throws IOException {
+				return IOUtils.toInputStream(geoJson, "UTF-8");
+			}
+		};
+
+		// Test; the schema is inferred from the first Feature only
+		SimpleFeatureType schema = GeoJsonFeatureCollection.inferSchema(source, "test", 1);
+		GeoJsonFeatureCollection features = new GeoJsonFeatureCollection(schema, source);
+		SimpleFeature last = null;
+		SimpleFeatureIterator iterator = features.features();
+		try {
+			while (iterator.hasNext()) {
+				last = iterator.next();
+			}
+		} finally {
+			iterator.close();
+		}
+
+		// Verify
+		assertTrue(schema.getDescriptor("extra") == null);
+		assertTrue("2".equals(last.getAttribute("name")));
+		assertTrue(last.getAttribute("count") == null);
+		assertTrue(features.getDroppedProperties() == 1);
+		assertTrue(features.getConvertedValues() == 1);
+		assertTrue(features.getDroppedValues() == 1);
+	}
 }
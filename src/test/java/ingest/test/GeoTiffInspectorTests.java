@@ -25,9 +25,13 @@ import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import ingest.inspect.GeoTiffInspector;
+import ingest.utility.ContentSpool;
+import ingest.utility.CpuBoundLimiter;
+import ingest.utility.S3ClientManager;
 import model.data.DataResource;
 import model.data.location.FolderShare;
 import model.data.type.RasterDataType;
@@ -43,6 +47,10 @@ import util.PiazzaLogger;
 public class GeoTiffInspectorTests {
 	@Mock
 	private PiazzaLogger logger;
+	@Mock
+	private CpuBoundLimiter cpuBoundLimiter;
+	@Spy
+	private ContentSpool contentSpool = new ContentSpool();
 	@InjectMocks
 	private GeoTiffInspector inspector;
 
@@ -54,6 +62,7 @@ public class GeoTiffInspectorTests {
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(contentSpool, "s3ClientManager", new S3ClientManager());
 
 		// Sample Data Resource to inspect
 		mockData = new DataResource();
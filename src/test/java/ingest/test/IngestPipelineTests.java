@@ -0,0 +1,171 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.messaging.IngestPipeline;
+import ingest.messaging.IngestWorker;
+import ingest.messaging.WorkloadExecutors;
+import ingest.model.IngestTask;
+import ingest.model.RunningJob;
+import ingest.model.WorkloadClass;
+
+/**
+ * Tests the handoff of Jobs between the stages of the Ingest pipeline
+ */
+public class IngestPipelineTests {
+	@Mock
+	private IngestWorker ingestWorker;
+	@Spy
+	private WorkloadExecutors workloadExecutors = new WorkloadExecutors();
+	@InjectMocks
+	private IngestPipeline pipeline;
+
+	/**
+	 * Test initialization. Each stage, and the lightweight workload class, has room for a single Job.
+	 */
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		for (String workload : new String[] { "raster", "vector", "remote", "light" }) {
+			ReflectionTestUtils.setField(workloadExecutors, workload + "Threads", 1);
+			ReflectionTestUtils.setField(workloadExecutors, workload + "Queue", 0);
+		}
+		ReflectionTestUtils.setField(workloadExecutors, "executionMode", "pooled");
+		workloadExecutors.initialize();
+
+		ReflectionTestUtils.setField(pipeline, "fetchThreads", 1);
+		ReflectionTestUtils.setField(pipeline, "fetchQueue", 1);
+		ReflectionTestUtils.setField(pipeline, "persistThreads", 1);
+		ReflectionTestUtils.setField(pipeline, "persistQueue", 0);
+		ReflectionTestUtils.setField(pipeline, "notifyThreads", 1);
+		ReflectionTestUtils.setField(pipeline, "notifyQueue", 0);
+		pipeline.initialize();
+	}
+
+	/**
+	 * Test cleanup
+	 */
+	@After
+	public void teardown() {
+		pipeline.shutdown();
+		workloadExecutors.shutdown();
+	}
+
+	/**
+	 * Tests that a Job waiting on a backlogged persist stage keeps its workload slot, so that further Jobs of its
+	 * workload class wait for admission instead of being failed by a full Thread Pool
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBackloggedPersist() throws Exception {
+		// Mock - the first Job to persist holds the persist stage until released
+		final CountDownLatch persisting = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				persisting.countDown();
+				release.await(10, TimeUnit.SECONDS);
+				return null;
+			}
+		}).when(ingestWorker).persist(any(IngestTask.class));
+
+		// The first Job reaches the persist stage, and holds it
+		submit("job-1", 0);
+		assertTrue(persisting.await(5, TimeUnit.SECONDS));
+
+		// The second Job is inspected, then waits on its workload Thread for room in the persist stage
+		submit("job-2", 1);
+		long deadline = System.currentTimeMillis() + 5000;
+		while (!Integer.valueOf(1).equals(((Map<String, Object>) pipeline.getStats().get("persist")).get("waitingToEnter"))) {
+			assertTrue(System.currentTimeMillis() < deadline);
+			Thread.sleep(10);
+		}
+
+		// The second Job still holds the only lightweight slot, so a third Job is not admitted
+		boolean rejected = false;
+		try {
+			submit("job-3", 2);
+		} catch (TaskRejectedException exception) {
+			rejected = true;
+		}
+		assertTrue(rejected);
+
+		// Drain the pipeline; no Job failed
+		release.countDown();
+		verify(ingestWorker, timeout(5000).times(2)).complete(any(IngestTask.class));
+		verify(ingestWorker, never()).handleFailure(any(IngestTask.class), any(Exception.class));
+		verify(ingestWorker, times(2)).inspect(any(IngestTask.class));
+		assertTrue(pipeline.getPendingCount() == 0);
+	}
+
+	/**
+	 * Tests that a Job aborted after it has been persisted, and reported as successful, is completed without being
+	 * reported as cancelled
+	 */
+	@Test
+	public void testAbortAfterPersist() throws Exception {
+		// Mock - the Job is aborted as soon as it has been persisted
+		final RunningJob runningJob = new RunningJob("job-1", null);
+		doAnswer(new Answer<Void>() {
+			@Override
+			public Void answer(InvocationOnMock invocation) throws Throwable {
+				runningJob.cancel();
+				return null;
+			}
+		}).when(ingestWorker).persist(any(IngestTask.class));
+
+		// Test
+		ConsumerRecord<String, String> consumerRecord = new ConsumerRecord<String, String>("IngestJob-unit-test", 0, 0, "job-1", "{}");
+		pipeline.submit(consumerRecord, null, runningJob, WorkloadClass.LIGHTWEIGHT);
+
+		// Verify
+		verify(ingestWorker, timeout(5000)).complete(any(IngestTask.class));
+		verify(ingestWorker, never()).handleFailure(any(IngestTask.class), any(Exception.class));
+		verify(ingestWorker, never()).sendNotifications(any(IngestTask.class));
+		assertTrue(pipeline.getPendingCount() == 0);
+	}
+
+	private void submit(String jobId, long offset) {
+		ConsumerRecord<String, String> consumerRecord = new ConsumerRecord<String, String>("IngestJob-unit-test", 0, offset, jobId, "{}");
+		pipeline.submit(consumerRecord, null, new RunningJob(jobId, null), WorkloadClass.LIGHTWEIGHT);
+	}
+}
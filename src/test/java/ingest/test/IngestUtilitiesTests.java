@@ -17,23 +17,54 @@ package ingest.test;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import java.io.File;
+import java.io.FileOutputStream;
+import java.net.URL;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
 
+import org.geotools.data.DataStore;
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Query;
+import org.geotools.data.memory.MemoryDataStore;
+import org.geotools.data.simple.SimpleFeatureCollection;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.opengis.referencing.FactoryException;
 import org.opengis.referencing.NoSuchAuthorityCodeException;
 import org.opengis.referencing.operation.TransformException;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.GeometryFactory;
 
+import ingest.persist.LoadCheckpoint;
+import ingest.persist.LoadCheckpointStore;
+import ingest.persist.PostGisCopyLoader;
+import ingest.persist.PostGisIndexer;
 import ingest.utility.IngestUtilities;
+import ingest.utility.S3ClientManager;
 import model.data.DataResource;
 import model.data.location.FolderShare;
 import model.data.type.RasterDataType;
@@ -43,6 +74,14 @@ import util.PiazzaLogger;
 public class IngestUtilitiesTests {
 	@Mock
 	private PiazzaLogger logger;
+	@Spy
+	private S3ClientManager s3ClientManager = new S3ClientManager();
+	@Mock
+	private PostGisCopyLoader copyLoader;
+	@Mock
+	private PostGisIndexer indexer;
+	@Mock
+	private LoadCheckpointStore checkpointStore;
 	@InjectMocks
 	private IngestUtilities utilities;
 
@@ -74,21 +113,129 @@ public class IngestUtilitiesTests {
 		assertTrue(fileSize == 90074);
 	}
 
+	/**
+	 * Tests that Features are inserted through the Feature Store when they cannot be loaded with COPY, and that deferred
+	 * spatial indexes are built afterwards
+	 */
+	@Test
+	public void testLoadFeaturesFallback() throws Exception {
+		// Mock
+		DataStore dataStore = new MemoryDataStore();
+		SimpleFeatureCollection features = createPoints(dataStore);
+		when(copyLoader.isEnabled()).thenReturn(true);
+		when(copyLoader.load(any(DataStore.class), anyString(), any(SimpleFeatureCollection.class)))
+				.thenThrow(new SQLException("COPY failed"));
+		when(indexer.dropSpatialIndexes(dataStore, "points")).thenReturn(true);
+
+		// Test
+		utilities.loadFeatures(dataStore, "points", features);
+
+		// Verify
+		assertTrue(dataStore.getFeatureSource("points").getCount(Query.ALL) == 2);
+		verify(indexer).buildSpatialIndexes(dataStore, "points");
+	}
+
+	/**
+	 * Tests that a checkpointed load that failed before committing any chunk is discarded and inserted instead, as it
+	 * has nothing to resume
+	 */
+	@Test
+	public void testCheckpointedLoadFallback() throws Exception {
+		// Mock
+		DataStore dataStore = new MemoryDataStore();
+		SimpleFeatureCollection features = createPoints(dataStore);
+		LoadCheckpoint checkpoint = new LoadCheckpoint("points", "hash", new HashSet<Integer>());
+		when(copyLoader.isEnabled()).thenReturn(true);
+		when(copyLoader.load(dataStore, "points", features, checkpoint)).thenThrow(new SQLException("COPY failed"));
+		when(checkpointStore.getCheckpoint(dataStore, "points", "hash")).thenReturn(checkpoint);
+
+		// Test
+		ReflectionTestUtils.invokeMethod(utilities, "loadFeatures", dataStore, "points", features, checkpoint);
+
+		// Verify
+		assertTrue(dataStore.getFeatureSource("points").getCount(Query.ALL) == 2);
+		verify(checkpointStore).clear(dataStore, "points");
+		verify(copyLoader).truncate(dataStore, "points");
+	}
+
+	/**
+	 * Tests that a checkpointed load that failed after committing a chunk is kept to be resumed, rather than redone
+	 */
+	@Test
+	public void testCheckpointedLoadFailure() throws Exception {
+		// Mock
+		DataStore dataStore = new MemoryDataStore();
+		SimpleFeatureCollection features = createPoints(dataStore);
+		LoadCheckpoint checkpoint = new LoadCheckpoint("points", "hash", new HashSet<Integer>());
+		when(copyLoader.isEnabled()).thenReturn(true);
+		when(copyLoader.load(dataStore, "points", features, checkpoint)).thenThrow(new SQLException("COPY failed"));
+		when(checkpointStore.getCheckpoint(dataStore, "points", "hash"))
+				.thenReturn(new LoadCheckpoint("points", "hash", new HashSet<Integer>(Arrays.asList(0))));
+
+		// Test
+		boolean failed = false;
+		try {
+			ReflectionTestUtils.invokeMethod(utilities, "loadFeatures", dataStore, "points", features, checkpoint);
+		} catch (Exception exception) {
+			failed = true;
+		}
+
+		// Verify
+		assertTrue(failed);
+		assertTrue(dataStore.getFeatureSource("points").getCount(Query.ALL) == 0);
+		verify(checkpointStore, never()).clear(any(DataStore.class), anyString());
+		verify(copyLoader, never()).truncate(any(DataStore.class), anyString());
+	}
+
+	/**
+	 * Creates a points table in the Data Store, and returns two Features for it
+	 */
+	private SimpleFeatureCollection createPoints(DataStore dataStore) throws Exception {
+		SimpleFeatureType featureType = DataUtilities.createType("points", "the_geom:Point:srid=4326,name:String");
+		dataStore.createSchema(featureType);
+		SimpleFeatureBuilder featureBuilder = new SimpleFeatureBuilder(featureType);
+		GeometryFactory geometryFactory = JTSFactoryFinder.getGeometryFactory();
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		for (int i = 0; i < 2; i++) {
+			featureBuilder.add(geometryFactory.createPoint(new Coordinate(i, i)));
+			featureBuilder.add("point" + i);
+			features.add(featureBuilder.buildFeature(null));
+		}
+		return DataUtilities.collection(features);
+	}
+
 	/**
 	 * Test factory method to generate AWS Client
 	 */
 	@Test
 	public void testAwsClient() {
 		// Test default client
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_ACCESS_KEY", "");
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_PRIVATE_KEY", "");
+		initializeS3ClientManager("", "");
 		AmazonS3 client = utilities.getAwsClient();
 		assertTrue(client != null);
+		s3ClientManager.shutdown();
 
 		// Test client with creds
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_ACCESS_KEY", "access");
-		ReflectionTestUtils.setField(utilities, "AMAZONS3_PRIVATE_KEY", "private");
+		initializeS3ClientManager("access", "private");
 		client = utilities.getAwsClient();
+		assertTrue(client != null);
+		s3ClientManager.shutdown();
+	}
+
+	/**
+	 * Initializes the shared S3 client with the credentials
+	 */
+	private void initializeS3ClientManager(String accessKey, String privateKey) {
+		ReflectionTestUtils.setField(s3ClientManager, "AMAZONS3_ACCESS_KEY", accessKey);
+		ReflectionTestUtils.setField(s3ClientManager, "AMAZONS3_PRIVATE_KEY", privateKey);
+		ReflectionTestUtils.setField(s3ClientManager, "maxConnections", 10);
+		ReflectionTestUtils.setField(s3ClientManager, "connectionTimeoutMillis", 1000);
+		ReflectionTestUtils.setField(s3ClientManager, "socketTimeoutMillis", 1000);
+		ReflectionTestUtils.setField(s3ClientManager, "connectionTtlMillis", 60000L);
+		ReflectionTestUtils.setField(s3ClientManager, "transferThreads", 2);
+		ReflectionTestUtils.setField(s3ClientManager, "multipartThresholdBytes", 16777216L);
+		ReflectionTestUtils.setField(s3ClientManager, "multipartPartBytes", 5242880L);
+		s3ClientManager.initialize();
 	}
 
 	/**
@@ -121,4 +268,36 @@ public class IngestUtilitiesTests {
 		assertEquals(projected.getMinY().doubleValue(), 0.0, 0.001);
 		assertEquals(projected.getMaxY().doubleValue(), 0.99712996, 0.001);
 	}
+
+	/**
+	 * Tests finding a Shapefile that can be read in place from its zip
+	 */
+	@Test
+	public void testFindArchivedShapefile() throws Exception {
+		// Test
+		File shapefileZip = new File("src" + File.separator + "test" + File.separator + "resources" + File.separator + "TestShape.zip");
+		URL shapefileUrl = utilities.findArchivedShapefile(shapefileZip);
+
+		// Verify
+		assertTrue(shapefileUrl != null);
+		assertTrue(shapefileUrl.getProtocol().equals("jar"));
+		assertTrue(shapefileUrl.toString().endsWith("!/test.shp"));
+		utilities.releaseArchivedShapefile(shapefileUrl);
+
+		// Mock - Shapefile entries in a folder are extracted instead
+		File nestedZip = File.createTempFile("nested", ".zip");
+		try {
+			try (ZipOutputStream zipOutputStream = new ZipOutputStream(new FileOutputStream(nestedZip))) {
+				zipOutputStream.putNextEntry(new ZipEntry("folder/test.shp"));
+				zipOutputStream.closeEntry();
+				zipOutputStream.putNextEntry(new ZipEntry("folder/test.shx"));
+				zipOutputStream.closeEntry();
+			}
+
+			// Verify
+			assertTrue(utilities.findArchivedShapefile(nestedZip) == null);
+		} finally {
+			nestedZip.delete();
+		}
+	}
 }
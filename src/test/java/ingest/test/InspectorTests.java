@@ -15,6 +15,7 @@
  **/
 package ingest.test;
 
+import static org.junit.Assert.assertTrue;
 import ingest.inspect.GeoJsonInspector;
 import ingest.inspect.GeoTiffInspector;
 import ingest.inspect.Inspector;
@@ -22,9 +23,13 @@ import ingest.inspect.PointCloudInspector;
 import ingest.inspect.ShapefileInspector;
 import ingest.inspect.TextInspector;
 import ingest.inspect.WfsInspector;
+import ingest.model.WorkloadClass;
 import ingest.persist.PersistMetadata;
 import model.data.DataResource;
+import model.data.type.GeoJsonDataType;
+import model.data.type.RasterDataType;
 import model.data.type.TextDataType;
+import model.data.type.WfsDataType;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -78,4 +83,25 @@ public class InspectorTests {
 		// Test
 		inspector.inspect(mockData, true);
 	}
+
+	/**
+	 * Test the workload class that Data is routed to
+	 */
+	@Test
+	public void testWorkloadClass() {
+		// Text is always lightweight
+		assertTrue(inspector.getWorkloadClass(mockData, true) == WorkloadClass.LIGHTWEIGHT);
+
+		// Rasters
+		mockData.dataType = new RasterDataType();
+		assertTrue(inspector.getWorkloadClass(mockData, false) == WorkloadClass.RASTER);
+
+		// Hosted vectors, or metadata only
+		mockData.dataType = new GeoJsonDataType();
+		assertTrue(inspector.getWorkloadClass(mockData, true) == WorkloadClass.VECTOR_HOSTING);
+		assertTrue(inspector.getWorkloadClass(mockData, false) == WorkloadClass.LIGHTWEIGHT);
+		mockData.dataType = new WfsDataType();
+		assertTrue(inspector.getWorkloadClass(mockData, true) == WorkloadClass.VECTOR_HOSTING);
+		assertTrue(inspector.getWorkloadClass(mockData, false) == WorkloadClass.REMOTE_METADATA);
+	}
 }
@@ -0,0 +1,77 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.geotools.data.DataUtilities;
+import org.junit.Before;
+import org.junit.Test;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.persist.LoadCheckpoint;
+import ingest.persist.LoadCheckpointStore;
+
+/**
+ * Tests the identification of checkpointed loads
+ */
+public class LoadCheckpointStoreTests {
+	private LoadCheckpointStore checkpointStore;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		checkpointStore = new LoadCheckpointStore();
+		ReflectionTestUtils.setField(checkpointStore, "chunkFeatures", 10000);
+	}
+
+	/**
+	 * Tests that a load is only resumed with the same schema and chunk size it was checkpointed with
+	 */
+	@Test
+	public void testSchemaHash() throws Exception {
+		SimpleFeatureType schema = DataUtilities.createType("staging_test", "the_geom:Point:srid=4326,name:String");
+		SimpleFeatureType otherSchema = DataUtilities.createType("staging_test", "the_geom:Point:srid=4326,name:Integer");
+
+		String hash = checkpointStore.getSchemaHash(schema);
+		assertTrue(hash.length() == 64);
+		assertTrue(hash.equals(checkpointStore.getSchemaHash(DataUtilities.createType("staging_test",
+				"the_geom:Point:srid=4326,name:String"))));
+		assertTrue(hash.equals(checkpointStore.getSchemaHash(otherSchema)) == false);
+
+		ReflectionTestUtils.setField(checkpointStore, "chunkFeatures", 5000);
+		assertTrue(hash.equals(checkpointStore.getSchemaHash(schema)) == false);
+	}
+
+	/**
+	 * Tests the committed chunks of a checkpoint
+	 */
+	@Test
+	public void testCheckpoint() {
+		LoadCheckpoint checkpoint = new LoadCheckpoint("test", "hash", new HashSet<Integer>(Arrays.asList(0, 2)));
+		assertTrue(checkpoint.isResumed());
+		assertTrue(checkpoint.isCommitted(0));
+		assertTrue(checkpoint.isCommitted(1) == false);
+		assertTrue(checkpoint.isCommitted(2));
+		assertTrue(new LoadCheckpoint("test", "hash", new HashSet<Integer>()).isResumed() == false);
+	}
+}
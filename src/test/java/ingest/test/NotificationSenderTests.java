@@ -0,0 +1,243 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import ingest.messaging.NotificationSender;
+import ingest.utility.CircuitBreaker;
+
+/**
+ * Tests the concurrent sending of notifications, with retries, timeouts and circuit breakers
+ */
+public class NotificationSenderTests {
+	private NotificationSender sender;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		sender = new NotificationSender();
+		ReflectionTestUtils.setField(sender, "notifyThreads", 2);
+		ReflectionTestUtils.setField(sender, "notifyQueue", 10);
+		ReflectionTestUtils.setField(sender, "searchTimeoutMillis", 200L);
+		ReflectionTestUtils.setField(sender, "workflowTimeoutMillis", 5000L);
+		ReflectionTestUtils.setField(sender, "retryAttempts", 3);
+		ReflectionTestUtils.setField(sender, "retryBackoffMillis", 1L);
+		ReflectionTestUtils.setField(sender, "circuitFailureThreshold", 3);
+		ReflectionTestUtils.setField(sender, "circuitOpenMillis", 60000L);
+		sender.initialize();
+	}
+
+	/**
+	 * Test cleanup
+	 */
+	@After
+	public void teardown() {
+		sender.shutdown();
+	}
+
+	/**
+	 * Tests that unavailable targets are retried until the circuit opens, and then fail immediately
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRetryAndCircuitBreaker() {
+		final AtomicInteger attempts = new AtomicInteger(0);
+		Map<String, Callable<?>> notifications = new HashMap<String, Callable<?>>();
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				attempts.incrementAndGet();
+				throw new ResourceAccessException("Connection refused");
+			}
+		});
+
+		// Every attempt fails, opening the circuit
+		Map<String, Exception> failures = sender.sendAll(notifications);
+		assertTrue(failures.get(NotificationSender.WORKFLOW_TARGET) instanceof ResourceAccessException);
+		assertTrue(attempts.get() == 3);
+		Map<String, Object> workflowStats = (Map<String, Object>) sender.getStats().get(NotificationSender.WORKFLOW_TARGET);
+		assertTrue(workflowStats.get("state").equals(CircuitBreaker.State.OPEN.toString()));
+
+		// The open circuit fails without an attempt
+		failures = sender.sendAll(notifications);
+		assertTrue(failures.containsKey(NotificationSender.WORKFLOW_TARGET));
+		assertTrue(attempts.get() == 3);
+	}
+
+	/**
+	 * Tests that rejected requests are not retried, and slow targets time out without holding up the others
+	 */
+	@Test
+	public void testRejectionAndTimeout() {
+		final AtomicInteger attempts = new AtomicInteger(0);
+		Map<String, Callable<?>> notifications = new HashMap<String, Callable<?>>();
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				attempts.incrementAndGet();
+				throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+			}
+		});
+		notifications.put(NotificationSender.SEARCH_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				Thread.sleep(10000);
+				return null;
+			}
+		});
+
+		long startTime = System.currentTimeMillis();
+		Map<String, Exception> failures = sender.sendAll(notifications);
+		assertTrue(System.currentTimeMillis() - startTime < 5000);
+		assertTrue(attempts.get() == 1);
+		assertTrue(failures.get(NotificationSender.WORKFLOW_TARGET) instanceof HttpClientErrorException);
+		assertTrue(failures.containsKey(NotificationSender.SEARCH_TARGET));
+		assertTrue(sender.getStats().get("timeouts").equals(1L));
+	}
+
+	/**
+	 * Tests that a timed out notification counts once toward opening the circuit, even though its interrupted request
+	 * then fails as well
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testTimeoutCountedOnce() throws Exception {
+		final CountDownLatch interrupted = new CountDownLatch(1);
+		Map<String, Callable<?>> notifications = new HashMap<String, Callable<?>>();
+		notifications.put(NotificationSender.SEARCH_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				try {
+					Thread.sleep(10000);
+				} catch (InterruptedException exception) {
+					// As an HTTP client reports an interrupted read
+					Thread.currentThread().interrupt();
+					interrupted.countDown();
+					throw new ResourceAccessException("Read interrupted");
+				}
+				return null;
+			}
+		});
+
+		Map<String, Exception> failures = sender.sendAll(notifications);
+		assertTrue(failures.containsKey(NotificationSender.SEARCH_TARGET));
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+
+		// Only the timeout was recorded, and the request was not retried
+		Map<String, Object> searchStats = (Map<String, Object>) sender.getStats().get(NotificationSender.SEARCH_TARGET);
+		assertTrue(searchStats.get("consecutiveFailures").equals(1));
+	}
+
+	/**
+	 * Tests that an interrupted trial call of a half-open circuit does not keep the circuit from allowing another
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testInterruptedTrial() throws Exception {
+		sender.shutdown();
+		ReflectionTestUtils.setField(sender, "circuitFailureThreshold", 1);
+		ReflectionTestUtils.setField(sender, "circuitOpenMillis", 50L);
+		sender.initialize();
+
+		// Open the circuit
+		Map<String, Callable<?>> notifications = new HashMap<String, Callable<?>>();
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				throw new ResourceAccessException("Connection refused");
+			}
+		});
+		sender.sendAll(notifications);
+		Thread.sleep(100);
+
+		// The trial call is interrupted
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				throw new InterruptedException();
+			}
+		});
+		Map<String, Exception> failures = sender.sendAll(notifications);
+		assertTrue(failures.get(NotificationSender.WORKFLOW_TARGET) instanceof InterruptedException);
+
+		// Another trial is allowed, and closes the circuit
+		final AtomicInteger attempts = new AtomicInteger(0);
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				attempts.incrementAndGet();
+				return null;
+			}
+		});
+		failures = sender.sendAll(notifications);
+		assertTrue(failures.isEmpty());
+		assertTrue(attempts.get() == 1);
+		Map<String, Object> workflowStats = (Map<String, Object>) sender.getStats().get(NotificationSender.WORKFLOW_TARGET);
+		assertTrue(workflowStats.get("state").equals(CircuitBreaker.State.CLOSED.toString()));
+	}
+
+	/**
+	 * Tests that notifications fail immediately once every Thread is busy and the queue is full
+	 */
+	@Test
+	public void testBoundedQueue() throws Exception {
+		sender.shutdown();
+		ReflectionTestUtils.setField(sender, "notifyThreads", 1);
+		ReflectionTestUtils.setField(sender, "notifyQueue", 0);
+		sender.initialize();
+
+		Map<String, Callable<?>> notifications = new LinkedHashMap<String, Callable<?>>();
+		notifications.put(NotificationSender.WORKFLOW_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				Thread.sleep(500);
+				return null;
+			}
+		});
+		notifications.put(NotificationSender.SEARCH_TARGET, new Callable<Object>() {
+			@Override
+			public Object call() throws Exception {
+				return null;
+			}
+		});
+
+		// The single Thread is busy with the first notification, and nothing may queue behind it
+		Map<String, Exception> failures = sender.sendAll(notifications);
+		assertTrue(failures.get(NotificationSender.SEARCH_TARGET) instanceof TaskRejectedException);
+		assertTrue(failures.containsKey(NotificationSender.WORKFLOW_TARGET) == false);
+	}
+}
@@ -0,0 +1,122 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.Before;
+import org.junit.Test;
+
+import ingest.messaging.PartitionOffsetTracker;
+
+/**
+ * Tests the tracking of committable offsets for out-of-order Job completion
+ */
+public class OffsetTrackerTests {
+	private PartitionOffsetTracker tracker;
+	private TopicPartition partition = new TopicPartition("IngestJob-unit-test", 0);
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		tracker = new PartitionOffsetTracker();
+	}
+
+	/**
+	 * Tests that only the highest contiguous completed offset is committable
+	 */
+	@Test
+	public void testOutOfOrderCompletion() {
+		// Dispatch three records
+		long generation = tracker.dispatched(partition, 10);
+		tracker.dispatched(partition, 11);
+		tracker.dispatched(partition, 12);
+		assertTrue(tracker.getInFlightCount() == 3);
+
+		// Nothing has completed; the first record is still in flight
+		Map<TopicPartition, OffsetAndMetadata> offsets = tracker.getCommittableOffsets();
+		assertTrue(offsets.get(partition).offset() == 10);
+		tracker.markCommitted(offsets);
+		assertTrue(tracker.getCommittableOffsets().isEmpty());
+
+		// Later records complete first; the offset cannot advance
+		tracker.completed(partition, 12, generation);
+		tracker.completed(partition, 11, generation);
+		assertTrue(tracker.getCommittableOffsets().isEmpty());
+
+		// The first record completes; commit past all three
+		tracker.completed(partition, 10, generation);
+		offsets = tracker.getCommittableOffsets();
+		assertTrue(offsets.get(partition).offset() == 13);
+		assertTrue(tracker.getInFlightCount() == 0);
+
+		// Duplicate completions are ignored
+		tracker.markCommitted(offsets);
+		tracker.completed(partition, 10, generation);
+		assertTrue(tracker.getCommittableOffsets().isEmpty());
+	}
+
+	/**
+	 * Tests that revoked partitions are no longer tracked
+	 */
+	@Test
+	public void testRevokedPartitions() {
+		TopicPartition otherPartition = new TopicPartition("IngestJob-unit-test", 1);
+		long generation = tracker.dispatched(partition, 5);
+		long otherGeneration = tracker.dispatched(otherPartition, 7);
+
+		// Revoke the first partition while its record is in flight
+		int handedOff = tracker.removePartitions(Arrays.asList(partition));
+		assertTrue(handedOff == 1);
+
+		// Completion of the revoked record is ignored
+		tracker.completed(partition, 5, generation);
+		tracker.completed(otherPartition, 7, otherGeneration);
+		Map<TopicPartition, OffsetAndMetadata> offsets = tracker.getCommittableOffsets();
+		assertTrue(offsets.size() == 1);
+		assertTrue(offsets.get(otherPartition).offset() == 8);
+	}
+
+	/**
+	 * Tests that a Job from an earlier assignment of a partition cannot complete the redelivery of its record
+	 */
+	@Test
+	public void testReassignedPartition() {
+		long generation = tracker.dispatched(partition, 5);
+
+		// Revoke the partition, then assign it back; the record is redelivered
+		tracker.removePartitions(Arrays.asList(partition));
+		long redeliveredGeneration = tracker.dispatched(partition, 5);
+		assertTrue(redeliveredGeneration != generation);
+
+		// The late completion of the first delivery is ignored
+		tracker.completed(partition, 5, generation);
+		assertTrue(tracker.getInFlightCount() == 1);
+		assertTrue(tracker.getCommittableOffsets().get(partition).offset() == 5);
+
+		// The redelivery completes
+		tracker.completed(partition, 5, redeliveredGeneration);
+		assertTrue(tracker.getInFlightCount() == 0);
+		assertTrue(tracker.getCommittableOffsets().get(partition).offset() == 6);
+	}
+}
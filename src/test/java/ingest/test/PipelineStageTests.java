@@ -0,0 +1,90 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import ingest.messaging.PipelineStage;
+
+/**
+ * Tests the bounded handoff between stages of the Ingest pipeline
+ */
+public class PipelineStageTests {
+	private PipelineStage stage;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		stage = new PipelineStage("unit-test", 1, 1);
+	}
+
+	/**
+	 * Test cleanup
+	 */
+	@After
+	public void teardown() {
+		stage.shutdown();
+	}
+
+	/**
+	 * Tests that a full stage rejects offered work, and accepts it again once drained
+	 */
+	@Test
+	public void testBoundedCapacity() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch finished = new CountDownLatch(2);
+		Runnable blockingTask = new Runnable() {
+			@Override
+			public void run() {
+				try {
+					release.await();
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+				finished.countDown();
+			}
+		};
+
+		// One Job runs and one waits; a third does not fit
+		assertTrue(stage.offer(blockingTask));
+		assertTrue(stage.offer(blockingTask));
+		assertTrue(stage.getOccupancy() == 2);
+		assertTrue(stage.offer(blockingTask) == false);
+
+		// Drain the stage
+		release.countDown();
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+		// Room is available once more
+		final CountDownLatch accepted = new CountDownLatch(1);
+		stage.put(new Runnable() {
+			@Override
+			public void run() {
+				accepted.countDown();
+			}
+		});
+		assertTrue(accepted.await(5, TimeUnit.SECONDS));
+	}
+}
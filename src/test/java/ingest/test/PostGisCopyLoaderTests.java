@@ -0,0 +1,253 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.Date;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.geotools.data.DataUtilities;
+import org.geotools.data.Transaction;
+import org.geotools.feature.simple.SimpleFeatureBuilder;
+import org.geotools.geometry.jts.JTSFactoryFinder;
+import org.geotools.jdbc.JDBCDataStore;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Point;
+
+import ingest.persist.ChunkTracker;
+import ingest.persist.PostGisCopyLoader;
+
+/**
+ * Tests loading Features into PostGIS with a binary COPY
+ */
+public class PostGisCopyLoaderTests {
+	private PostGisCopyLoader copyLoader;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		copyLoader = new PostGisCopyLoader();
+	}
+
+	/**
+	 * Stops any writer threads
+	 */
+	@After
+	public void teardown() {
+		copyLoader.shutdown();
+	}
+
+	/**
+	 * Tests the binary COPY encoding of each supported column type, nulls, and the EWKB header with the SRID of the
+	 * geometry column
+	 */
+	@Test
+	public void testEncoding() throws Exception {
+		// Mock
+		SimpleFeatureType schema = DataUtilities.createType("points",
+				"the_geom:Point,name:String,count:Integer,day:java.sql.Date,time:java.sql.Timestamp");
+		schema.getDescriptor("the_geom").getUserData().put(JDBCDataStore.JDBC_NATIVE_SRID, 4326);
+		Point point = JTSFactoryFinder.getGeometryFactory().createPoint(new Coordinate(1, 2));
+		SimpleFeature feature = SimpleFeatureBuilder.build(schema,
+				new Object[] { point, "abc", 7, Date.valueOf("2000-01-02"), Timestamp.valueOf("2000-01-01 00:00:01") }, null);
+		SimpleFeature nullFeature = SimpleFeatureBuilder.build(schema, new Object[] { null, null, null, null, null }, null);
+
+		// Test
+		List<?> columns = ReflectionTestUtils.invokeMethod(copyLoader, "getColumns", schema);
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		long count = ReflectionTestUtils.invokeMethod(copyLoader, "writeFeatures", new DataOutputStream(actual), columns,
+				DataUtilities.collection(Arrays.asList(feature, nullFeature)));
+
+		// Verify
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(expected);
+		output.write(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xFF, '\r', '\n', 0 });
+		output.writeInt(0);
+		output.writeInt(0);
+		// EWKB point: big-endian, the point type with the SRID flag, the SRID, and the coordinates
+		output.writeShort(5);
+		output.writeInt(25);
+		output.writeByte(0);
+		output.writeInt(0x20000001);
+		output.writeInt(4326);
+		output.writeDouble(1);
+		output.writeDouble(2);
+		output.writeInt(3);
+		output.write("abc".getBytes(StandardCharsets.UTF_8));
+		output.writeInt(4);
+		output.writeInt(7);
+		// One day, and one second in microseconds, after 2000-01-01
+		output.writeInt(4);
+		output.writeInt(1);
+		output.writeInt(8);
+		output.writeLong(1000000L);
+		// Nulls
+		output.writeShort(5);
+		for (int column = 0; column < 5; column++) {
+			output.writeInt(-1);
+		}
+		output.writeShort(-1);
+
+		assertTrue(count == 2);
+		assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+		// The source geometry is not changed
+		assertTrue(point.getSRID() == 0);
+	}
+
+	/**
+	 * Tests that abandoning a load stops further chunks from starting, and waits for the chunks that started
+	 */
+	@Test
+	public void testChunkTracker() throws Exception {
+		// Mock
+		final ChunkTracker tracker = new ChunkTracker();
+		final AtomicBoolean awaited = new AtomicBoolean(false);
+		assertTrue(tracker.begin());
+
+		// Test
+		Thread abandon = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					tracker.abortAndAwait();
+					awaited.set(true);
+				} catch (InterruptedException exception) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		});
+		abandon.start();
+		Thread.sleep(500);
+
+		// Verify; the started chunk holds the abandon until it ends
+		assertTrue(awaited.get() == false);
+		assertTrue(tracker.begin() == false);
+		tracker.end();
+		abandon.join(5000);
+		assertTrue(awaited.get());
+	}
+
+	/**
+	 * Tests that when a chunk fails, the load waits for the chunks still writing before it truncates the table and
+	 * returns
+	 */
+	@Test
+	public void testFailedChunk() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(copyLoader, "writers", 2);
+		ReflectionTestUtils.setField(copyLoader, "chunkFeatures", 1);
+		copyLoader.initialize();
+		SimpleFeatureType schema = DataUtilities.createType("points", "name:String");
+		List<SimpleFeature> features = new ArrayList<SimpleFeature>();
+		for (int i = 0; i < 3; i++) {
+			features.add(SimpleFeatureBuilder.build(schema, new Object[] { "point" + i }, null));
+		}
+		JDBCDataStore jdbcStore = mock(JDBCDataStore.class);
+		Connection connection = mock(Connection.class, withSettings().extraInterfaces(PGConnection.class));
+		CopyManager copyManager = mock(CopyManager.class);
+		Statement statement = mock(Statement.class);
+		when(jdbcStore.getSchema("points")).thenReturn(schema);
+		when(jdbcStore.getDatabaseSchema()).thenReturn("public");
+		when(jdbcStore.getConnection(Transaction.AUTO_COMMIT)).thenReturn(connection);
+		when(((PGConnection) connection).getCopyAPI()).thenReturn(copyManager);
+		when(connection.createStatement()).thenReturn(statement);
+
+		// The first COPY fails once the second has started; the second is still writing when it does
+		final CountDownLatch slowStarted = new CountDownLatch(1);
+		final AtomicBoolean slowFinished = new AtomicBoolean(false);
+		final CopyIn failingCopy = mock(CopyIn.class);
+		when(failingCopy.endCopy()).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(InvocationOnMock invocation) throws Throwable {
+				slowStarted.await(5, TimeUnit.SECONDS);
+				throw new SQLException("COPY failed");
+			}
+		});
+		final CopyIn slowCopy = mock(CopyIn.class);
+		when(slowCopy.endCopy()).thenAnswer(new Answer<Long>() {
+			@Override
+			public Long answer(InvocationOnMock invocation) throws Throwable {
+				slowStarted.countDown();
+				Thread.sleep(500);
+				slowFinished.set(true);
+				return 1L;
+			}
+		});
+		final AtomicInteger copies = new AtomicInteger(0);
+		when(copyManager.copyIn(anyString())).thenAnswer(new Answer<CopyIn>() {
+			@Override
+			public CopyIn answer(InvocationOnMock invocation) throws Throwable {
+				int copy = copies.getAndIncrement();
+				return (copy == 0) ? failingCopy : (copy == 1) ? slowCopy : mock(CopyIn.class);
+			}
+		});
+		final AtomicBoolean truncatedAfterCopies = new AtomicBoolean(false);
+		when(statement.execute(anyString())).thenAnswer(new Answer<Boolean>() {
+			@Override
+			public Boolean answer(InvocationOnMock invocation) throws Throwable {
+				truncatedAfterCopies.set(slowFinished.get());
+				return false;
+			}
+		});
+
+		// Test
+		boolean failed = false;
+		try {
+			copyLoader.load(jdbcStore, "points", DataUtilities.collection(features));
+		} catch (SQLException exception) {
+			failed = true;
+		}
+
+		// Verify
+		assertTrue(failed);
+		assertTrue(slowFinished.get());
+		verify(statement).execute("TRUNCATE \"public\".\"points\"");
+		assertTrue(truncatedAfterCopies.get());
+	}
+}
@@ -0,0 +1,83 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.geotools.data.Transaction;
+import org.geotools.jdbc.JDBCDataStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.persist.PostGisStore;
+
+/**
+ * Tests the management of PostGIS tables
+ */
+public class PostGisStoreTests {
+	private PostGisStore postGis;
+	private Connection connection;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() throws Exception {
+		postGis = new PostGisStore();
+		JDBCDataStore jdbcStore = mock(JDBCDataStore.class);
+		connection = mock(Connection.class);
+		when(jdbcStore.getConnection(Transaction.AUTO_COMMIT)).thenReturn(connection);
+		ReflectionTestUtils.setField(postGis, "POSTGRES_SCHEMA", "public");
+		ReflectionTestUtils.setField(postGis, "dataStore", jdbcStore);
+	}
+
+	/**
+	 * Tests that publishing a staging table renames it, and the spatial indexes named after it, in one transaction
+	 */
+	@Test
+	public void testPublishTable() throws Exception {
+		// Mock
+		PreparedStatement query = mock(PreparedStatement.class);
+		ResultSet results = mock(ResultSet.class);
+		Statement statement = mock(Statement.class);
+		when(connection.prepareStatement(anyString())).thenReturn(query);
+		when(query.executeQuery()).thenReturn(results);
+		when(results.next()).thenReturn(true, true, false);
+		when(results.getString(1)).thenReturn("spatial_staging_abc_the_geom", "points_pkey");
+		when(connection.createStatement()).thenReturn(statement);
+
+		// Test
+		postGis.publishTable("staging_abc", "abc");
+
+		// Verify
+		verify(connection).setAutoCommit(false);
+		verify(statement).execute("ALTER TABLE \"public\".\"staging_abc\" RENAME TO \"abc\"");
+		verify(statement).execute("ALTER INDEX \"public\".\"spatial_staging_abc_the_geom\" RENAME TO \"spatial_abc_the_geom\"");
+		verify(statement, never()).execute("ALTER INDEX \"public\".\"points_pkey\" RENAME TO \"points_pkey\"");
+		verify(connection).commit();
+		verify(connection).setAutoCommit(true);
+	}
+}
@@ -0,0 +1,93 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Future;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import ingest.messaging.RunningJobRegistry;
+import ingest.model.RunningJob;
+import messaging.job.WorkerCallback;
+
+/**
+ * Tests the registry of running Ingest Jobs
+ */
+public class RunningJobRegistryTests {
+	private RunningJobRegistry registry;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		registry = new RunningJobRegistry();
+	}
+
+	/**
+	 * Tests registering, updating and completing a Job
+	 */
+	@Test
+	public void testLifecycle() {
+		// Register
+		WorkerCallback callback = mock(WorkerCallback.class);
+		registry.register("123456", callback);
+		registry.setStage("123456", RunningJob.Stage.INSPECTING);
+		registry.addBytesProcessed("123456", 1024);
+
+		// Verify the snapshot
+		List<Map<String, Object>> snapshot = registry.getSnapshot();
+		assertTrue(snapshot.size() == 1);
+		assertTrue(snapshot.get(0).get("stage").equals("INSPECTING"));
+		assertTrue(snapshot.get(0).get("bytesProcessed").equals(1024L));
+
+		// A completion from a different delivery does not remove the Job
+		registry.remove("123456", mock(WorkerCallback.class));
+		assertTrue(registry.size() == 1);
+
+		// Complete
+		registry.remove("123456", callback);
+		assertTrue(registry.size() == 0);
+		assertTrue(registry.getJobIds().isEmpty());
+	}
+
+	/**
+	 * Tests aborting a Job before its Future has been attached
+	 */
+	@Test
+	public void testAbortBeforeDispatch() {
+		RunningJob job = registry.register("123456", mock(WorkerCallback.class));
+
+		// Abort
+		RunningJob aborted = registry.abort("123456");
+		assertTrue(aborted == job);
+		assertTrue(aborted.isCancelled());
+		assertTrue(registry.get("123456") == null);
+		assertTrue(registry.abort("123456") == null);
+
+		// The Future is cancelled as soon as it is attached
+		Future<?> future = mock(Future.class);
+		job.attach(future);
+		verify(future).cancel(true);
+	}
+}
@@ -0,0 +1,179 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import ingest.messaging.SearchMetadataBatcher;
+import model.data.DataResource;
+import model.job.type.SearchMetadataIngestJob;
+import model.response.PiazzaResponse;
+
+/**
+ * Tests the batching of metadata sent to pz-search
+ */
+public class SearchMetadataBatcherTests {
+	private static final String BULK_URL = "http://search/api/v1/data/bulk";
+	private static final String SINGLE_URL = "http://search/api/v1/data/";
+
+	@Mock
+	private RestTemplate restTemplate;
+	@InjectMocks
+	private SearchMetadataBatcher batcher;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(batcher, "SEARCH_URL", "http://search");
+		ReflectionTestUtils.setField(batcher, "SEARCH_ENDPOINT", "api/v1/data");
+		ReflectionTestUtils.setField(batcher, "SEARCH_BULK_ENDPOINT", "api/v1/data/bulk");
+		ReflectionTestUtils.setField(batcher, "batchMaxItems", 3);
+		ReflectionTestUtils.setField(batcher, "batchLingerMillis", 2000L);
+		ReflectionTestUtils.setField(batcher, "batchSenders", 1);
+		ReflectionTestUtils.setField(batcher, "bulkRetryMillis", 600000L);
+		batcher.initialize();
+	}
+
+	/**
+	 * Test cleanup
+	 */
+	@After
+	public void teardown() {
+		batcher.shutdown();
+	}
+
+	/**
+	 * Tests that a full batch is sent in a single bulk request
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testBulkSend() throws Exception {
+		when(restTemplate.postForEntity(eq(BULK_URL), any(HttpEntity.class), eq(String.class)))
+				.thenReturn(new ResponseEntity<String>(HttpStatus.OK));
+
+		List<Future<Void>> futures = submitBatch();
+		for (Future<Void> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+
+		verify(restTemplate, times(1)).postForEntity(eq(BULK_URL), any(HttpEntity.class), eq(String.class));
+		verify(restTemplate, times(0)).postForObject(eq(SINGLE_URL), any(HttpEntity.class), eq(PiazzaResponse.class));
+	}
+
+	/**
+	 * Tests that each item is sent individually when the bulk endpoint does not exist
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testSingleFallback() throws Exception {
+		when(restTemplate.postForEntity(eq(BULK_URL), any(HttpEntity.class), eq(String.class)))
+				.thenThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND));
+
+		List<Future<Void>> futures = submitBatch();
+		for (Future<Void> future : futures) {
+			future.get(5, TimeUnit.SECONDS);
+		}
+
+		verify(restTemplate, times(3)).postForObject(eq(SINGLE_URL), any(HttpEntity.class), eq(PiazzaResponse.class));
+		assertTrue(batcher.getStats().get("bulkSupported").equals(false));
+	}
+
+	/**
+	 * Tests that a batch rejected as invalid is sent item by item, so that only the invalid item fails
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testRejectedBatch() throws Exception {
+		when(restTemplate.postForEntity(eq(BULK_URL), any(HttpEntity.class), eq(String.class)))
+				.thenThrow(new HttpClientErrorException(HttpStatus.UNPROCESSABLE_ENTITY));
+		when(restTemplate.postForObject(eq(SINGLE_URL), any(HttpEntity.class), eq(PiazzaResponse.class)))
+				.thenAnswer(new Answer<PiazzaResponse>() {
+					@Override
+					public PiazzaResponse answer(InvocationOnMock invocation) throws Throwable {
+						SearchMetadataIngestJob job = ((HttpEntity<SearchMetadataIngestJob>) invocation.getArguments()[1]).getBody();
+						if ("invalid".equals(job.data.getDataId())) {
+							throw new HttpClientErrorException(HttpStatus.BAD_REQUEST);
+						}
+						return null;
+					}
+				});
+
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (String dataId : new String[] { "valid-1", "invalid", "valid-2" }) {
+			SearchMetadataIngestJob job = new SearchMetadataIngestJob();
+			job.data = new DataResource();
+			job.data.setDataId(dataId);
+			futures.add(batcher.submit(job));
+		}
+
+		// Only the invalid item fails
+		futures.get(0).get(5, TimeUnit.SECONDS);
+		futures.get(2).get(5, TimeUnit.SECONDS);
+		boolean failed = false;
+		try {
+			futures.get(1).get(5, TimeUnit.SECONDS);
+		} catch (ExecutionException exception) {
+			failed = exception.getCause() instanceof HttpClientErrorException;
+		}
+		assertTrue(failed);
+		verify(restTemplate, times(3)).postForObject(eq(SINGLE_URL), any(HttpEntity.class), eq(PiazzaResponse.class));
+
+		// The bulk endpoint itself is still supported
+		assertTrue(batcher.getStats().get("bulkSupported").equals(true));
+	}
+
+	/**
+	 * Submits a full batch of metadata
+	 */
+	private List<Future<Void>> submitBatch() {
+		List<Future<Void>> futures = new ArrayList<Future<Void>>();
+		for (int i = 0; i < 3; i++) {
+			SearchMetadataIngestJob job = new SearchMetadataIngestJob();
+			job.data = new DataResource();
+			futures.add(batcher.submit(job));
+		}
+		return futures;
+	}
+}
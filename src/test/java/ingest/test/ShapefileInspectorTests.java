@@ -18,16 +18,27 @@ package ingest.test;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import ingest.inspect.ShapefileInspector;
+import ingest.utility.ContentSpool;
 import ingest.utility.IngestUtilities;
+import ingest.utility.S3ClientManager;
+import ingest.utility.ShapefileHeader;
 
 import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.zip.ZipFile;
 
 import model.data.DataResource;
 import model.data.location.FolderShare;
 import model.data.type.ShapefileDataType;
 import model.job.metadata.ResourceMetadata;
 
+import org.geotools.data.DataStore;
+import org.geotools.data.FeatureSource;
 import org.junit.Before;
 import org.junit.Ignore;
 import org.junit.Test;
@@ -35,6 +46,9 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.opengis.feature.simple.SimpleFeature;
+import org.opengis.feature.simple.SimpleFeatureType;
 import org.springframework.test.util.ReflectionTestUtils;
 
 import util.PiazzaLogger;
@@ -50,6 +64,8 @@ public class ShapefileInspectorTests {
 	private PiazzaLogger logger;
 	@Mock
 	private IngestUtilities ingestUtilities;
+	@Spy
+	private ContentSpool contentSpool = new ContentSpool();
 	@InjectMocks
 	private ShapefileInspector inspector;
 
@@ -61,6 +77,7 @@ public class ShapefileInspectorTests {
 	@Before
 	public void setup() {
 		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(contentSpool, "s3ClientManager", new S3ClientManager());
 
 		// Temporary file location
 		ReflectionTestUtils.setField(inspector, "DATA_TEMP_PATH", "tmp");
@@ -112,4 +129,58 @@ public class ShapefileInspectorTests {
 		File tempZip = new File("tmp" + File.separator + "123456.zip");
 		assertTrue(tempZip.exists() == false);
 	}
+
+	/**
+	 * Tests reading the metadata of a Shapefile from its headers
+	 */
+	@Test
+	public void testHeaderMetadata() throws Exception {
+		// Test
+		ShapefileHeader header;
+		try (ZipFile zipFile = new ZipFile("src" + File.separator + "test" + File.separator + "resources" + File.separator
+				+ "TestShape.zip")) {
+			header = ShapefileHeader.read(zipFile);
+		}
+
+		// Verify
+		assertTrue(header != null);
+		assertTrue(header.getMinX() == 102.0);
+		assertTrue(header.getMinY() == 0.5);
+		assertTrue(header.getMaxX() == 106.0);
+		assertTrue(header.getMaxY() == 4.0);
+		assertTrue(header.getRecordCount() == 2);
+		assertTrue(header.getCoordinateReferenceSystem() != null);
+	}
+
+	/**
+	 * Tests that the zipped Shapefile is released, and the temporary zip deleted, when the inspection fails
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCleanupOnFailure() throws Exception {
+		// Mock
+		ReflectionTestUtils.setField(inspector, "ARCHIVE_READ_ENABLED", true);
+		URL archivedShapefile = new URL("jar:file:/tmp/123456.zip!/TestShape.shp");
+		FeatureSource<SimpleFeatureType, SimpleFeature> featureSource = mock(FeatureSource.class);
+		DataStore dataStore = mock(DataStore.class);
+		when(ingestUtilities.findArchivedShapefile(any(File.class))).thenReturn(archivedShapefile);
+		when(ingestUtilities.getShapefileDataStore(archivedShapefile)).thenReturn(featureSource);
+		when(featureSource.getDataStore()).thenReturn(dataStore);
+		when(featureSource.getBounds()).thenThrow(new IOException("Unreadable Shapefile"));
+
+		// Test
+		boolean failed = false;
+		try {
+			inspector.inspect(mockData, true);
+		} catch (IOException exception) {
+			failed = true;
+		}
+
+		// Verify
+		assertTrue(failed);
+		verify(dataStore).dispose();
+		verify(ingestUtilities).releaseArchivedShapefile(archivedShapefile);
+		File tempZip = new File("tmp" + File.separator + "123456.zip");
+		assertTrue(tempZip.exists() == false);
+	}
 }
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.geotools.data.DataStore;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.persist.LoadCheckpointStore;
+import ingest.persist.PostGisStore;
+import ingest.persist.StagingTableSweeper;
+
+/**
+ * Tests the removal of staging tables and checkpoints left by abandoned loads
+ */
+public class StagingTableSweeperTests {
+	@Mock
+	private PostGisStore postGis;
+	@Mock
+	private LoadCheckpointStore checkpointStore;
+	@Mock
+	private DataStore dataStore;
+	@InjectMocks
+	private StagingTableSweeper sweeper;
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	public void setup() throws Exception {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(sweeper, "ttlHours", 1L);
+		when(postGis.getDataStore()).thenReturn(dataStore);
+		when(postGis.getTableName("staging_old")).thenReturn("old");
+		when(postGis.getTableName("staging_recent")).thenReturn("recent");
+		when(postGis.getTableName("staging_unknown")).thenReturn("unknown");
+	}
+
+	/**
+	 * Tests that only loads that have committed nothing for the time to live are removed
+	 */
+	@Test
+	public void testSweep() throws Exception {
+		// Mock
+		long now = System.currentTimeMillis();
+		Map<String, Long> idleTimes = new HashMap<String, Long>();
+		idleTimes.put("old", TimeUnit.HOURS.toMillis(2));
+		idleTimes.put("recent", 0L);
+		idleTimes.put("orphan", TimeUnit.HOURS.toMillis(2));
+		when(checkpointStore.getIdleTimes(dataStore)).thenReturn(idleTimes);
+		when(postGis.getStagingTables()).thenReturn(Arrays.asList("staging_old", "staging_recent", "staging_unknown"));
+
+		// Test
+		sweeper.sweep(now);
+
+		// Verify
+		verify(postGis).dropTable("staging_old");
+		verify(checkpointStore).clear(dataStore, "old");
+		verify(checkpointStore).clear(dataStore, "orphan");
+		verify(postGis, never()).dropTable("staging_recent");
+		verify(checkpointStore, never()).clear(dataStore, "recent");
+		verify(postGis, never()).dropTable("staging_unknown");
+	}
+
+	/**
+	 * Tests that a staging table without a checkpoint is removed once it has been seen for the time to live
+	 */
+	@Test
+	public void testSweepWithoutCheckpoint() throws Exception {
+		// Mock
+		long now = System.currentTimeMillis();
+		when(checkpointStore.getIdleTimes(dataStore)).thenReturn(new HashMap<String, Long>());
+		when(postGis.getStagingTables()).thenReturn(Arrays.asList("staging_unknown"));
+
+		// Test
+		sweeper.sweep(now);
+		verify(postGis, never()).dropTable("staging_unknown");
+		sweeper.sweep(now + TimeUnit.HOURS.toMillis(2));
+
+		// Verify
+		verify(postGis).dropTable("staging_unknown");
+		verify(checkpointStore).clear(dataStore, "unknown");
+	}
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright 2016, RadiantBlue Technologies, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ **/
+package ingest.test;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.isA;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+import org.apache.kafka.clients.producer.Callback;
+import org.apache.kafka.clients.producer.Producer;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.clients.producer.RecordMetadata;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import ingest.messaging.StatusUpdatePublisher;
+import model.job.JobProgress;
+import model.logger.Severity;
+import model.status.StatusUpdate;
+import util.PiazzaLogger;
+
+/**
+ * Tests the ordering and coalescing of asynchronous Job Status Updates
+ */
+public class StatusUpdatePublisherTests {
+	@Mock
+	private PiazzaLogger logger;
+	@Mock
+	private Producer<String, String> producer;
+	@InjectMocks
+	private StatusUpdatePublisher publisher;
+
+	private List<Callback> callbacks = new ArrayList<Callback>();
+	private List<Runnable> followUps = new ArrayList<Runnable>();
+
+	/**
+	 * Test initialization
+	 */
+	@Before
+	@SuppressWarnings("unchecked")
+	public void setup() {
+		MockitoAnnotations.initMocks(this);
+		ReflectionTestUtils.setField(publisher, "SPACE", "unit-test");
+
+		// Run follow-up sends on the test Thread, unless a test holds them
+		ReflectionTestUtils.setField(publisher, "followUpExecutor", new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+
+		// Hold on to each send's callback, so the test controls when Kafka acknowledges it
+		when(producer.send(isA(ProducerRecord.class), isA(Callback.class))).thenAnswer(new Answer<Future<RecordMetadata>>() {
+			@Override
+			public Future<RecordMetadata> answer(InvocationOnMock invocation) throws Throwable {
+				callbacks.add((Callback) invocation.getArguments()[1]);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Tests that updates published while one is in flight are coalesced, and sent in order
+	 */
+	@Test
+	@SuppressWarnings("unchecked")
+	public void testCoalescing() throws Exception {
+		// The first update is sent immediately; the next two wait behind it
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(0)));
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_RUNNING, new JobProgress(50)));
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_SUCCESS, new JobProgress(100)));
+		assertTrue(callbacks.size() == 1);
+		assertTrue(publisher.getInFlightCount() == 1);
+
+		// Updates for other Jobs are not held up
+		publisher.publish(producer, "654321", new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+		assertTrue(callbacks.size() == 2);
+
+		// Acknowledging the first update sends only the latest pending update
+		callbacks.get(0).onCompletion(null, null);
+		assertTrue(callbacks.size() == 3);
+		assertTrue(publisher.getStats().get("coalesced").equals(1L));
+
+		// Nothing remains once everything is acknowledged
+		callbacks.get(1).onCompletion(null, null);
+		callbacks.get(2).onCompletion(null, null);
+		assertTrue(callbacks.size() == 3);
+		assertTrue(publisher.getInFlightCount() == 0);
+		assertTrue(publisher.getStats().get("delivered").equals(3L));
+		verify(producer, times(3)).send(isA(ProducerRecord.class), isA(Callback.class));
+	}
+
+	/**
+	 * Tests that delivery failures are reported, and do not stall later updates
+	 */
+	@Test
+	public void testDeliveryFailure() throws Exception {
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_ERROR));
+
+		// Fail the first update
+		callbacks.get(0).onCompletion(null, new Exception("Broker unavailable"));
+		verify(logger).log(anyString(), any(Severity.class));
+		assertTrue(publisher.getStats().get("failed").equals(1L));
+
+		// The pending update is still sent
+		assertTrue(callbacks.size() == 2);
+		callbacks.get(1).onCompletion(null, null);
+		assertTrue(publisher.getInFlightCount() == 0);
+	}
+
+	/**
+	 * Tests that the follow-up update is not sent from the Producer callback, which runs on the Kafka I/O Thread
+	 */
+	@Test
+	public void testFollowUpOffCallbackThread() throws Exception {
+		ReflectionTestUtils.setField(publisher, "followUpExecutor", new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				followUps.add(command);
+			}
+		});
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_RUNNING));
+		publisher.publish(producer, "123456", new StatusUpdate(StatusUpdate.STATUS_SUCCESS));
+
+		// Acknowledging the first update does not send the next one from the callback
+		callbacks.get(0).onCompletion(null, null);
+		assertTrue(callbacks.size() == 1);
+		assertTrue(followUps.size() == 1);
+
+		// The follow-up Thread sends it
+		followUps.get(0).run();
+		assertTrue(callbacks.size() == 2);
+	}
+}
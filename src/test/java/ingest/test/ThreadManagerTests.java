@@ -17,9 +17,13 @@ package ingest.test;
 
 import static org.mockito.Matchers.anyList;
 import static org.mockito.Matchers.anyLong;
+import static org.junit.Assert.assertTrue;
+import ingest.messaging.IngestPipeline;
 import ingest.messaging.IngestThreadManager;
 import ingest.messaging.IngestWorker;
 
+import java.util.Map;
+
 import org.apache.kafka.clients.consumer.Consumer;
 import org.apache.kafka.clients.consumer.ConsumerRecords;
 import org.junit.Before;
@@ -44,6 +48,8 @@ public class ThreadManagerTests {
 	@Mock
 	private IngestWorker ingestWorker;
 	@Mock
+	private IngestPipeline ingestPipeline;
+	@Mock
 	private Consumer<String, String> consumer;
 	@InjectMocks
 	private IngestThreadManager manager;
@@ -77,4 +83,23 @@ public class ThreadManagerTests {
 		// No exceptions - then stop polling.
 		manager.stopPolling();
 	}
+
+	/**
+	 * Test the consumer statistics reported for backpressure
+	 */
+	@Test
+	public void testConsumerStats() {
+		// Mock
+		ReflectionTestUtils.setField(manager, "backpressureHighWater", 10);
+		ReflectionTestUtils.setField(manager, "backpressureLowWater", 2);
+		Mockito.when(ingestPipeline.getPendingCount()).thenReturn(5);
+
+		// Test
+		Map<String, Object> stats = manager.getConsumerStats();
+
+		// Verify
+		assertTrue(stats.get("pendingWork").equals(5));
+		assertTrue(stats.get("paused").equals(false));
+		assertTrue(stats.get("highWaterMark").equals(10));
+	}
 }
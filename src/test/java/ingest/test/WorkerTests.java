@@ -17,13 +17,21 @@ package ingest.test;
 
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isA;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 import ingest.inspect.Inspector;
+import ingest.messaging.EventTypeCache;
 import ingest.messaging.IngestWorker;
+import ingest.messaging.NotificationSender;
+import ingest.messaging.RunningJobRegistry;
+import ingest.messaging.SearchMetadataBatcher;
+import ingest.messaging.StatusUpdatePublisher;
+import ingest.model.IngestTask;
+import ingest.utility.ContentSpool;
 
 import java.util.concurrent.Future;
 import java.util.concurrent.FutureTask;
@@ -69,6 +77,18 @@ public class WorkerTests {
 	private UUIDFactory uuidFactory;
 	@Mock
 	private RestTemplate restTemplate;
+	@Mock
+	private RunningJobRegistry jobRegistry;
+	@Mock
+	private StatusUpdatePublisher statusUpdatePublisher;
+	@Mock
+	private EventTypeCache eventTypeCache;
+	@Mock
+	private NotificationSender notificationSender;
+	@Mock
+	private SearchMetadataBatcher searchMetadataBatcher;
+	@Mock
+	private ContentSpool contentSpool;
 	@InjectMocks
 	private IngestWorker worker;
 	@Mock
@@ -111,32 +131,56 @@ public class WorkerTests {
 	}
 
 	/**
-	 * Tests the Ingest Worker for processing a mock Kafka message
+	 * Tests the stages of the Ingest Worker for processing a mock Kafka message
 	 */
 	@Test
 	public void testWorker() throws Exception {
 		// Test exception by sending an invalid ConsumerMessage
 		ConsumerRecord<String, String> testRecord = new ConsumerRecord<String, String>("Test", 0, 0, "123456",
 				"INVALID_JSON");
-		Future<DataResource> workerFuture = worker.run(testRecord, producer, null);
-		assertTrue(workerFuture.get() == null);
+		IngestTask task = new IngestTask(testRecord, producer, null);
+		boolean failed = false;
+		try {
+			worker.fetch(task);
+		} catch (Exception exception) {
+			failed = true;
+			worker.handleFailure(task, exception);
+		} finally {
+			worker.complete(task);
+		}
+		assertTrue(failed);
+		assertTrue(task.getDataResource() == null);
 
 		// Ensure we get a GUID for the Data Resource
 		when(uuidFactory.getUUID()).thenReturn("654321");
 
+		// The Inspector returns the Data Resource it inspected
+		when(inspector.inspectData(any(DataResource.class), anyBoolean())).thenAnswer(new Answer<DataResource>() {
+			@Override
+			public DataResource answer(InvocationOnMock invocation) throws Throwable {
+				return (DataResource) invocation.getArguments()[0];
+			}
+		});
+
 		// Mock the REST response from Workflow and Metadata Ingest
 		when(restTemplate.postForObject(anyString(), any(), eq(String.class))).thenReturn("OK");
 		when(restTemplate.postForEntity(anyString(), any(), eq(Object.class))).thenReturn(
 				new ResponseEntity<Object>(HttpStatus.OK));
 
-		// Format a correct message and re-test
+		// Format a correct message and run it through each stage
 		testRecord = new ConsumerRecord<String, String>("Test", 0, 0, "123456",
 				new ObjectMapper().writeValueAsString(mockJob));
-		workerFuture = worker.run(testRecord, producer, null);
+		task = new IngestTask(testRecord, producer, null);
+		worker.fetch(task);
+		worker.inspect(task);
+		worker.persist(task);
+		worker.sendNotifications(task);
+		worker.complete(task);
 
 		// Verify
-		assertTrue(workerFuture.get() != null);
-		DataResource inspectedData = workerFuture.get();
+		DataResource inspectedData = task.getDataResource();
+		assertTrue(inspectedData != null);
+		assertTrue(inspectedData.getDataId().equals("654321"));
 		assertTrue(inspectedData.getMetadata() != null);
 		assertTrue(inspectedData.getMetadata().createdBy.equals("Test User"));
 		assertTrue(inspectedData.getSpatialMetadata() != null);